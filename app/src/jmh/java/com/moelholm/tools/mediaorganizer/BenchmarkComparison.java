@@ -0,0 +1,104 @@
+package com.moelholm.tools.mediaorganizer;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two JMH result files (<code>-rf json</code>) - for example the results of the main branch with those of a
+ * feature branch:
+ * <pre>
+ *     mvn -Pbenchmark test-compile exec:exec@compare-benchmarks -Djmh.baselineFile=... -Djmh.resultFile=...
+ * </pre>
+ * Prints the change of every benchmark (per set of parameters) that is in both files. A benchmark has regressed when it
+ * got more than [threshold] percent worse - and the difference is bigger than the errors of the two scores together.
+ * Exits with status 1 if one or more benchmarks have regressed (so a build can fail on it).
+ */
+public final class BenchmarkComparison {
+
+    private static final double DEFAULT_THRESHOLD_PERCENT = 10;
+
+    private record Score(String mode, double score, double error, String unit) {
+
+        /**
+         * @return true if a higher score is better (throughput) - false if a lower one is (time)
+         */
+        boolean higherIsBetter() {
+            return "thrpt".equals(mode);
+        }
+    }
+
+    private BenchmarkComparison() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BenchmarkComparison <baseline.json> <result.json> [threshold percent]");
+            System.exit(2);
+        }
+        var baseline = read(Path.of(args[0]));
+        var result = read(Path.of(args[1]));
+        var thresholdPercent = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD_PERCENT;
+
+        var regressions = 0;
+        System.out.printf("%-90s %14s %14s %9s%n", "Benchmark", "Baseline", "Now", "Change");
+        for (var entry : result.entrySet()) {
+            var before = baseline.get(entry.getKey());
+            if (before == null) {
+                continue;
+            }
+            var now = entry.getValue();
+            var changePercent = (now.score() - before.score()) / before.score() * 100;
+            var worsePercent = now.higherIsBetter() ? -changePercent : changePercent;
+            var significant = Math.abs(now.score() - before.score()) > finite(before.error()) + finite(now.error());
+            var regressed = worsePercent > thresholdPercent && significant;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-90s %14.3f %14.3f %+8.1f%% %s%s%n",
+                    entry.getKey(), before.score(), now.score(), changePercent, now.unit(), regressed ? "  REGRESSION" : "");
+        }
+        System.out.printf("[%s] benchmarks regressed by more than [%s] percent%n", regressions, thresholdPercent);
+        if (regressions > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return the scores by benchmark name and parameters (for example: OrganizePipelineBenchmark.mediaFiles{files=10000})
+     */
+    private static Map<String, Score> read(Path resultFile) throws IOException {
+        var scores = new LinkedHashMap<String, Score>();
+        for (var run : new ObjectMapper().readTree(resultFile.toFile())) {
+            var benchmark = run.path("benchmark").asText();
+            var primaryMetric = run.path("primaryMetric");
+            scores.put(
+                    String.format("%s%s", benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1),
+                            paramsOf(run.path("params"))),
+                    new Score(
+                            run.path("mode").asText(),
+                            primaryMetric.path("score").asDouble(),
+                            primaryMetric.path("scoreError").asDouble(Double.NaN),
+                            primaryMetric.path("scoreUnit").asText()));
+        }
+        return scores;
+    }
+
+    private static String paramsOf(JsonNode params) {
+        if (params.isMissingNode() || params.isEmpty()) {
+            return "";
+        }
+        var sortedParams = new TreeMap<String, String>();
+        params.fields().forEachRemaining(param -> sortedParams.put(param.getKey(), param.getValue().asText()));
+        return sortedParams.toString();
+    }
+
+    private static double finite(double value) {
+        return Double.isFinite(value) ? value : 0;
+    }
+}
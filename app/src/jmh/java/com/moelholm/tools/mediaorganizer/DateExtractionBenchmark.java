@@ -0,0 +1,92 @@
+package com.moelholm.tools.mediaorganizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.text.DateFormatSymbols;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link DateExtractor} with the per file {@link SimpleDateFormat} based extraction that it replaced - on
+ * 1M synthetic file names of which every tenth does not contain a date.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class DateExtractionBenchmark {
+
+    private static final int FILE_NAME_COUNT = 1_000_000;
+
+    private static final String DATE_PATTERN = "yyyy-MM-dd HH.mm.ss";
+
+    private static final Locale LOCALE = Locale.UK;
+
+    private String[] fileNames;
+
+    private DateExtractor dateExtractor;
+
+    @Setup
+    public void setUp() {
+        var random = new Random(42);
+        fileNames = new String[FILE_NAME_COUNT];
+        for (int i = 0; i < fileNames.length; i++) {
+            fileNames[i] = i % 10 == 0
+                    ? String.format("IMG_%04d.jpg", random.nextInt(10_000))
+                    : String.format("%04d-%02d-%02d %02d.%02d.%02d.jpg",
+                            2000 + random.nextInt(25), 1 + random.nextInt(12), 1 + random.nextInt(28),
+                            random.nextInt(24), random.nextInt(60), random.nextInt(60));
+        }
+        dateExtractor = new DateExtractor(DATE_PATTERN, LOCALE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILE_NAME_COUNT)
+    public void dateExtractor(Blackhole blackhole) {
+        for (var fileName : fileNames) {
+            blackhole.consume(dateExtractor.toYearMonthDayString(fileName));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILE_NAME_COUNT)
+    public void simpleDateFormat(Blackhole blackhole) {
+        for (var fileName : fileNames) {
+            blackhole.consume(toYearMonthDayStringWithSimpleDateFormat(fileName));
+        }
+    }
+
+    private static String toYearMonthDayStringWithSimpleDateFormat(String fileName) {
+        Date date;
+        try {
+            date = new SimpleDateFormat(DATE_PATTERN).parse(fileName);
+        } catch (ParseException e) {
+            return null;
+        }
+        var dateCal = Calendar.getInstance();
+        dateCal.setTime(date);
+        var year = dateCal.get(Calendar.YEAR);
+        var month = new DateFormatSymbols(LOCALE).getMonths()[dateCal.get(Calendar.MONTH)];
+        month = Character.toUpperCase(month.charAt(0)) + month.substring(1);
+        var day = dateCal.get(Calendar.DAY_OF_MONTH);
+        return String.format("%s - %s - %s", year, month, day);
+    }
+}
@@ -0,0 +1,75 @@
+package com.moelholm.tools.mediaorganizer;
+
+import com.moelholm.tools.mediaorganizer.filesystem.LocalFileSystem;
+import com.moelholm.tools.mediaorganizer.filesystem.LocalFileSystem.LocalFileSystemProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link MediaFileClassifier} with the per path stream over the configured extensions that it replaced - on
+ * 1M synthetic paths with a mix of media files, other files and upper case extensions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class MediaFileClassificationBenchmark {
+
+    private static final int PATH_COUNT = 1_000_000;
+
+    private static final String[] EXTENSIONS_TO_MATCH = {"jpg", "mov", "heic"};
+
+    private static final String[] EXTENSIONS_IN_SOURCE = {"jpg", "JPG", "mov", "heic", "png", "pdf", "txt", "MOV"};
+
+    private Path[] paths;
+
+    private MediaFileClassifier mediaFileClassifier;
+
+    @Setup
+    public void setUp() {
+        var random = new Random(42);
+        paths = new Path[PATH_COUNT];
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = Path.of(String.format("/media/camera uploads/2015-10-11 15.13.%02d-%d.%s",
+                    random.nextInt(60), i, EXTENSIONS_IN_SOURCE[random.nextInt(EXTENSIONS_IN_SOURCE.length)]));
+            paths[i].toString(); // -(like a listing would have done)-
+        }
+        mediaFileClassifier = new MediaFileClassifier(EXTENSIONS_TO_MATCH, false, new LocalFileSystem(new LocalFileSystemProperties(false, 1), new SimpleMeterRegistry()));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PATH_COUNT)
+    public void mediaFileClassifier(Blackhole blackhole) {
+        for (var path : paths) {
+            blackhole.consume(mediaFileClassifier.isMediaFile(path));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PATH_COUNT)
+    public void streamOverExtensions(Blackhole blackhole) {
+        for (var path : paths) {
+            blackhole.consume(Arrays.asList(EXTENSIONS_TO_MATCH).stream()
+                    .anyMatch(fileExtension ->
+                            path.toString().toLowerCase().endsWith(String.format(".%s", fileExtension))));
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.moelholm.tools.mediaorganizer;
+
+import com.moelholm.tools.mediaorganizer.filesystem.FileEntry;
+import com.moelholm.tools.mediaorganizer.filesystem.FileSystemType;
+import com.moelholm.tools.mediaorganizer.filesystem.LocalFileSystem;
+import com.moelholm.tools.mediaorganizer.filesystem.LocalFileSystem.LocalFileSystemProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the in-memory part of organizing - on a {@link SyntheticMediaLibrary} of [files] files (no file system is
+ * touched): extracting the dates of the file names, telling media files from other files, naming the destination
+ * folders - and all of that together, as a grouped run does it before it moves anything.
+ * <p>
+ * Each score is the time of one pass over the library (divide by [files] for the time per file). Run 10M files with
+ * <code>-p files=10000000 -jvmArgsAppend -Xmx8g</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class OrganizePipelineBenchmark {
+
+    @Param({"10000", "1000000"})
+    public int files;
+
+    @Param({"42"})
+    public long seed;
+
+    private final Path to = Path.of("/media/organized");
+
+    private List<FileEntry> fileEntries;
+
+    private String[] fileNames;
+
+    private String[] days;
+
+    private int[] mediaFileCountsOfDays;
+
+    private DateExtractor dateExtractor;
+
+    private MediaOrganizer organizer;
+
+    private AppProperties appProperties;
+
+    @Setup
+    public void setUp() {
+        fileEntries = SyntheticMediaLibrary.generate(seed, files, Path.of("/media/camera uploads"));
+        fileNames = fileEntries.stream().map(fileEntry -> fileEntry.path().getFileName().toString()).toArray(String[]::new);
+        appProperties = appProperties();
+        dateExtractor = new DateExtractor(
+                appProperties.mediafiles().datePattern(),
+                appProperties.destination().localeForGeneratingDestinationFolderNames());
+        organizer = new MediaOrganizer(
+                appProperties, new LocalFileSystem(new LocalFileSystemProperties(false, 1), new SimpleMeterRegistry()),
+                new SimpleMeterRegistry());
+        var mediaFileCounts = new HashMap<String, Integer>();
+        fileEntries.stream()
+                .filter(organizer.mediaFiles(new RunMetrics(new SimpleMeterRegistry())))
+                .collect(organizer.groupByYearMonthDayString(new RunMetrics(new SimpleMeterRegistry())))
+                .forEach((day, mediaFiles) -> mediaFileCounts.put(day, mediaFiles.size()));
+        days = mediaFileCounts.keySet().toArray(String[]::new);
+        mediaFileCountsOfDays = mediaFileCounts.values().stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Benchmark
+    public void toYearMonthDayString(Blackhole blackhole) {
+        for (var fileName : fileNames) {
+            blackhole.consume(dateExtractor.toYearMonthDayString(fileName));
+        }
+    }
+
+    @Benchmark
+    public void mediaFiles(Blackhole blackhole) {
+        var mediaFiles = organizer.mediaFiles(new RunMetrics(new SimpleMeterRegistry()));
+        for (var fileEntry : fileEntries) {
+            blackhole.consume(mediaFiles.test(fileEntry));
+        }
+    }
+
+    @Benchmark
+    public void generateFinalDestinationDirectoryName(Blackhole blackhole) {
+        for (int i = 0; i < days.length; i++) {
+            blackhole.consume(organizer.generateFinalDestinationDirectoryName(days[i], mediaFileCountsOfDays[i]));
+        }
+    }
+
+    /**
+     * The regular expression per destination folder that {@link MediaOrganizer#generateFinalDestinationDirectoryName}
+     * replaced.
+     */
+    @Benchmark
+    public void generateFinalDestinationDirectoryNameWithReplaceAll(Blackhole blackhole) {
+        var destination = appProperties.destination();
+        for (int i = 0; i < days.length; i++) {
+            var replacement = mediaFileCountsOfDays[i] >= destination.amountOfMediaFilesIndicatingAnEvent()
+                    ? String.format("$1 - %s", destination.suffixForDestinationFolderOfUnknownEventMediaFiles())
+                    : String.format(" - %s", destination.suffixForDestinationFolderOfMiscMediaFiles());
+            blackhole.consume(days[i].replaceAll("( - \\d+)$", replacement));
+        }
+    }
+
+    /**
+     * Filters, groups and names the destination folders - like a grouped run does before it moves anything.
+     */
+    @Benchmark
+    public void groupingPipeline(Blackhole blackhole) {
+        var runMetrics = new RunMetrics(new SimpleMeterRegistry());
+        var groupedMediaFiles = fileEntries.stream()
+                .filter(organizer.mediaFiles(runMetrics))
+                .collect(organizer.groupByYearMonthDayString(runMetrics));
+        var mediaFileCounts = new HashMap<String, Integer>();
+        groupedMediaFiles.forEach((day, mediaFiles) -> mediaFileCounts.put(day, mediaFiles.size()));
+        blackhole.consume(groupedMediaFiles);
+        blackhole.consume(organizer.destinationDirectoryPaths(to, mediaFileCounts));
+    }
+
+    private static AppProperties appProperties() {
+        return new AppProperties(
+                FileSystemType.LOCAL,
+                new AppProperties.Source("/media/camera uploads"),
+                new AppProperties.Destination("/media/organized", 10, Locale.UK, "Misc", "This Must Be An Event"),
+                new AppProperties.Mediafiles("yyyy-MM-dd HH.mm.ss", new String[]{"jpg", "mov", "heic"}, false),
+                new AppProperties.Move(4, OrganizeMode.GROUPED, 500),
+                new AppProperties.Index(false, null),
+                new AppProperties.Metrics(null, false, "MediaOrganizer"),
+                new AppProperties.Dedup(false, 0),
+                new AppProperties.Metadata(false, 8, 100_000),
+                new AppProperties.Plan(PlanMode.NONE, null, Duration.ZERO),
+                new AppProperties.Shard(0, 1),
+                new AppProperties.Progress(Duration.ZERO),
+                new AppProperties.Watch(false, Duration.ZERO, Duration.ZERO),
+                new AppProperties.Jobs(1, 0, List.of()));
+    }
+}
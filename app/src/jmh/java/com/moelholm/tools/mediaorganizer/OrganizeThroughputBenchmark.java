@@ -0,0 +1,229 @@
+package com.moelholm.tools.mediaorganizer;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.ConsoleAppender;
+import com.moelholm.tools.mediaorganizer.filesystem.DropboxFileSystem;
+import com.moelholm.tools.mediaorganizer.filesystem.DropboxFileSystem.DropboxFileSystemProperties;
+import com.moelholm.tools.mediaorganizer.filesystem.FakeDropboxServer;
+import com.moelholm.tools.mediaorganizer.filesystem.FileSystem;
+import com.moelholm.tools.mediaorganizer.filesystem.FileSystemType;
+import com.moelholm.tools.mediaorganizer.filesystem.LocalFileSystem;
+import com.moelholm.tools.mediaorganizer.filesystem.LocalFileSystem.LocalFileSystemProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Organizes a flat folder of synthetic media files from end to end - with the {@link LocalFileSystem}, and with the
+ * {@link DropboxFileSystem} talking to a {@link FakeDropboxServer} (so the listing, the paging and the moves go
+ * through HTTP like they do against Dropbox - minus the latency of the internet, which can be added with
+ * <code>-p latencyMillis=...</code>).
+ * <p>
+ * Every invocation organizes a fresh folder of files. Next to the time it took, each run reports how many files were
+ * organized and how many API calls that took (<code>files</code> and <code>apiCalls</code>) - so files per second and
+ * API calls per file can be read from the results.
+ * <p>
+ * The log lines go to the console like they do when the application runs: <code>-p logging=sync,async</code> compares
+ * the console appenders of <code>mediaorganizer.logging.console</code> - and <code>-p logLevel=info,trace</code>
+ * compares progress reports with a line per media file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class OrganizeThroughputBenchmark {
+
+    @Param({"local", "dropbox"})
+    public String fileSystemType;
+
+    @Param({"1000", "10000", "100000"})
+    public int files;
+
+    @Param({"0"})
+    public int latencyMillis;
+
+    @Param({"async"})
+    public String logging;
+
+    @Param({"info"})
+    public String logLevel;
+
+    private Path root;
+
+    private FakeDropboxServer dropbox;
+
+    private FileSystem fileSystem;
+
+    private MediaOrganizer organizer;
+
+    /**
+     * What one run did.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+
+        public long files;
+
+        public long apiCalls;
+    }
+
+    @Setup(Level.Trial)
+    public void configureLogging() {
+        var loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+        loggerContext.reset();
+        var encoder = new PatternLayoutEncoder();
+        encoder.setContext(loggerContext);
+        encoder.setPattern("%d %5level [%thread] %logger{39} : %msg%n");
+        encoder.start();
+        var console = new ConsoleAppender<ILoggingEvent>();
+        console.setContext(loggerContext);
+        console.setEncoder(encoder);
+        console.start();
+        Appender<ILoggingEvent> appender = console;
+        if ("async".equals(logging)) {
+            var async = new AsyncAppender();
+            async.setContext(loggerContext);
+            async.setQueueSize(8192);
+            async.setDiscardingThreshold(0);
+            async.addAppender(console);
+            async.start();
+            appender = async;
+        }
+        var root = loggerContext.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
+        root.setLevel(ch.qos.logback.classic.Level.INFO);
+        root.addAppender(appender);
+        loggerContext.getLogger("com.moelholm.tools.mediaorganizer").setLevel(ch.qos.logback.classic.Level.toLevel(logLevel));
+    }
+
+    @Setup(Level.Trial)
+    public void startDropbox() throws IOException {
+        root = Files.createTempDirectory("organize-throughput");
+        dropbox = FakeDropboxServer.start(root).latency(Duration.ofMillis(latencyMillis));
+    }
+
+    @TearDown(Level.Trial)
+    public void stopDropbox() throws IOException {
+        dropbox.close();
+        deleteRecursively(root);
+    }
+
+    @Setup(Level.Invocation)
+    public void createMediaFiles() throws IOException {
+        var from = Files.createDirectories(root.resolve("from"));
+        Files.createDirectories(root.resolve("to"));
+        var random = new Random(42);
+        var start = LocalDateTime.of(2015, 1, 1, 0, 0);
+        for (int i = 0; i < files; i++) {
+            var taken = start.plusMinutes(random.nextInt(5 * 365 * 24 * 60));
+            var fileName = String.format(Locale.ROOT, "%1$tY-%1$tm-%1$td %1$tH.%1$tM.%1$tS-%2$d.jpg", taken, i);
+            Files.writeString(from.resolve(fileName), fileName);
+        }
+        var type = FileSystemType.valueOf(fileSystemType.toUpperCase(Locale.ROOT));
+        fileSystem = type == FileSystemType.DROPBOX
+                ? dropboxFileSystem()
+                : new LocalFileSystem(new LocalFileSystemProperties(false, 4), new SimpleMeterRegistry());
+        var fromDir = type == FileSystemType.DROPBOX ? "/from" : from.toString();
+        var toDir = type == FileSystemType.DROPBOX ? "/to" : root.resolve("to").toString();
+        organizer = new MediaOrganizer(appProperties(type, fromDir, toDir), fileSystem, new SimpleMeterRegistry());
+        dropbox.reset();
+        dropbox.latency(Duration.ofMillis(latencyMillis));
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteMediaFiles() throws IOException {
+        organizer.close();
+        if (fileSystem instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        }
+        deleteRecursively(root.resolve("from"));
+        deleteRecursively(root.resolve("to"));
+    }
+
+    @Benchmark
+    public void undoFlatMess(Counters counters) {
+        organizer.undoFlatMess();
+        counters.files += files;
+        counters.apiCalls += dropbox.requestCount();
+    }
+
+    private DropboxFileSystem dropboxFileSystem() {
+        return new DropboxFileSystem(
+                new DropboxFileSystemProperties(
+                        "benchmark-token",
+                        new DropboxFileSystemProperties.Http(
+                                dropbox.apiBaseUrl(), dropbox.contentBaseUrl(), dropbox.notifyBaseUrl(), 20,
+                                Duration.ofSeconds(10), Duration.ofSeconds(60), Duration.ofSeconds(60)),
+                        new DropboxFileSystemProperties.Throttle(8, 5, Duration.ofMillis(500), Duration.ofSeconds(30))),
+                new SimpleMeterRegistry());
+    }
+
+    private static AppProperties appProperties(FileSystemType type, String fromDir, String toDir) {
+        return new AppProperties(
+                type,
+                new AppProperties.Source(fromDir),
+                new AppProperties.Destination(toDir, 10, Locale.UK, "Misc", "This Must Be An Event"),
+                new AppProperties.Mediafiles("yyyy-MM-dd HH.mm.ss", new String[]{"jpg", "mov", "heic"}, false),
+                new AppProperties.Move(4, OrganizeMode.GROUPED, 500),
+                new AppProperties.Index(false, null),
+                new AppProperties.Metrics(null, false, "MediaOrganizer"),
+                new AppProperties.Dedup(false, 0),
+                new AppProperties.Metadata(false, 8, 100_000),
+                new AppProperties.Plan(PlanMode.NONE, null, Duration.ZERO),
+                new AppProperties.Shard(0, 1),
+                new AppProperties.Progress(Duration.ZERO),
+                new AppProperties.Watch(false, Duration.ZERO, Duration.ZERO),
+                new AppProperties.Jobs(1, 0, List.of()));
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(file -> {
+                try {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+}
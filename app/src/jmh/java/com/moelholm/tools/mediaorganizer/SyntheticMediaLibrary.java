@@ -0,0 +1,146 @@
+package com.moelholm.tools.mediaorganizer;
+
+import com.moelholm.tools.mediaorganizer.filesystem.FileEntry;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates the listing of a flat folder of media files - like a camera uploads folder that has been filled for years.
+ * The same seed always gives the same listing (so runs on different branches organize the same files):
+ * <ul>
+ *   <li>skewed day sizes: the files are spread over up to 10 years of days - with the size of the days following a Zipf
+ *   distribution. So a few event days have hundreds (or thousands) of files and most days have a handful.</li>
+ *   <li>mixed file names: most of them as the Dropbox camera uploads names them ({@code 2015-10-11 15.13.20.jpg} - with
+ *   {@code -1} and so on for files taken in the same second) - mixed with names that are not dated that way: phones
+ *   ({@code IMG_1234.HEIC}, {@code PXL_20151011_151320123.mp4}), cameras ({@code DSC01234.JPG}), screenshots - and
+ *   files that are not media files at all.</li>
+ * </ul>
+ * The listing is held in memory: 10M files take a few GB of heap (<code>-jvmArgsAppend -Xmx8g</code>).
+ */
+final class SyntheticMediaLibrary {
+
+    private static final LocalDate FIRST_DAY = LocalDate.of(2012, 1, 1);
+
+    private static final int MAX_DAYS = 10 * 365;
+
+    /**
+     * How skewed the day sizes are: the [k]th biggest day has about 1 / k^ZIPF_EXPONENT of the files of the biggest.
+     */
+    private static final double ZIPF_EXPONENT = 1.1;
+
+    /**
+     * Steps through the seconds of a day without repeating one (7919 is a prime - so it has no divisor in common with
+     * the 86400 seconds of a day).
+     */
+    private static final int SECOND_STEP = 7919;
+
+    private static final String[] NOT_MEDIA_FILES = {"notes-%d.txt", "receipt-%d.pdf", "Thumbs-%d.db", ".DS_Store-%d"};
+
+    private SyntheticMediaLibrary() {
+    }
+
+    /**
+     * @return [fileCount] files in [folder] - in no particular order (like a listing)
+     */
+    static List<FileEntry> generate(long seed, int fileCount, Path folder) {
+        var random = new Random(seed);
+        var days = dayOrder(random, Math.max(1, Math.min(MAX_DAYS, fileCount / 10)));
+        var cumulativeDayWeights = cumulativeZipfWeights(days.length);
+        var filesPerDay = new int[days.length];
+        var fileEntries = new ArrayList<FileEntry>(fileCount);
+        for (int i = 0; i < fileCount; i++) {
+            var rank = pick(cumulativeDayWeights, random.nextDouble());
+            var day = days[rank];
+            var fileOfDay = filesPerDay[rank]++;
+            var secondOfDay = (int) ((long) fileOfDay * SECOND_STEP % 86400);
+            var fileName = fileName(random, day, secondOfDay, fileOfDay / 86400, i);
+            var lastModified = day.atStartOfDay().plusSeconds(secondOfDay).toInstant(ZoneOffset.UTC);
+            fileEntries.add(new FileEntry(folder.resolve(fileName), sizeOf(random, fileName), lastModified));
+        }
+        return fileEntries;
+    }
+
+    private static String fileName(Random random, LocalDate day, int secondOfDay, int sameSecondIndex, int fileIndex) {
+        var hour = secondOfDay / 3600;
+        var minute = secondOfDay / 60 % 60;
+        var second = secondOfDay % 60;
+        var share = random.nextInt(100);
+        if (share < 72) {
+            var extension = share < 60 ? "jpg" : share < 67 ? "heic" : "mov";
+            return sameSecondIndex == 0
+                    ? String.format(Locale.ROOT, "%s %02d.%02d.%02d.%s", day, hour, minute, second, extension)
+                    : String.format(Locale.ROOT, "%s %02d.%02d.%02d-%d.%s", day, hour, minute, second, sameSecondIndex, extension);
+        }
+        if (share < 80) {
+            return String.format(Locale.ROOT, "IMG_%d.%s", fileIndex, random.nextBoolean() ? "HEIC" : "JPG");
+        }
+        if (share < 85) {
+            return String.format(Locale.ROOT, "PXL_%s_%02d%02d%02d%03d-%d.mp4",
+                    day.toString().replace("-", ""), hour, minute, second, random.nextInt(1000), fileIndex);
+        }
+        if (share < 89) {
+            return String.format(Locale.ROOT, "DSC%d.JPG", fileIndex);
+        }
+        if (share < 94) {
+            return String.format(Locale.ROOT, "Screenshot %s at %02d.%02d.%02d-%d.png", day, hour, minute, second, fileIndex);
+        }
+        return String.format(Locale.ROOT, NOT_MEDIA_FILES[random.nextInt(NOT_MEDIA_FILES.length)], fileIndex);
+    }
+
+    private static long sizeOf(Random random, String fileName) {
+        var megabytes = fileName.endsWith(".mov") || fileName.endsWith(".mp4")
+                ? 20 + random.nextInt(200)
+                : 1 + random.nextInt(6);
+        return megabytes * 1024L * 1024L;
+    }
+
+    /**
+     * @return the days - the biggest first (so that the big days are spread over the years)
+     */
+    private static LocalDate[] dayOrder(Random random, int dayCount) {
+        var days = new LocalDate[dayCount];
+        for (int i = 0; i < dayCount; i++) {
+            days[i] = FIRST_DAY.plusDays(i);
+        }
+        for (int i = dayCount - 1; i > 0; i--) {
+            var j = random.nextInt(i + 1);
+            var day = days[i];
+            days[i] = days[j];
+            days[j] = day;
+        }
+        return days;
+    }
+
+    private static double[] cumulativeZipfWeights(int count) {
+        var cumulativeWeights = new double[count];
+        var sum = 0.0;
+        for (int k = 0; k < count; k++) {
+            sum += 1 / Math.pow(k + 1, ZIPF_EXPONENT);
+            cumulativeWeights[k] = sum;
+        }
+        for (int k = 0; k < count; k++) {
+            cumulativeWeights[k] /= sum;
+        }
+        return cumulativeWeights;
+    }
+
+    private static int pick(double[] cumulativeWeights, double value) {
+        var low = 0;
+        var high = cumulativeWeights.length - 1;
+        while (low < high) {
+            var middle = (low + high) >>> 1;
+            if (cumulativeWeights[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
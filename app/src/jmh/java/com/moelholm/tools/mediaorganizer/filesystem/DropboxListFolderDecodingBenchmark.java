@@ -0,0 +1,144 @@
+package com.moelholm.tools.mediaorganizer.filesystem;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.moelholm.tools.mediaorganizer.filesystem.DropboxFileSystem.DropboxFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link DropboxListFolderDecoder} with the {@link ObjectMapper#readValue} based decoding that it replaced - on
+ * full list_folder pages (2000 entries - every tenth a folder) shaped like the responses Dropbox sends: each entry has
+ * all the fields of a real response (ids, revisions, display paths, sharing info, ...) - not just the ones that are used.
+ * <p>
+ * Run with <code>-prof gc</code> to compare the allocation rates as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class DropboxListFolderDecodingBenchmark {
+
+    private static final int ENTRIES_PER_PAGE = 2000;
+
+    private static final int PAGE_COUNT = 8;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private byte[][] pages;
+
+    /**
+     * The list_folder response as it was decoded before: every entry bound to a {@link DropboxFile}.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record ObjectMapperListFolderResponse(
+            @JsonProperty("entries") List<DropboxFile> dropboxFiles,
+            @JsonProperty("has_more") boolean more,
+            @JsonProperty("cursor") String cursor) {
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        var random = new Random(42);
+        pages = new byte[PAGE_COUNT][];
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = page(random, i < pages.length - 1).getBytes(StandardCharsets.UTF_8);
+        }
+        for (var page : pages) {
+            var streamed = DropboxListFolderDecoder.decode(new ByteArrayInputStream(page));
+            var bound = objectMapperDecode(page);
+            if (!streamed.fileEntries().equals(bound.fileEntries()) || !streamed.cursor().equals(bound.cursor())) {
+                throw new IllegalStateException("The decoders do not agree");
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAGE_COUNT * ENTRIES_PER_PAGE)
+    public void streamingDecoder(Blackhole blackhole) throws IOException {
+        for (var page : pages) {
+            blackhole.consume(DropboxListFolderDecoder.decode(new ByteArrayInputStream(page)));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAGE_COUNT * ENTRIES_PER_PAGE)
+    public void objectMapperReadValue(Blackhole blackhole) throws IOException {
+        for (var page : pages) {
+            blackhole.consume(objectMapperDecode(page));
+        }
+    }
+
+    private DropboxFileSystem.DropboxListFolderResponse objectMapperDecode(byte[] page) throws IOException {
+        var response = objectMapper.readValue(new ByteArrayInputStream(page), ObjectMapperListFolderResponse.class);
+        return new DropboxFileSystem.DropboxListFolderResponse(
+                response.dropboxFiles().stream().filter(DropboxFile::isFile).map(DropboxFile::toFileEntry).toList(),
+                response.more(),
+                response.cursor());
+    }
+
+    private static String page(Random random, boolean more) {
+        var page = new StringBuilder(ENTRIES_PER_PAGE * 700).append("{\"entries\":[");
+        for (int i = 0; i < ENTRIES_PER_PAGE; i++) {
+            if (i > 0) {
+                page.append(',');
+            }
+            page.append(i % 10 == 0 ? folder(random) : file(random));
+        }
+        return page.append("],\"cursor\":\"").append(hex(random, 96))
+                .append("\",\"has_more\":").append(more).append('}')
+                .toString();
+    }
+
+    private static String file(Random random) {
+        var modified = Instant.ofEpochSecond(1_400_000_000L + random.nextInt(300_000_000));
+        var name = String.format("%s %02d.%02d.%02d.jpg",
+                modified.toString().substring(0, 10), random.nextInt(24), random.nextInt(60), random.nextInt(60));
+        return String.format("""
+                {".tag":"file","name":"%1$s","path_lower":"/camera uploads/%1$s","path_display":"/Camera Uploads/%1$s",\
+                "parent_shared_folder_id":"84528192421","id":"id:%2$s","client_modified":"%3$s",\
+                "server_modified":"%3$s","rev":"%4$s","size":%5$s,"is_downloadable":true,\
+                "sharing_info":{"read_only":false,"parent_shared_folder_id":"84528192421","modified_by":"dbid:%6$s"},\
+                "has_explicit_shared_members":false,"content_hash":"%7$s"}""",
+                name, hex(random, 22), modified, hex(random, 16), 500_000 + random.nextInt(5_000_000),
+                hex(random, 40), hex(random, 64));
+    }
+
+    private static String folder(Random random) {
+        var name = String.format("folder %s", random.nextInt(1000));
+        return String.format("""
+                {".tag":"folder","name":"%1$s","path_lower":"/camera uploads/%1$s","path_display":"/Camera Uploads/%1$s",\
+                "parent_shared_folder_id":"84528192421","id":"id:%2$s",\
+                "sharing_info":{"read_only":false,"parent_shared_folder_id":"84528192421","traverse_only":false,\
+                "no_access":false}}""",
+                name, hex(random, 22));
+    }
+
+    private static String hex(Random random, int length) {
+        var bytes = new byte[(length + 1) / 2];
+        random.nextBytes(bytes);
+        return HexFormat.of().formatHex(bytes).substring(0, length);
+    }
+}
@@ -2,25 +2,89 @@ package com.moelholm.tools.aws;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.moelholm.tools.mediaorganizer.AppProperties;
+import com.moelholm.tools.mediaorganizer.AsyncConsoleLogging;
 import com.moelholm.tools.mediaorganizer.Main;
+import com.moelholm.tools.mediaorganizer.MediaOrganizer;
+import com.moelholm.tools.mediaorganizer.OrganizeJobs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ConfigurableApplicationContext;
 
+import java.util.Map;
+
+/**
+ * Runs the media organizer on AWS Lambda.
+ * <p>
+ * The application is started once per Lambda instance - in the init phase - and reused by every invocation that
+ * instance handles. With SnapStart the init phase runs once: when a version of the function is published. Every
+ * instance of that version is restored from a snapshot of the started application - so the configuration is the one
+ * that was loaded when the version was published. Note: changes in the parameter store (a rotated Dropbox access
+ * token, say) are therefore only picked up by a new version of the function (see the README).
+ * <p>
+ * The work can be split between several invocations that run at the same time: each invocation is then given its shard
+ * in its input - for example <code>{"shardIndex": 0, "shardCount": 4}</code>. Without those the configured shard (by
+ * default: all of the work) is used.
+ * <p>
+ * With organize jobs configured (mediaorganizer.jobs) an invocation runs all of them - so one function (and one
+ * started application) serves all of the accounts of the jobs.
+ */
 public class AwsLambdaHandler implements RequestHandler<Object, String> {
 
-    private final Logger logger = LoggerFactory.getLogger(AwsLambdaHandler.class);
+    private static final Logger LOGGER = LoggerFactory.getLogger(AwsLambdaHandler.class);
+
+    private static ConfigurableApplicationContext applicationContext;
+
+    public AwsLambdaHandler() {
+        try {
+            applicationContext();
+        } catch (RuntimeException e) {
+            // -(tried again by the first invocation - which then reports the error)-
+            LOGGER.error("Failed to start the application in the init phase", e);
+        }
+    }
 
     @Override
     public String handleRequest(Object input, Context context) {
-        logger.info("Lambda started");
+        LOGGER.info("Lambda started");
         try {
-            Main.main(new String[]{});
+            var organizeJobs = applicationContext().getBean(OrganizeJobs.class);
+            var mediaOrganizer = applicationContext().getBean(MediaOrganizer.class);
+            var shard = shardOf(input);
+            if (organizeJobs.isConfigured() && shard == null) {
+                organizeJobs.runAll();
+            } else if (organizeJobs.isConfigured()) {
+                organizeJobs.runAll(shard);
+            } else if (shard == null) {
+                mediaOrganizer.undoFlatMess();
+            } else {
+                mediaOrganizer.undoFlatMess(shard);
+            }
             return "Lambda finished successfully";
         } catch (Exception e) {
-            logger.error("Error while running lambda handler", e);
+            LOGGER.error("Error while running lambda handler", e);
             return "Lambda finished with error [%s] (see logs for details)".formatted(e.getMessage());
         } finally {
-            logger.info("Lambda finished");
+            LOGGER.info("Lambda finished");
+            AsyncConsoleLogging.flush(); // -(the instance may be frozen as soon as the invocation returns)-
+        }
+    }
+
+    private static AppProperties.Shard shardOf(Object input) {
+        if (input instanceof Map<?, ?> inputMap
+                && inputMap.get("shardIndex") instanceof Number shardIndex
+                && inputMap.get("shardCount") instanceof Number shardCount) {
+            return new AppProperties.Shard(shardIndex.intValue(), shardCount.intValue());
+        }
+        return null;
+    }
+
+    private static synchronized ConfigurableApplicationContext applicationContext() {
+        if (applicationContext == null) {
+            var start = System.nanoTime();
+            applicationContext = Main.startWithoutRunning();
+            LOGGER.info("Application started in [{}] ms", (System.nanoTime() - start) / 1_000_000);
         }
+        return applicationContext;
     }
-}
\ No newline at end of file
+}
@@ -3,20 +3,24 @@ package com.moelholm.tools.mediaorganizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
 @Component
 @Profile("!test")
+@ConditionalOnProperty(name = "mediaorganizer.runOnStartup", havingValue = "true", matchIfMissing = true)
 public class AppCommandLineRunner implements CommandLineRunner {
     private static final Logger LOGGER = LoggerFactory.getLogger(Main.class);
 
     private final AppProperties appProperties;
     private final MediaOrganizer organizer;
+    private final OrganizeJobs organizeJobs;
 
-    AppCommandLineRunner(MediaOrganizer organizer, AppProperties appProperties) {
+    AppCommandLineRunner(MediaOrganizer organizer, OrganizeJobs organizeJobs, AppProperties appProperties) {
         this.appProperties = appProperties;
         this.organizer = organizer;
+        this.organizeJobs = organizeJobs;
     }
 
     @Override
@@ -24,7 +28,13 @@ public class AppCommandLineRunner implements CommandLineRunner {
         try {
             LOGGER.info("Application started");
             LOGGER.info("Configuration: [{}]", appProperties);
-            organizer.undoFlatMess();
+            if (organizeJobs.isConfigured()) {
+                organizeJobs.runAll();
+            } else if (appProperties.watch().enabled()) {
+                organizer.watch();
+            } else {
+                organizer.undoFlatMess();
+            }
         } finally {
             LOGGER.info("Application finished");
         }
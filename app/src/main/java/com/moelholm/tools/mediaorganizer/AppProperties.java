@@ -6,10 +6,13 @@ import org.apache.commons.lang3.builder.ToStringStyle;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
 import java.util.Locale;
 
 @ConfigurationProperties(prefix = "mediaorganizer")
-public record AppProperties(FileSystemType fileSystemType, Source source, Destination destination, Mediafiles mediafiles) {
+public record AppProperties(FileSystemType fileSystemType, Source source, Destination destination, Mediafiles mediafiles, Move move, Index index, Metrics metrics, Dedup dedup, Metadata metadata, Plan plan, Shard shard, Progress progress, Watch watch, Jobs jobs) {
 
     public record Destination(
         String toDir,
@@ -20,5 +23,89 @@ public record AppProperties(FileSystemType fileSystemType, Source source, Destin
     }
 
     public record Source (String fromDir) {}
-    public record Mediafiles(String datePattern, String[] extensionsToMatch) {}
+    public record Mediafiles(String datePattern, String[] extensionsToMatch, boolean sniffExtensionlessFiles) {}
+    public record Move(int parallelism, OrganizeMode mode, int batchSize) {}
+    public record Index(boolean enabled, String file) {}
+    public record Metrics(String summaryFile, boolean emf, String emfNamespace) {}
+    public record Dedup(boolean enabled, int parallelism) {}
+    public record Metadata(boolean enabled, int parallelism, int cacheSize) {}
+    public record Plan(PlanMode mode, String file, Duration timeBudget) {}
+    public record Shard(int index, int count) {}
+    public record Progress(Duration interval) {}
+    public record Watch(boolean enabled, Duration settleTime, Duration quietPeriod) {}
+    public record Jobs(int parallelism, int moveThreads, List<Job> list) {}
+
+    /**
+     * @param name               names the job in the logs - and in the files of the job (index, plan and summary)
+     * @param fileSystemType     where the folders are (missing: the configured file system type)
+     * @param fromDir            the source folder of the job
+     * @param toDir              the destination folder of the job
+     * @param dropboxAccessToken the access token of the Dropbox account of the job (missing: the configured token)
+     * @param parallelism        how many media files the job may move at the same time (0: the configured parallelism)
+     */
+    public record Job(
+        String name,
+        FileSystemType fileSystemType,
+        String fromDir,
+        String toDir,
+        String dropboxAccessToken,
+        int parallelism) {
+
+        @Override
+        public String toString() {
+            // -(the configuration is logged: so the access token is left out)-
+            return String.format("Job[name=%s, fileSystemType=%s, fromDir=%s, toDir=%s, dropboxAccessToken=%s, parallelism=%s]",
+                name, fileSystemType, fromDir, toDir, dropboxAccessToken == null ? null : "***", parallelism);
+        }
+    }
+
+    /**
+     * @return the jobs (empty if none are configured)
+     */
+    public List<Job> jobList() {
+        return jobs == null || jobs.list() == null ? List.of() : jobs.list();
+    }
+
+    /**
+     * @return these properties - with the file system, folders and parallelism of the [job] (and with the index, plan
+     * and summary files named after it: so the jobs do not share them)
+     */
+    public AppProperties forJob(Job job) {
+        return new AppProperties(
+            job.fileSystemType() != null ? job.fileSystemType() : fileSystemType,
+            new Source(job.fromDir()),
+            new Destination(
+                job.toDir(),
+                destination.amountOfMediaFilesIndicatingAnEvent(),
+                destination.localeForGeneratingDestinationFolderNames(),
+                destination.suffixForDestinationFolderOfMiscMediaFiles(),
+                destination.suffixForDestinationFolderOfUnknownEventMediaFiles()),
+            mediafiles,
+            job.parallelism() > 0 ? new Move(job.parallelism(), move.mode(), move.batchSize()) : move,
+            index == null ? null : new Index(index.enabled(), fileOfJob(index.file(), job)),
+            metrics == null ? null : new Metrics(fileOfJob(metrics.summaryFile(), job), metrics.emf(), metrics.emfNamespace()),
+            dedup,
+            metadata,
+            plan == null ? null : new Plan(plan.mode(), fileOfJob(plan.file(), job), plan.timeBudget()),
+            shard,
+            progress,
+            watch,
+            null);
+    }
+
+    /**
+     * @return the file - with the name of the job before its extension (for example: run.index becomes run-anna.index)
+     */
+    private static String fileOfJob(String file, Job job) {
+        if (file == null || file.isBlank()) {
+            return file;
+        }
+        var path = Path.of(file);
+        var fileName = path.getFileName().toString();
+        var extensionStart = fileName.lastIndexOf('.');
+        var fileNameOfJob = extensionStart > 0
+            ? String.format("%s-%s%s", fileName.substring(0, extensionStart), job.name(), fileName.substring(extensionStart))
+            : String.format("%s-%s", fileName, job.name());
+        return path.resolveSibling(fileNameOfJob).toString();
+    }
 }
@@ -0,0 +1,83 @@
+package com.moelholm.tools.mediaorganizer;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.LoggerContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationEnvironmentPreparedEvent;
+import org.springframework.boot.context.logging.LoggingApplicationListener;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.Ordered;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands the console log lines to a background thread that writes them in batches - if property
+ * mediaorganizer.logging.console is "async" (the default is "sync": written by the thread that logs them).
+ * <p>
+ * Spring Boot's own logging configuration is kept (so logging.file.name and the like work as usual): once Spring Boot
+ * has configured the logging, its console appender is wrapped in an {@link AsyncAppender}. A full queue makes the
+ * logging thread wait - no lines are dropped.
+ */
+public class AsyncConsoleLogging implements ApplicationListener<ApplicationEnvironmentPreparedEvent>, Ordered {
+
+    private static final String CONSOLE_APPENDER = "CONSOLE";
+
+    private static final String ASYNC_CONSOLE_APPENDER = "ASYNC_CONSOLE";
+
+    private static final int QUEUE_SIZE = 8192;
+
+    private static final int MAX_FLUSH_MILLIS = 5000;
+
+    @Override
+    public void onApplicationEvent(ApplicationEnvironmentPreparedEvent event) {
+        var console = event.getEnvironment().getProperty("mediaorganizer.logging.console", "sync");
+        if (!"async".equals(console) || !(LoggerFactory.getILoggerFactory() instanceof LoggerContext loggerContext)) {
+            return;
+        }
+        var root = loggerContext.getLogger(Logger.ROOT_LOGGER_NAME);
+        var consoleAppender = root.getAppender(CONSOLE_APPENDER);
+        if (consoleAppender == null) {
+            return;
+        }
+        var asyncAppender = new AsyncAppender();
+        asyncAppender.setContext(loggerContext);
+        asyncAppender.setName(ASYNC_CONSOLE_APPENDER);
+        asyncAppender.setQueueSize(QUEUE_SIZE);
+        asyncAppender.setDiscardingThreshold(0);
+        asyncAppender.setMaxFlushTime(MAX_FLUSH_MILLIS);
+        asyncAppender.addAppender(consoleAppender);
+        asyncAppender.start();
+        root.addAppender(asyncAppender);
+        root.detachAppender(consoleAppender);
+    }
+
+    /**
+     * Waits (for at most 5 seconds) until the queued console log lines have been written. For callers whose process
+     * may be frozen once they return (as AWS Lambda does between invocations) - so that the log lines of an
+     * invocation are not written when a later invocation thaws the process.
+     */
+    public static void flush() {
+        if (!(LoggerFactory.getILoggerFactory() instanceof LoggerContext loggerContext)) {
+            return;
+        }
+        var appender = loggerContext.getLogger(Logger.ROOT_LOGGER_NAME).getAppender(ASYNC_CONSOLE_APPENDER);
+        if (!(appender instanceof AsyncAppender asyncAppender)) {
+            return;
+        }
+        var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_FLUSH_MILLIS);
+        while (asyncAppender.getNumberOfElementsInQueue() > 0 && System.nanoTime() - deadline < 0) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public int getOrder() {
+        return LoggingApplicationListener.DEFAULT_ORDER + 1;
+    }
+}
@@ -0,0 +1,59 @@
+package com.moelholm.tools.mediaorganizer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs tasks on a thread pool that is shared with others - at most [maxConcurrency] of them at the same time. The tasks
+ * wait in a queue of their own (not in the queue of the pool), and a thread of the pool runs only one of them before it
+ * goes to the back of the queue of the pool: so the capped executors that share a pool take turns (one with many tasks
+ * does not starve the others).
+ */
+class CappedExecutor implements Executor {
+
+    private final Executor pool;
+
+    private final int maxConcurrency;
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger runningCount = new AtomicInteger();
+
+    CappedExecutor(Executor pool, int maxConcurrency) {
+        this.pool = pool;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        runNextIfAllowed();
+    }
+
+    private void runNextIfAllowed() {
+        while (!tasks.isEmpty()) {
+            var running = runningCount.get();
+            if (running >= maxConcurrency) {
+                return;
+            }
+            if (runningCount.compareAndSet(running, running + 1)) {
+                pool.execute(this::runNext);
+                return;
+            }
+        }
+    }
+
+    private void runNext() {
+        try {
+            var task = tasks.poll();
+            if (task != null) {
+                task.run();
+            }
+        } finally {
+            runningCount.decrementAndGet();
+            runNextIfAllowed();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.moelholm.tools.mediaorganizer;
+
+import java.text.DateFormatSymbols;
+import java.text.ParsePosition;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.Locale;
+
+/**
+ * Extracts the "year - month - day" part of a destination folder name from a file name.
+ * <p>
+ * Everything that can be decided up front is decided when the extractor is built: when the date pattern only consists
+ * of fixed width numeric fields (like the default {@code yyyy-MM-dd HH.mm.ss}) the file name is matched char by char
+ * - without substrings, a parser or an exception per file name (only the resulting folder name is allocated). File
+ * names that do not match it char by char (such as {@code 2015-3-7 9.05.00.jpg}) - and other patterns - are parsed
+ * with a lenient {@link DateTimeFormatter} that accepts what {@link java.text.SimpleDateFormat} accepted: numbers
+ * without leading zeros and month names in any case. It uses a {@link ParsePosition} so that non matching file names
+ * do not cost an exception.
+ */
+class DateExtractor {
+
+    private final String[] monthNames;
+
+    private final FixedWidthPattern fixedWidthPattern;
+
+    private final DateTimeFormatter dateTimeFormatter;
+
+    DateExtractor(String datePattern, Locale locale) {
+        this.monthNames = capitalizedMonthNames(locale);
+        this.fixedWidthPattern = FixedWidthPattern.compile(datePattern);
+        this.dateTimeFormatter = new DateTimeFormatterBuilder()
+                .parseLenient()
+                .parseCaseInsensitive()
+                .appendPattern(datePattern)
+                .toFormatter(locale);
+    }
+
+    /**
+     * @return for example {@code "2015 - October - 11"} - or null if the file name does not start with a date
+     */
+    String toYearMonthDayString(String fileName) {
+        if (fixedWidthPattern != null) {
+            var yearMonthDayString = fixedWidthPattern.toYearMonthDayString(fileName, this);
+            if (yearMonthDayString != null) {
+                return yearMonthDayString;
+            }
+        }
+        return parseWithDateTimeFormatter(fileName);
+    }
+
+    /**
+     * @return for example {@code "2015 - October - 11"}
+     */
+    String toYearMonthDayString(LocalDate date) {
+        return format(date.getYear(), date.getMonthValue(), date.getDayOfMonth());
+    }
+
+    private String parseWithDateTimeFormatter(String fileName) {
+        var parsePosition = new ParsePosition(0);
+        var parsed = dateTimeFormatter.parseUnresolved(fileName, parsePosition);
+        if (parsed == null || parsePosition.getErrorIndex() >= 0) {
+            return null;
+        }
+        return format(
+                field(parsed, ChronoField.YEAR_OF_ERA, field(parsed, ChronoField.YEAR, 1970)),
+                field(parsed, ChronoField.MONTH_OF_YEAR, 1),
+                field(parsed, ChronoField.DAY_OF_MONTH, 1));
+    }
+
+    private static int field(TemporalAccessor parsed, ChronoField field, int defaultValue) {
+        return parsed.isSupported(field) ? (int) parsed.getLong(field) : defaultValue;
+    }
+
+    private String format(int year, int month, int day) {
+        if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+            // -(roll over like the lenient java.text.SimpleDateFormat does: 2015-02-30 is 2015-03-02)-
+            var lenientDate = LocalDate.of(year, 1, 1).plusMonths(month - 1L).plusDays(day - 1L);
+            year = lenientDate.getYear();
+            month = lenientDate.getMonthValue();
+            day = lenientDate.getDayOfMonth();
+        }
+        return new StringBuilder(24)
+                .append(year)
+                .append(" - ")
+                .append(monthNames[month - 1])
+                .append(" - ")
+                .append(day)
+                .toString();
+    }
+
+    private static int daysInMonth(int year, int month) {
+        return switch (month) {
+            case 2 -> (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+
+    private static String[] capitalizedMonthNames(Locale locale) {
+        var months = new DateFormatSymbols(locale).getMonths();
+        var monthNames = new String[12];
+        for (int i = 0; i < monthNames.length; i++) {
+            monthNames[i] = Character.toUpperCase(months[i].charAt(0)) + months[i].substring(1);
+        }
+        return monthNames;
+    }
+
+    /**
+     * A date pattern where every field has a fixed width and a fixed offset - for example {@code yyyy-MM-dd HH.mm.ss}.
+     */
+    private record FixedWidthPattern(String pattern, int yearOffset, int monthOffset, int dayOffset) {
+
+        static FixedWidthPattern compile(String pattern) {
+            int yearOffset = -1, monthOffset = -1, dayOffset = -1;
+            for (int i = 0; i < pattern.length(); ) {
+                var c = pattern.charAt(i);
+                var runLength = 1;
+                while (i + runLength < pattern.length() && pattern.charAt(i + runLength) == c) {
+                    runLength++;
+                }
+                if (c == 'y' && runLength == 4) {
+                    yearOffset = i;
+                } else if (c == 'M' && runLength == 2) {
+                    monthOffset = i;
+                } else if (c == 'd' && runLength == 2) {
+                    dayOffset = i;
+                } else if ((c == 'H' || c == 'm' || c == 's') && runLength == 2) {
+                    // -(digits - but not used for the folder name)-
+                } else if (Character.isLetter(c) || c == '\'') {
+                    return null;
+                }
+                i += runLength;
+            }
+            if (yearOffset < 0 || monthOffset < 0 || dayOffset < 0) {
+                return null;
+            }
+            return new FixedWidthPattern(pattern, yearOffset, monthOffset, dayOffset);
+        }
+
+        String toYearMonthDayString(String fileName, DateExtractor dateExtractor) {
+            if (fileName.length() < pattern.length()) {
+                return null;
+            }
+            for (int i = 0; i < pattern.length(); i++) {
+                var p = pattern.charAt(i);
+                var c = fileName.charAt(i);
+                if (Character.isLetter(p) ? (c < '0' || c > '9') : c != p) {
+                    return null;
+                }
+            }
+            return dateExtractor.format(
+                    number(fileName, yearOffset, 4),
+                    number(fileName, monthOffset, 2),
+                    number(fileName, dayOffset, 2));
+        }
+
+        private static int number(String fileName, int offset, int length) {
+            var number = 0;
+            for (int i = offset; i < offset + length; i++) {
+                number = number * 10 + (fileName.charAt(i) - '0');
+            }
+            return number;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.moelholm.tools.mediaorganizer;
+
+import com.moelholm.tools.mediaorganizer.filesystem.FileEntry;
+import com.moelholm.tools.mediaorganizer.filesystem.FileSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Decides - by content, not just by name - what should happen to a batch of media files that is about to be moved to a
+ * destination folder: a media file with the same content as a file in the destination folder (or as another media file
+ * of the batch) is a duplicate that is left where it is. A media file with the same name as a different file is a
+ * collision that is moved under a new name. Everything else is new.
+ * <p>
+ * Comparing contents is expensive - so it is done in stages: only files of the same size can have the same content, so
+ * only those are hashed. They are first hashed partially (their first 64 KB) - and only the files that still look
+ * alike are hashed fully (see {@link FileSystem#contentHash(FileEntry)}). The hashing runs in parallel on a pool of its
+ * own - which is shut down when the deduplicator is closed.
+ */
+class Deduplicator implements AutoCloseable {
+
+    private static final int PARTIAL_HASH_LENGTH = 64 * 1024;
+
+    enum Verdict {
+        NEW,
+        DUPLICATE,
+        COLLISION
+    }
+
+    /**
+     * @param to          where the media file should be moved to (null for duplicates)
+     * @param duplicateOf the file with the same content (only for duplicates)
+     */
+    record Decision(FileEntry mediaFile, Verdict verdict, Path to, Path duplicateOf) {
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final FileSystem fileSystem;
+
+    private final ForkJoinPool hashingPool;
+
+    /**
+     * @param parallelism how many files (or blocks of files) may be hashed at the same time - 0 means one per core
+     */
+    Deduplicator(FileSystem fileSystem, int parallelism) {
+        this.fileSystem = fileSystem;
+        this.hashingPool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @return one decision per media file - in the same order as the given media files
+     */
+    List<Decision> decide(List<FileEntry> mediaFiles, Path destinationDirectory) {
+        var existingFiles = existingFilesIn(destinationDirectory);
+        var contentKeys = contentKeysOf(mediaFiles, existingFiles);
+
+        var contentAtDestination = new HashMap<String, Path>();
+        var namesAtDestination = new HashSet<String>();
+        for (var existingFile : existingFiles) {
+            contentAtDestination.putIfAbsent(contentKeys.get(existingFile), existingFile.path());
+            namesAtDestination.add(lowerCaseNameOf(existingFile.path()));
+        }
+
+        var decisions = new ArrayList<Decision>(mediaFiles.size());
+        for (var mediaFile : mediaFiles) {
+            var contentKey = contentKeys.get(mediaFile);
+            var duplicateOf = contentAtDestination.get(contentKey);
+            if (duplicateOf != null) {
+                decisions.add(new Decision(mediaFile, Verdict.DUPLICATE, null, duplicateOf));
+                continue;
+            }
+            var to = destinationDirectory.resolve(mediaFile.path().getFileName());
+            var verdict = Verdict.NEW;
+            if (!namesAtDestination.add(lowerCaseNameOf(to))) {
+                to = unusedNameFor(to, namesAtDestination);
+                verdict = Verdict.COLLISION;
+            }
+            contentAtDestination.put(contentKey, to);
+            decisions.add(new Decision(mediaFile, verdict, to, null));
+        }
+        return decisions;
+    }
+
+    @Override
+    public void close() {
+        hashingPool.shutdown();
+    }
+
+    private List<FileEntry> existingFilesIn(Path destinationDirectory) {
+        if (!fileSystem.existingDirectory(destinationDirectory)) {
+            return List.of();
+        }
+        try (var existingFiles = fileSystem.streamOfAllFileEntriesFromPath(destinationDirectory)) {
+            return existingFiles.toList();
+        }
+    }
+
+    /**
+     * @return a key per file - files have the same key only if they have the same content
+     */
+    private Map<FileEntry, String> contentKeysOf(List<FileEntry> mediaFiles, List<FileEntry> existingFiles) {
+        var allFiles = Stream.concat(mediaFiles.stream(), existingFiles.stream()).toList();
+        var mediaFileSet = Collections.newSetFromMap(new IdentityHashMap<FileEntry, Boolean>());
+        mediaFileSet.addAll(mediaFiles);
+
+        var contentKeys = new IdentityHashMap<FileEntry, String>();
+        allFiles.forEach(file -> contentKeys.put(file, String.format("unique:%s", file.path())));
+
+        var lookAlikes = lookAlikes(allFiles, mediaFileSet, file -> file.size() < 0 ? null : Long.toString(file.size()));
+        var partialHashes = hashAll(lookAlikes, this::partialHashOf);
+        lookAlikes = lookAlikes(lookAlikes, mediaFileSet, file -> partialHashes.get(file) == null
+                ? null
+                : String.format("%s:%s", file.size(), partialHashes.get(file)));
+        var contentHashes = hashAll(lookAlikes, fileSystem::contentHash);
+        contentHashes.forEach((file, contentHash) ->
+                contentKeys.put(file, String.format("%s:%s", file.size(), contentHash)));
+        return contentKeys;
+    }
+
+    /**
+     * @return the files that share their key with another file - leaving out groups without any media file (and files
+     * without a key)
+     */
+    private static List<FileEntry> lookAlikes(
+            List<FileEntry> files, Set<FileEntry> mediaFiles, Function<FileEntry, String> keyFunction) {
+        var filesByKey = new HashMap<String, List<FileEntry>>();
+        for (var file : files) {
+            var key = keyFunction.apply(file);
+            if (key != null) {
+                filesByKey.computeIfAbsent(key, k -> new ArrayList<>(2)).add(file);
+            }
+        }
+        var lookAlikes = new ArrayList<FileEntry>();
+        for (var group : filesByKey.values()) {
+            if (group.size() > 1 && group.stream().anyMatch(mediaFiles::contains)) {
+                lookAlikes.addAll(group);
+            }
+        }
+        return lookAlikes;
+    }
+
+    /**
+     * @return the hashes of the files (files that could not be hashed are left out - and thereby treated as unique)
+     */
+    private Map<FileEntry, String> hashAll(List<FileEntry> files, Hasher hasher) {
+        if (files.isEmpty()) {
+            return Map.of();
+        }
+        var hashes = new ConcurrentHashMap<FileEntry, String>();
+        hashingPool.submit(() -> files.parallelStream().forEach(file -> {
+            try {
+                hashes.put(file, hasher.hash(file));
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Failed to hash [{}] - so treating it as unique (Cause says: {})", file.path(), e.getMessage());
+            }
+        })).join();
+        return hashes;
+    }
+
+    private String partialHashOf(FileEntry file) throws IOException {
+        if (file.contentHash() != null) {
+            return file.contentHash();
+        }
+        try {
+            var firstBytes = fileSystem.read(file.path(), 0, PARTIAL_HASH_LENGTH);
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(firstBytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static Path unusedNameFor(Path to, Set<String> namesAtDestination) {
+        var fileName = to.getFileName().toString();
+        var extensionIndex = fileName.lastIndexOf('.');
+        var baseName = extensionIndex > 0 ? fileName.substring(0, extensionIndex) : fileName;
+        var extension = extensionIndex > 0 ? fileName.substring(extensionIndex) : "";
+        for (int i = 1; ; i++) {
+            var candidate = to.resolveSibling(String.format("%s (%s)%s", baseName, i, extension));
+            if (namesAtDestination.add(lowerCaseNameOf(candidate))) {
+                return candidate;
+            }
+        }
+    }
+
+    private static String lowerCaseNameOf(Path path) {
+        return path.getFileName().toString().toLowerCase(Locale.ROOT);
+    }
+
+    @FunctionalInterface
+    private interface Hasher {
+        String hash(FileEntry file) throws IOException;
+    }
+}
@@ -1,17 +1,44 @@
 package com.moelholm.tools.mediaorganizer;
 
 import com.moelholm.tools.mediaorganizer.filesystem.DropboxFileSystem.DropboxFileSystemProperties;
+import com.moelholm.tools.mediaorganizer.filesystem.LocalFileSystem.LocalFileSystemProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.builder.SpringApplicationBuilder;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
 
 @SpringBootApplication
-@EnableConfigurationProperties({AppProperties.class, DropboxFileSystemProperties.class})
+@EnableConfigurationProperties({AppProperties.class, DropboxFileSystemProperties.class, LocalFileSystemProperties.class})
 public class Main {
     public static void main(String[] args) {
-        new SpringApplicationBuilder(Main.class)
+        application().run(args);
+    }
+
+    /**
+     * Starts the application without organizing anything - for callers that keep the application running and invoke
+     * the {@link MediaOrganizer} themselves.
+     */
+    public static ConfigurableApplicationContext startWithoutRunning() {
+        return application()
+                .properties("mediaorganizer.runOnStartup=false")
+                .run();
+    }
+
+    private static SpringApplicationBuilder application() {
+        return new SpringApplicationBuilder(Main.class)
+                .main(Main.class)
                 .web(WebApplicationType.NONE)
-                .run(args);
+                .listeners(new AsyncConsoleLogging());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    MeterRegistry meterRegistry() {
+        return new SimpleMeterRegistry();
     }
 }
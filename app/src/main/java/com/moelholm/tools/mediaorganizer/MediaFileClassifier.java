@@ -0,0 +1,122 @@
+package com.moelholm.tools.mediaorganizer;
+
+import com.moelholm.tools.mediaorganizer.filesystem.FileSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Decides whether a file is a media file that should be organized.
+ * <p>
+ * The configured extensions are put into a small case insensitive hash table when the classifier is built - so
+ * classifying a file name neither allocates nor lower cases anything. Files without an extension can optionally be
+ * classified by sniffing the magic bytes at the start of the file.
+ */
+class MediaFileClassifier {
+
+    private static final int MAGIC_BYTES_LENGTH = 12;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final String[] extensionTable;
+
+    private final boolean sniffExtensionlessFiles;
+
+    private final FileSystem fileSystem;
+
+    MediaFileClassifier(String[] extensionsToMatch, boolean sniffExtensionlessFiles, FileSystem fileSystem) {
+        this.extensionTable = createExtensionTable(extensionsToMatch);
+        this.sniffExtensionlessFiles = sniffExtensionlessFiles;
+        this.fileSystem = fileSystem;
+    }
+
+    boolean isMediaFile(Path path) {
+        var pathString = path.toString();
+        var fileNameStart = pathString.lastIndexOf(path.getFileSystem().getSeparator()) + 1;
+        var extensionStart = pathString.lastIndexOf('.') + 1;
+        if (extensionStart <= fileNameStart) {
+            return sniffExtensionlessFiles && isMediaFileByMagicBytes(path);
+        }
+        return containsExtension(pathString, extensionStart, pathString.length() - extensionStart);
+    }
+
+    private boolean containsExtension(String text, int offset, int length) {
+        var mask = extensionTable.length - 1;
+        for (int slot = caseInsensitiveHash(text, offset, length) & mask; ; slot = (slot + 1) & mask) {
+            var extension = extensionTable[slot];
+            if (extension == null) {
+                return false;
+            }
+            if (extension.length() == length && extension.regionMatches(true, 0, text, offset, length)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean isMediaFileByMagicBytes(Path path) {
+        try {
+            var magicBytes = fileSystem.read(path, 0, MAGIC_BYTES_LENGTH);
+            var sniffedExtension = sniffExtension(magicBytes);
+            return sniffedExtension != null
+                    && containsExtension(sniffedExtension, 0, sniffedExtension.length());
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to read the magic bytes of {} (Cause says: {})", path, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @return the extension that files with the given magic bytes normally have - or null if unrecognized
+     */
+    static String sniffExtension(byte[] magicBytes) {
+        if (magicBytes.length >= 3
+                && (magicBytes[0] & 0xFF) == 0xFF && (magicBytes[1] & 0xFF) == 0xD8 && (magicBytes[2] & 0xFF) == 0xFF) {
+            return "jpg";
+        }
+        if (magicBytes.length < 12) {
+            return null;
+        }
+        var boxType = new String(magicBytes, 4, 4, StandardCharsets.US_ASCII);
+        if (boxType.equals("ftyp")) {
+            return switch (new String(magicBytes, 8, 4, StandardCharsets.US_ASCII)) {
+                case "heic", "heix", "hevc", "heim", "heis", "mif1", "msf1" -> "heic";
+                case "qt  " -> "mov";
+                default -> "mp4";
+            };
+        }
+        return switch (boxType) {
+            case "moov", "mdat", "wide", "free", "skip" -> "mov";
+            default -> null;
+        };
+    }
+
+    private static String[] createExtensionTable(String[] extensionsToMatch) {
+        var extensions = Arrays.stream(extensionsToMatch)
+                .map(extension -> extension.toLowerCase(Locale.ROOT))
+                .distinct()
+                .toArray(String[]::new);
+        var table = new String[Integer.highestOneBit(Math.max(1, extensions.length) * 4)];
+        var mask = table.length - 1;
+        for (var extension : extensions) {
+            var slot = caseInsensitiveHash(extension, 0, extension.length()) & mask;
+            while (table[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = extension;
+        }
+        return table;
+    }
+
+    private static int caseInsensitiveHash(String text, int offset, int length) {
+        var hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + Character.toLowerCase(text.charAt(i));
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,166 @@
+package com.moelholm.tools.mediaorganizer;
+
+import com.moelholm.tools.mediaorganizer.filesystem.FileEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches a folder (with a {@link WatchService}) for files that appear in it - and hands them over in micro-batches:
+ * <ul>
+ *   <li>a file is ready once it has stopped growing: its size and last modified time have not changed for
+ *   [settleTime] (so files that are still being copied or uploaded are left alone)</li>
+ *   <li>the ready files are handed over together once no files have appeared or changed for [quietPeriod] - or as
+ *   soon as [maxBatchSize] files are ready</li>
+ * </ul>
+ * Only the folder itself is watched (not its subfolders). Should the watch service lose events, the whole folder is
+ * looked at again.
+ */
+class MediaFolderWatcher implements AutoCloseable {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Path folder;
+
+    private final long settleNanos;
+
+    private final long quietNanos;
+
+    private final int maxBatchSize;
+
+    private final WatchService watchService;
+
+    private final Map<Path, Candidate> candidates = new LinkedHashMap<>();
+
+    private long lastChangeNanos = System.nanoTime();
+
+    /**
+     * A file that has appeared - as it looked when it last changed.
+     */
+    private record Candidate(long size, FileTime lastModified, long unchangedSinceNanos) {
+    }
+
+    /**
+     * Starts watching right away: files that appear from now on are handed over by {@link #run(Consumer)}.
+     */
+    MediaFolderWatcher(Path folder, Duration settleTime, Duration quietPeriod, int maxBatchSize) throws IOException {
+        this.folder = folder;
+        this.settleNanos = settleTime.toNanos();
+        this.quietNanos = quietPeriod.toNanos();
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.watchService = folder.getFileSystem().newWatchService();
+        folder.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    /**
+     * Hands over the ready files in batches - until the thread is interrupted.
+     */
+    void run(Consumer<List<FileEntry>> batchConsumer) throws IOException, InterruptedException {
+        var pollMillis = Math.max(10, Math.min(settleNanos, quietNanos) / 2 / 1_000_000);
+        while (!Thread.currentThread().isInterrupted()) {
+            var watchKey = watchService.poll(pollMillis, TimeUnit.MILLISECONDS);
+            if (watchKey != null) {
+                for (var event : watchKey.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        logger.info("Lost track of the changes in [{}] - so looking at all of its files", folder);
+                        offerAllFiles();
+                    } else {
+                        offer(folder.resolve((Path) event.context()));
+                    }
+                }
+                if (!watchKey.reset()) {
+                    throw new IOException(String.format("Folder [%s] can no longer be watched", folder));
+                }
+            }
+            var readyFiles = readyFiles();
+            if (!readyFiles.isEmpty()
+                    && (readyFiles.size() >= maxBatchSize || System.nanoTime() - lastChangeNanos >= quietNanos)) {
+                readyFiles.forEach(readyFile -> candidates.remove(readyFile.path()));
+                batchConsumer.accept(readyFiles);
+            }
+        }
+        throw new InterruptedException();
+    }
+
+    private void offerAllFiles() throws IOException {
+        try (var files = Files.list(folder)) {
+            for (var file : files.toList()) {
+                offer(file);
+            }
+        }
+    }
+
+    private void offer(Path file) {
+        var attributes = attributesOf(file);
+        if (attributes == null || !attributes.isRegularFile()) {
+            candidates.remove(file);
+            return;
+        }
+        update(file, attributes);
+    }
+
+    /**
+     * @return the files that have not changed for [settleTime] - at most [maxBatchSize] of them
+     */
+    private List<FileEntry> readyFiles() {
+        var readyFiles = new ArrayList<FileEntry>();
+        for (var file : List.copyOf(candidates.keySet())) {
+            var attributes = attributesOf(file);
+            if (attributes == null) {
+                candidates.remove(file);
+                continue;
+            }
+            var candidate = update(file, attributes);
+            if (System.nanoTime() - candidate.unchangedSinceNanos() >= settleNanos && readyFiles.size() < maxBatchSize) {
+                readyFiles.add(new FileEntry(file, attributes.size(), attributes.lastModifiedTime().toInstant()));
+            }
+        }
+        return readyFiles;
+    }
+
+    private Candidate update(Path file, BasicFileAttributes attributes) {
+        var candidate = candidates.get(file);
+        if (candidate != null
+                && candidate.size() == attributes.size()
+                && candidate.lastModified().equals(attributes.lastModifiedTime())) {
+            return candidate;
+        }
+        lastChangeNanos = System.nanoTime();
+        candidate = new Candidate(attributes.size(), attributes.lastModifiedTime(), lastChangeNanos);
+        candidates.put(file, candidate);
+        return candidate;
+    }
+
+    /**
+     * @return the attributes of the file - or null if it is gone
+     */
+    private static BasicFileAttributes attributesOf(Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
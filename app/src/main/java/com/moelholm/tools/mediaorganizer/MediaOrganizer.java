@@ -1,25 +1,58 @@
 package com.moelholm.tools.mediaorganizer;
 
+import com.moelholm.tools.mediaorganizer.RunMetrics.Phase;
+import com.moelholm.tools.mediaorganizer.filesystem.FileEntry;
 import com.moelholm.tools.mediaorganizer.filesystem.FileSystem;
+import com.moelholm.tools.mediaorganizer.filesystem.FileSystemType;
+import com.moelholm.tools.mediaorganizer.filesystem.IncrementalListing;
+import com.moelholm.tools.mediaorganizer.filesystem.LocalFileSystem;
+import com.moelholm.tools.mediaorganizer.filesystem.Move;
+import com.moelholm.tools.mediaorganizer.filesystem.MoveResult;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
-import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Path;
-import java.text.DateFormatSymbols;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
 
 @Component
-public class MediaOrganizer {
+public class MediaOrganizer implements AutoCloseable {
+
+    /**
+     * How long to wait for changes at a time when following them (Dropbox holds a longpoll for up to 480 seconds).
+     */
+    private static final Duration FOLLOW_CHANGES_WAIT = Duration.ofMinutes(5);
+
+    /**
+     * How long to wait before following the changes again after a run that left media files behind: a listing cursor
+     * that was not saved has changes right away.
+     */
+    private static final Duration FOLLOW_CHANGES_RETRY_DELAY = Duration.ofMinutes(1);
+
+    /**
+     * The day part of a "year - month - day" folder name (compiled once - not per destination folder).
+     */
+    private static final Pattern LAST_PART_OF_FOLDER_NAME = Pattern.compile("( - \\d+)$");
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
@@ -27,27 +60,655 @@ public class MediaOrganizer {
 
     private final FileSystem fileSystem;
 
-    public MediaOrganizer(AppProperties appProperties, FileSystem fileSystem) {
+    private final DateExtractor dateExtractor;
+
+    private final MediaFileClassifier mediaFileClassifier;
+
+    private final RunIndex runIndex;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Deduplicator deduplicator;
+
+    private final MetadataDateReader metadataDateReader;
+
+    private final Map<Path, Object> destinationDirectoryLocks = new ConcurrentHashMap<>();
+
+    private final Executor sharedMoveExecutor;
+
+    private final String eventFolderNameReplacement;
+
+    private final String miscFolderNameReplacement;
+
+    @Autowired
+    public MediaOrganizer(AppProperties appProperties, FileSystem fileSystem, MeterRegistry meterRegistry) {
+        this(appProperties, fileSystem, meterRegistry, null);
+    }
+
+    /**
+     * @param sharedMoveExecutor the thread pool to move media files with - shared with other media organizers (null:
+     *                           each run has a thread pool of its own). A run still moves at most
+     *                           [mediaorganizer.move.parallelism] media files at the same time.
+     */
+    MediaOrganizer(AppProperties appProperties, FileSystem fileSystem, MeterRegistry meterRegistry, Executor sharedMoveExecutor) {
         this.appProperties = appProperties;
+        this.sharedMoveExecutor = sharedMoveExecutor;
+        this.eventFolderNameReplacement = String.format(
+                "$1 - %s", appProperties.destination().suffixForDestinationFolderOfUnknownEventMediaFiles());
+        this.miscFolderNameReplacement = String.format(
+                " - %s", appProperties.destination().suffixForDestinationFolderOfMiscMediaFiles());
         this.fileSystem = fileSystem;
+        this.meterRegistry = meterRegistry;
+        this.dateExtractor = new DateExtractor(
+                appProperties.mediafiles().datePattern(),
+                appProperties.destination().localeForGeneratingDestinationFolderNames());
+        this.mediaFileClassifier = new MediaFileClassifier(
+                appProperties.mediafiles().extensionsToMatch(),
+                appProperties.mediafiles().sniffExtensionlessFiles(),
+                fileSystem);
+        this.runIndex = new RunIndex(
+                appProperties.index().enabled() ? Path.of(appProperties.index().file()) : null);
+        this.deduplicator = appProperties.dedup() != null && appProperties.dedup().enabled()
+                ? new Deduplicator(fileSystem, appProperties.dedup().parallelism())
+                : null;
+        this.metadataDateReader = appProperties.metadata() != null && appProperties.metadata().enabled()
+                ? new MetadataDateReader(
+                        fileSystem, appProperties.metadata().parallelism(), appProperties.metadata().cacheSize())
+                : null;
     }
 
     public void undoFlatMess() {
+        undoFlatMess(appProperties.shard());
+    }
+
+    /**
+     * @param shard the part of the work to do (null - or a count of 1 - means all of it): only the media files that go
+     *              to destination folders of the shard are moved
+     */
+    public void undoFlatMess(AppProperties.Shard shard) {
         var from = Path.of(appProperties.source().fromDir());
         var to = Path.of(appProperties.destination().toDir());
 
         logger.info("Moving files from [{}] to [{}]", from, to);
         assertValidDirs(from, to);
+        if (isSharded(shard)) {
+            if (shard.index() < 0 || shard.index() >= shard.count()) {
+                throw new IllegalStateException(String.format(
+                        "Invalid shard: index=[%s], count=[%s]", shard.index(), shard.count()));
+            }
+            logger.info("Moving only the media files of shard [{}] of [{}]", shard.index(), shard.count());
+        }
 
-        var groupedMediaFiles = fileSystem
-                .streamOfAllFilesFromPath(from)
-                .filter(mediaFiles())
-                .sorted()
-                .collect(groupByYearMonthDayString());
+        var runMetrics = new RunMetrics(meterRegistry);
+        var ownExecutor = sharedMoveExecutor == null
+                ? Executors.newFixedThreadPool(parallelism(), moveThreadFactory())
+                : null;
+        var executor = ownExecutor != null ? ownExecutor : new CappedExecutor(sharedMoveExecutor, parallelism());
+        runIndex.open();
+        try (var ignored = runMetrics.progress().start(appProperties.progress().interval())) {
+            switch (planMode()) {
+                case WRITE -> writePlan(from, to, runMetrics);
+                case EXECUTE -> executePlan(shard, executor, runMetrics);
+                case NONE -> {
+                    switch (appProperties.move().mode()) {
+                        case GROUPED -> organizeGrouped(from, to, shard, executor, runMetrics);
+                        case STREAMING -> organizeStreaming(from, to, shard, executor, runMetrics);
+                    }
+                }
+            }
+        } finally {
+            if (ownExecutor != null) {
+                ownExecutor.shutdown();
+            }
+            runIndex.close();
+        }
 
-        logStatistics(groupedMediaFiles);
+        logger.info("Finished moving media files: {}", runMetrics.moveStatistics());
+        publish(runMetrics.finish(appProperties));
+    }
 
-        groupedMediaFiles.forEach(processBatch(to));
+    /**
+     * Organizes the source folder - and then keeps organizing the media files that appear in it (in micro-batches, see
+     * {@link MediaFolderWatcher}) until the thread is interrupted. The media files per day are counted as they appear:
+     * so a day whose media files went to the "misc" folder of its month becomes an event (and its media files are
+     * moved to the event folder) once enough media files of it have appeared. Does not shard.
+     * <p>
+     * On a file system that can tell what has changed (Dropbox) the source folder is not watched but followed: see
+     * {@link #organizeChanges(Duration)}.
+     */
+    public void watch() {
+        if (fileSystem instanceof IncrementalListing) {
+            followChanges();
+            return;
+        }
+        if (appProperties.fileSystemType() != FileSystemType.LOCAL) {
+            throw new IllegalStateException(String.format(
+                    "Watching needs the local file system - not [%s]", appProperties.fileSystemType()));
+        }
+        var from = Path.of(appProperties.source().fromDir());
+        var to = Path.of(appProperties.destination().toDir());
+        var watch = appProperties.watch();
+        // -(watching starts before the first run: so files that appear during it are not missed)-
+        try (var watcher = new MediaFolderWatcher(
+                from, watch.settleTime(), watch.quietPeriod(), Math.max(1, appProperties.move().batchSize()))) {
+            undoFlatMess(null);
+            logger.info("Watching [{}] for media files", from);
+            var mediaFileCounts = new HashMap<String, Integer>();
+            watcher.run(appearedFiles -> organizeAppeared(appearedFiles, from, to, mediaFileCounts));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.info("Stopped watching [{}]", from);
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Failed to watch [%s]", from), e);
+        }
+    }
+
+    private void followChanges() {
+        var from = Path.of(appProperties.source().fromDir());
+        logger.info("Following the changes in [{}]", from);
+        while (!Thread.currentThread().isInterrupted()) {
+            var cursor = savedCursor(from);
+            if (organizeChanges(FOLLOW_CHANGES_WAIT) && Objects.equals(cursor, savedCursor(from))) {
+                logger.info("Media files were left in [{}] - so trying them again in [{}]", from, FOLLOW_CHANGES_RETRY_DELAY);
+                try {
+                    Thread.sleep(FOLLOW_CHANGES_RETRY_DELAY.toMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        logger.info("Stopped following the changes in [{}]", from);
+    }
+
+    /**
+     * Waits (for at most [wait]) until something changes in the source folder - and then organizes what has changed.
+     * Needs a file system that can tell what has changed (Dropbox) and the run index (which holds the cursor of the
+     * last listing): instead of listing the source folder over and over, a single request is held open by Dropbox until
+     * something changes - and then only the changes are listed. Without a cursor (the first time) the source folder is
+     * organized right away.
+     *
+     * @return true if the source folder was organized - false if nothing changed within [wait]
+     */
+    public boolean organizeChanges(Duration wait) {
+        if (!(fileSystem instanceof IncrementalListing incrementalListing)) {
+            throw new IllegalStateException(String.format(
+                    "Following the changes needs a file system that can tell what has changed - not [%s]",
+                    appProperties.fileSystemType()));
+        }
+        if (!appProperties.index().enabled()) {
+            throw new IllegalStateException("Following the changes needs the run index (mediaorganizer.index.enabled)");
+        }
+        var from = Path.of(appProperties.source().fromDir());
+        var cursor = savedCursor(from);
+        if (cursor != null) {
+            try {
+                if (!incrementalListing.awaitChanges(cursor, wait)) {
+                    logger.debug("Nothing changed in [{}]", from);
+                    return false;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Failed to wait for changes in [{}] - so organizing it right away (Cause says: {})",
+                        from, e.getMessage());
+            }
+        }
+        undoFlatMess();
+        return true;
+    }
+
+    /**
+     * Shuts down the thread pools of the organizer (called by Spring - or by {@link OrganizeJobs} for the organizers of
+     * its jobs).
+     */
+    @Override
+    public void close() {
+        if (deduplicator != null) {
+            deduplicator.close();
+        }
+        if (metadataDateReader != null) {
+            metadataDateReader.close();
+        }
+    }
+
+    private String savedCursor(Path from) {
+        return runIndex.cursor(from, appProperties.shard());
+    }
+
+    /**
+     * @param mediaFileCounts the media files per day that are at the destination - updated as media files are moved
+     */
+    private void organizeAppeared(List<FileEntry> appearedFiles, Path from, Path to, Map<String, Integer> mediaFileCounts) {
+        var runMetrics = new RunMetrics(meterRegistry);
+        var mediaFiles = appearedFiles.stream().peek(file -> runMetrics.listed()).filter(mediaFiles(runMetrics)).toList();
+        if (mediaFiles.isEmpty()) {
+            return;
+        }
+        readMetadataDatesOfUndatedMediaFiles(mediaFiles, runMetrics);
+        var groupedMediaFiles = runMetrics.time(Phase.GROUPING, () -> mediaFiles.stream()
+                .collect(groupByYearMonthDayString(runMetrics)));
+        runMetrics.time(Phase.MOVING, () -> groupedMediaFiles.forEach((yearMonthDayString, mediaFileList) -> {
+            var countBefore = mediaFileCounts.computeIfAbsent(
+                    yearMonthDayString, key -> mediaFileCountAtDestination(key, to, runMetrics));
+            var countAfter = countBefore + mediaFileList.size();
+            mediaFileCounts.put(yearMonthDayString, countAfter);
+            var destinationDirectoryPath = to.resolve(
+                    generateFinalDestinationDirectoryName(yearMonthDayString, countAfter));
+            var miscDirectoryPath = to.resolve(generateFinalDestinationDirectoryName(yearMonthDayString, countBefore));
+            if (!miscDirectoryPath.equals(destinationDirectoryPath)) {
+                moveMediaFilesOfDay(yearMonthDayString, miscDirectoryPath, destinationDirectoryPath, runMetrics);
+            }
+            moveAll(mediaFileList, destinationDirectoryPath, runMetrics);
+        }));
+        logger.info("Organized [{}] media files that appeared in [{}]: {}", mediaFiles.size(), from,
+                runMetrics.moveStatistics());
+        publish(runMetrics.finish(appProperties));
+    }
+
+    /**
+     * @return how many media files of the day are at the destination - as far as it matters for the name of its
+     * folder: a day that already has an event folder counts as an event
+     */
+    private int mediaFileCountAtDestination(String yearMonthDayString, Path to, RunMetrics runMetrics) {
+        var eventCount = appProperties.destination().amountOfMediaFilesIndicatingAnEvent();
+        if (fileSystem.existingDirectory(to.resolve(generateFinalDestinationDirectoryName(yearMonthDayString, eventCount)))) {
+            return eventCount;
+        }
+        var miscDirectoryPath = to.resolve(generateFinalDestinationDirectoryName(yearMonthDayString, 0));
+        if (!fileSystem.existingDirectory(miscDirectoryPath)) {
+            return 0;
+        }
+        try (var files = fileSystem.streamOfAllFileEntriesFromPath(miscDirectoryPath)) {
+            return (int) files.filter(file -> isMediaFileOfDay(file, yearMonthDayString, runMetrics)).count();
+        }
+    }
+
+    /**
+     * Moves the media files of the day from the folder they were moved to so far - now that the day has a folder of its
+     * own.
+     */
+    private void moveMediaFilesOfDay(String yearMonthDayString, Path fromDirectoryPath, Path toDirectoryPath,
+                                     RunMetrics runMetrics) {
+        if (!fileSystem.existingDirectory(fromDirectoryPath)) {
+            return;
+        }
+        List<FileEntry> mediaFilesOfDay;
+        try (var files = fileSystem.streamOfAllFileEntriesFromPath(fromDirectoryPath)) {
+            mediaFilesOfDay = files.filter(file -> isMediaFileOfDay(file, yearMonthDayString, runMetrics)).toList();
+        }
+        logger.info("[{}] has become an event - so moving its [{}] media files from [{}] to [{}]",
+                yearMonthDayString, mediaFilesOfDay.size(), fromDirectoryPath.getFileName(), toDirectoryPath.getFileName());
+        moveAll(mediaFilesOfDay, toDirectoryPath, runMetrics);
+    }
+
+    /**
+     * @return true if the file at the destination is a media file of the day (other files - and the leftovers of copies
+     * that have not finished - are neither counted nor moved)
+     */
+    private boolean isMediaFileOfDay(FileEntry file, String yearMonthDayString, RunMetrics runMetrics) {
+        return !LocalFileSystem.isUnfinishedCopy(file.path())
+                && mediaFileClassifier.isMediaFile(file.path())
+                && yearMonthDayString.equals(toYearMonthDayString(file, runMetrics));
+    }
+
+    private void publish(RunSummary runSummary) {
+        logger.info("Run took [{}] ms ([{}] files per second) - time per phase in ms: {}",
+                runSummary.durationMillis(), String.format("%.1f", runSummary.filesPerSecond()), runSummary.phaseMillis());
+        var metrics = appProperties.metrics();
+        if (metrics == null) {
+            return;
+        }
+        if (metrics.summaryFile() != null && !metrics.summaryFile().isBlank()) {
+            try {
+                runSummary.writeTo(Path.of(metrics.summaryFile()));
+            } catch (IOException e) {
+                logger.warn(String.format("Failed to write run summary to [%s]", metrics.summaryFile()), e);
+            }
+        }
+        if (metrics.emf()) {
+            try {
+                // -(to standard out as-is: CloudWatch only picks up EMF lines that are not wrapped in a log pattern)-
+                System.out.println(runSummary.toEmfLine(metrics.emfNamespace()));
+            } catch (IOException e) {
+                logger.warn("Failed to print run summary in the CloudWatch Embedded Metric Format", e);
+            }
+        }
+    }
+
+    private void organizeGrouped(
+            Path from, Path to, AppProperties.Shard shard, Executor executor, RunMetrics runMetrics) {
+        var listingCursor = new AtomicReference<String>();
+        var mediaFiles = runMetrics.time(Phase.LISTING, () -> {
+            try (var mediaFileStream = streamOfMediaFilesToProcess(from, shard, listingCursor::set, runMetrics)) {
+                return mediaFileStream.toList();
+            }
+        });
+        readMetadataDatesOfUndatedMediaFiles(mediaFiles, runMetrics);
+        var groupedMediaFiles = runMetrics.time(Phase.GROUPING, () -> mediaFiles.stream()
+                .collect(groupByYearMonthDayString(runMetrics)));
+
+        var mediaFileCounts = new HashMap<String, Integer>();
+        groupedMediaFiles.forEach((yearMonthDayString, mediaFileList) ->
+                mediaFileCounts.put(yearMonthDayString, mediaFileList.size()));
+        logStatistics(mediaFileCounts);
+
+        var destinationDirectoryPaths = destinationDirectoryPaths(to, mediaFileCounts);
+
+        runMetrics.time(Phase.MOVING, () -> {
+            ensureDirectories(destinationDirectoryPaths.values(), shard);
+            var batchSize = Math.max(1, appProperties.move().batchSize());
+            var pendingMoves = new ArrayList<CompletableFuture<Void>>();
+            groupedMediaFiles.forEach((yearMonthDayString, mediaFileList) -> {
+                var destinationDirectoryPath = destinationDirectoryPaths.get(yearMonthDayString);
+                if (isInShard(destinationDirectoryPath, shard)) {
+                    runMetrics.progress().expect(mediaFileList.size());
+                    // -(a big day is split into batches - so that its media files are moved in parallel too)-
+                    for (int i = 0; i < mediaFileList.size(); i += batchSize) {
+                        pendingMoves.add(processBatch(destinationDirectoryPath, yearMonthDayString,
+                                mediaFileList.subList(i, Math.min(mediaFileList.size(), i + batchSize)),
+                                executor, runMetrics));
+                    }
+                }
+            });
+            CompletableFuture.allOf(pendingMoves.toArray(CompletableFuture[]::new)).join();
+        });
+
+        saveListingCursor(from, shard, listingCursor.get(), 0, runMetrics);
+    }
+
+    /**
+     * Organizes the media files without holding the listing in memory: the first pass over the listing only counts
+     * the media files per day (so that the destination folder names can be decided), the second pass moves the media
+     * files in batches of at most [batchSize] files per day. The first pass is measured as listing, the second pass as
+     * moving.
+     */
+    private void organizeStreaming(
+            Path from, Path to, AppProperties.Shard shard, Executor executor, RunMetrics runMetrics) {
+        var mediaFileCounts = new HashMap<String, Integer>();
+        forEachMediaFileWithDay(from, shard, cursor -> {
+        }, runMetrics, (mediaFile, yearMonthDayString) -> mediaFileCounts.merge(yearMonthDayString, 1, Integer::sum));
+
+        logStatistics(mediaFileCounts);
+
+        var destinationDirectoryPaths = destinationDirectoryPaths(to, mediaFileCounts);
+        mediaFileCounts.forEach((yearMonthDayString, mediaFileCount) -> {
+            if (isInShard(destinationDirectoryPaths.get(yearMonthDayString), shard)) {
+                runMetrics.progress().expect(mediaFileCount);
+            }
+        });
+
+        var batchSize = Math.max(1, appProperties.move().batchSize());
+        var pendingBatches = new Semaphore(parallelism() * 2);
+        var bufferedMediaFiles = new HashMap<String, List<FileEntry>>();
+        var listingCursor = new AtomicReference<String>();
+        var leftOutCount = new AtomicInteger();
+        runMetrics.time(Phase.MOVING, () -> {
+            ensureDirectories(destinationDirectoryPaths.values(), shard);
+            try (var mediaFiles = streamOfMediaFilesToProcess(from, shard, listingCursor::set, runMetrics)) {
+                mediaFiles.forEach(mediaFile -> {
+                    var yearMonthDayString = toYearMonthDayString(mediaFile, runMetrics);
+                    var destinationDirectoryPath = destinationDirectoryPaths.get(yearMonthDayString);
+                    if (destinationDirectoryPath == null) {
+                        logger.info("File [{}] appeared after it was counted - so skipping that", mediaFile.path());
+                        leftOutCount.incrementAndGet();
+                        return;
+                    }
+                    if (!isInShard(destinationDirectoryPath, shard)) {
+                        return;
+                    }
+                    var batch = bufferedMediaFiles.computeIfAbsent(yearMonthDayString, key -> new ArrayList<>(batchSize));
+                    batch.add(mediaFile);
+                    if (batch.size() >= batchSize) {
+                        submitBatch(bufferedMediaFiles.remove(yearMonthDayString),
+                                destinationDirectoryPath, pendingBatches, executor, runMetrics);
+                    }
+                });
+            }
+            bufferedMediaFiles.forEach((yearMonthDayString, batch) -> submitBatch(batch,
+                    destinationDirectoryPaths.get(yearMonthDayString), pendingBatches, executor, runMetrics));
+
+            pendingBatches.acquireUninterruptibly(parallelism() * 2);
+        });
+
+        saveListingCursor(from, shard, listingCursor.get(), leftOutCount.get(), runMetrics);
+    }
+
+    /**
+     * Writes a plan of what to move where - without moving anything. The plan is executed by a later run (see
+     * {@link #executePlan(AppProperties.Shard, Executor, RunMetrics)}). The whole plan is written - also by a
+     * sharded run.
+     */
+    private void writePlan(Path from, Path to, RunMetrics runMetrics) {
+        var plan = new MovePlan(Path.of(appProperties.plan().file()), null);
+        var listingCursor = new AtomicReference<String>();
+        try (var planWriter = plan.newWriter()) {
+            forEachMediaFileWithDay(from, null, listingCursor::set, runMetrics, planWriter::add);
+
+            logStatistics(planWriter.mediaFileCounts());
+
+            var destinationDirectoryPaths = destinationDirectoryPaths(to, planWriter.mediaFileCounts());
+            var header = new MovePlan.Header(from.toString(), listingCursor.get(), Instant.now().toString());
+            var start = System.nanoTime();
+            planWriter.finish(header, destinationDirectoryPaths::get);
+            runMetrics.record(Phase.PLANNING, start);
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Failed to write plan [%s]", plan.file()), e);
+        }
+        logger.info("Wrote plan [{}] - nothing has been moved yet", plan.file());
+        // -(the listing cursor is saved when the plan has been executed: until then the media files are still there)-
+    }
+
+    /**
+     * Moves the media files as the plan says. The plan is executed in chunks of [batchSize] x [parallelism] media
+     * files - and after each chunk it is checkpointed how far the plan has come. So a run that crashed (or ran out of
+     * its time budget) is resumed where it stopped: at most the moves of one chunk are tried again. A sharded run only
+     * executes the media files that go to destination folders of its shard (and has a checkpoint of its own) - and does
+     * not save the listing cursor of the plan: the next plan lists the source folder for all shards, and a shard cannot
+     * tell whether the other shards have moved their media files yet. Neither is it saved if moves of the plan failed
+     * (in any of the runs that executed it): the next plan lists those media files again.
+     */
+    private void executePlan(AppProperties.Shard shard, Executor executor, RunMetrics runMetrics) {
+        var plan = new MovePlan(Path.of(appProperties.plan().file()), shard);
+        var timeBudget = appProperties.plan().timeBudget();
+        var deadline = timeBudget == null || timeBudget.isZero() ? null : System.nanoTime() + timeBudget.toNanos();
+        var chunkSize = Math.max(1, appProperties.move().batchSize()) * parallelism();
+        try {
+            var header = plan.header();
+            var entriesDone = plan.entriesDone();
+            var failedMovesBefore = entriesDone > 0 ? plan.failedMoves() : 0;
+            if (entriesDone > 0) {
+                logger.info("Resuming plan [{}] after its first [{}] media files", plan.file(), entriesDone);
+            }
+            var chunk = new ArrayList<MovePlan.Entry>(chunkSize);
+            var entriesRead = entriesDone;
+            try (var entries = plan.entries()) {
+                for (var iterator = entries.skip(entriesDone).iterator(); iterator.hasNext(); ) {
+                    var entry = iterator.next();
+                    entriesRead++;
+                    if (isInShard(Path.of(entry.to()), shard)) {
+                        chunk.add(entry);
+                        runMetrics.progress().expect(1);
+                    }
+                    if (chunk.size() < chunkSize && iterator.hasNext()) {
+                        continue;
+                    }
+                    runMetrics.time(Phase.MOVING, () -> executeChunk(chunk, executor, runMetrics));
+                    entriesDone = entriesRead;
+                    plan.checkpoint(entriesDone, failedMovesBefore + runMetrics.moveStatistics().failedCount());
+                    chunk.clear();
+                    if (iterator.hasNext() && deadline != null && System.nanoTime() - deadline > 0) {
+                        logger.info("Stopping after [{}] media files of plan [{}] as the time budget is spent - the next run continues from there",
+                                entriesDone, plan.file());
+                        return;
+                    }
+                }
+            }
+            if (!isSharded(shard)) {
+                saveListingCursor(Path.of(header.source()), null, header.cursor(), failedMovesBefore, runMetrics);
+            }
+            logger.info("Executed plan [{}] - all of its [{}] media files have been processed", plan.file(), entriesDone);
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Failed to execute plan [%s]", plan.file()), e);
+        }
+    }
+
+    private void executeChunk(List<MovePlan.Entry> entries, Executor executor, RunMetrics runMetrics) {
+        var batchSize = Math.max(1, appProperties.move().batchSize());
+        var mediaFilesPerDestination = new LinkedHashMap<String, List<FileEntry>>();
+        entries.forEach(entry ->
+                mediaFilesPerDestination.computeIfAbsent(entry.to(), key -> new ArrayList<>()).add(entry.fileEntry()));
+        ensureDirectories(mediaFilesPerDestination.keySet().stream().map(Path::of).toList(), null);
+        var pendingMoves = new ArrayList<CompletableFuture<Void>>();
+        mediaFilesPerDestination.forEach((destinationDirectory, mediaFiles) -> {
+            for (int i = 0; i < mediaFiles.size(); i += batchSize) {
+                var batch = mediaFiles.subList(i, Math.min(mediaFiles.size(), i + batchSize));
+                pendingMoves.add(CompletableFuture.runAsync(
+                        () -> moveAll(batch, Path.of(destinationDirectory), runMetrics), executor));
+            }
+        });
+        CompletableFuture.allOf(pendingMoves.toArray(CompletableFuture[]::new)).join();
+    }
+
+    /**
+     * Lists the media files and hands each of them over together with the day it belongs to. Media files without a
+     * date in their name are handed over last: after their metadata has been read (in parallel).
+     */
+    private void forEachMediaFileWithDay(
+            Path from,
+            AppProperties.Shard shard,
+            Consumer<String> cursorConsumer,
+            RunMetrics runMetrics,
+            BiConsumer<FileEntry, String> action) {
+        var undatedMediaFiles = new ArrayList<FileEntry>();
+        runMetrics.time(Phase.LISTING, () -> {
+            try (var mediaFiles = streamOfMediaFilesToProcess(from, shard, cursorConsumer, runMetrics)) {
+                mediaFiles.forEach(mediaFile -> {
+                    if (metadataDateReader != null && yearMonthDayStringFromName(mediaFile, runMetrics) == null) {
+                        undatedMediaFiles.add(mediaFile);
+                    } else {
+                        action.accept(mediaFile, toYearMonthDayString(mediaFile, runMetrics));
+                    }
+                });
+            }
+        });
+        readMetadataDatesOfUndatedMediaFiles(undatedMediaFiles, runMetrics);
+        undatedMediaFiles.forEach(mediaFile -> action.accept(mediaFile, toYearMonthDayString(mediaFile, runMetrics)));
+    }
+
+    /**
+     * Saves the cursor of the listing - unless media files of the listing were left in the source folder: because
+     * their move failed, or because they were left out (by this run or an earlier run of the same plan). Then the
+     * cursor of the previous run is kept - so that the next run lists them again.
+     */
+    private void saveListingCursor(
+            Path from, AppProperties.Shard shard, String cursor, long leftOutCount, RunMetrics runMetrics) {
+        var failedCount = runMetrics.moveStatistics().failedCount();
+        if (failedCount > 0 || leftOutCount > 0) {
+            logger.info("Not saving the listing cursor of [{}] as [{}] media files were left behind - the next run lists them again",
+                    from, failedCount + leftOutCount);
+            return;
+        }
+        runIndex.saveCursor(from, shard, cursor);
+    }
+
+    Map<String, Path> destinationDirectoryPaths(Path to, Map<String, Integer> mediaFileCounts) {
+        var destinationDirectoryPaths = new HashMap<String, Path>();
+        mediaFileCounts.forEach((yearMonthDayString, mediaFileCount) -> destinationDirectoryPaths.put(
+                yearMonthDayString,
+                to.resolve(generateFinalDestinationDirectoryName(yearMonthDayString, mediaFileCount))));
+        return destinationDirectoryPaths;
+    }
+
+    /**
+     * Creates the destination folders (of the shard) in one go - before any media file is moved into them. Should that
+     * fail, the folders are created as the media files are moved.
+     */
+    private void ensureDirectories(Collection<Path> destinationDirectoryPaths, AppProperties.Shard shard) {
+        var directories = destinationDirectoryPaths.stream()
+                .filter(destinationDirectoryPath -> isInShard(destinationDirectoryPath, shard))
+                .collect(Collectors.toSet());
+        try {
+            fileSystem.ensureDirectories(directories);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to create the [{}] destination folders up front - they are created as media files are moved",
+                    directories.size(), e);
+        }
+    }
+
+    private void submitBatch(
+            List<FileEntry> mediaFiles,
+            Path destinationDirectoryPath,
+            Semaphore pendingBatches,
+            Executor executor,
+            RunMetrics runMetrics) {
+        pendingBatches.acquireUninterruptibly();
+        CompletableFuture
+                .runAsync(() -> moveAll(mediaFiles, destinationDirectoryPath, runMetrics), executor)
+                .whenComplete((result, throwable) -> pendingBatches.release());
+    }
+
+    /**
+     * Lists the media files in the source folder - leaving out what the run index says has been processed already (and
+     * the destination folder - in case it is located inside the source folder).
+     * Uses an incremental listing (only what changed since the last run of the shard) if the file system supports that.
+     */
+    private Stream<FileEntry> streamOfMediaFilesToProcess(
+            Path from, AppProperties.Shard shard, Consumer<String> cursorConsumer, RunMetrics runMetrics) {
+        var to = Path.of(appProperties.destination().toDir());
+        return streamOfFilesFromPath(from, shard, cursorConsumer)
+                .peek(fileEntry -> runMetrics.listed())
+                .filter(fileEntry -> !fileEntry.path().startsWith(to))
+                .filter(fileEntry -> !runIndex.isProcessed(fileEntry))
+                .filter(mediaFiles(runMetrics));
+    }
+
+    private Stream<FileEntry> streamOfFilesFromPath(
+            Path from, AppProperties.Shard shard, Consumer<String> cursorConsumer) {
+        if (!(fileSystem instanceof IncrementalListing incrementalListing)) {
+            return fileSystem.streamOfAllFileEntriesFromPath(from);
+        }
+        var cursor = runIndex.cursor(from, shard);
+        if (cursor != null) {
+            try {
+                logger.info("Listing only what changed in [{}] since the last run", from);
+                return incrementalListing.streamOfFileEntriesChangedSince(cursor, cursorConsumer);
+            } catch (RuntimeException e) {
+                logger.warn("Failed to list what changed since the last run - so listing everything (Cause says: {})",
+                        e.getMessage());
+            }
+        }
+        return incrementalListing.streamOfAllFileEntriesFromPath(from, cursorConsumer);
+    }
+
+    private static boolean isSharded(AppProperties.Shard shard) {
+        return shard != null && shard.count() > 1;
+    }
+
+    /**
+     * The destination folders are spread over the shards by (a stable hash of) their name - so the media files of a
+     * destination folder are all moved by the same shard.
+     */
+    private static boolean isInShard(Path destinationDirectoryPath, AppProperties.Shard shard) {
+        return !isSharded(shard)
+                || Math.floorMod(destinationDirectoryPath.getFileName().toString().hashCode(), shard.count()) == shard.index();
+    }
+
+    private PlanMode planMode() {
+        return appProperties.plan() == null ? PlanMode.NONE : appProperties.plan().mode();
+    }
+
+    private int parallelism() {
+        return Math.max(1, appProperties.move().parallelism());
+    }
+
+    private ThreadFactory moveThreadFactory() {
+        var threadCounter = new AtomicInteger();
+        return runnable -> {
+            var thread = new Thread(runnable, String.format("mover-%s", threadCounter.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        };
     }
 
     private void assertValidDirs(Path from, Path to) {
@@ -59,50 +720,54 @@ public class MediaOrganizer {
         }
     }
 
-    private void logStatistics(Map<String, List<Path>> groupedMediaFiles) {
-        logger.info("Found [{}] media files in total", groupedMediaFiles.values().stream()
-                .mapToInt(List::size)
+    private void logStatistics(Map<String, Integer> mediaFileCounts) {
+        logger.info("Found [{}] media files in total", mediaFileCounts.values().stream()
+                .mapToInt(Integer::intValue)
                 .sum());
-        groupedMediaFiles.forEach((yearMonthDayString, mediaFilePathList) -> logger.info(
+        mediaFileCounts.forEach((yearMonthDayString, mediaFileCount) -> logger.debug(
                 "    [{}] has [{}] media files",
                 yearMonthDayString,
-                mediaFilePathList.size()));
+                mediaFileCount));
     }
 
-    private BiConsumer<String, List<Path>> processBatch(Path to) {
-        return (yearMonthDayString, mediaFilePathList) -> {
-            logger.info(
-                    "Processing [{}] which has [{}] media files",
-                    yearMonthDayString,
-                    mediaFilePathList.size());
-
-            var destinationDirectoryName =
-                    generateFinalDestinationDirectoryName(yearMonthDayString, mediaFilePathList);
-
-            var destinationDirectoryPath = to.resolve(destinationDirectoryName);
-
-            mediaFilePathList.forEach(processMediaFile(destinationDirectoryPath));
-        };
+    private CompletableFuture<Void> processBatch(
+            Path destinationDirectoryPath,
+            String yearMonthDayString,
+            List<FileEntry> mediaFileList,
+            Executor executor,
+            RunMetrics runMetrics) {
+        logger.debug(
+                "Processing a batch of [{}] media files of [{}]",
+                mediaFileList.size(),
+                yearMonthDayString);
+
+        return CompletableFuture.runAsync(
+                () -> moveAll(mediaFileList, destinationDirectoryPath, runMetrics), executor);
     }
 
-    private Consumer<Path> processMediaFile(Path destinationDirectoryPath) {
-        return mediaFilePath ->
-                move(mediaFilePath, destinationDirectoryPath.resolve(mediaFilePath.getFileName()));
+    Collector<FileEntry, ?, Map<String, List<FileEntry>>> groupByYearMonthDayString(RunMetrics runMetrics) {
+        return Collectors.groupingBy(
+                mediaFile -> toYearMonthDayString(mediaFile, runMetrics),
+                Collectors.collectingAndThen(Collectors.toList(), MediaOrganizer::sorted));
     }
 
-    private Collector<Path, ?, Map<String, List<Path>>> groupByYearMonthDayString() {
-        return Collectors.groupingBy(this::toYearMonthDayString);
+    private static List<FileEntry> sorted(List<FileEntry> mediaFiles) {
+        mediaFiles.sort(Comparator.comparing(FileEntry::path));
+        return mediaFiles;
     }
 
-    private Predicate<? super Path> mediaFiles() {
-        return path ->
-                Arrays.asList(appProperties.mediafiles().extensionsToMatch()).stream()
-                        .anyMatch(extensionMatches(path));
-    }
-
-    private Predicate<String> extensionMatches(Path path) {
-        return fileExtension ->
-                path.toString().toLowerCase().endsWith(String.format(".%s", fileExtension));
+    Predicate<FileEntry> mediaFiles(RunMetrics runMetrics) {
+        return fileEntry -> {
+            var start = System.nanoTime();
+            var mediaFile = mediaFileClassifier.isMediaFile(fileEntry.path());
+            runMetrics.record(Phase.FILTERING, start);
+            if (mediaFile) {
+                return true;
+            }
+            runMetrics.notMediaFile();
+            runIndex.recordProcessed(fileEntry);
+            return false;
+        };
     }
 
     private boolean hasInvalidParameters(Path from, Path to) {
@@ -120,67 +785,166 @@ public class MediaOrganizer {
         return false;
     }
 
-    private String toYearMonthDayString(Path path) {
-        var date = parseDateFromPathName(path);
+    /**
+     * Reads - in parallel - the metadata dates of the media files that have no date in their name. So that
+     * {@link #toYearMonthDayString(FileEntry, RunMetrics)} finds them in the cache of the metadata date reader.
+     */
+    private void readMetadataDatesOfUndatedMediaFiles(List<FileEntry> mediaFiles, RunMetrics runMetrics) {
+        if (metadataDateReader == null) {
+            return;
+        }
+        var undatedMediaFiles = mediaFiles.stream()
+                .filter(mediaFile -> yearMonthDayStringFromName(mediaFile, runMetrics) == null)
+                .toList();
+        if (!undatedMediaFiles.isEmpty()) {
+            logger.info("Reading the metadata of [{}] media files without a date in their name", undatedMediaFiles.size());
+            runMetrics.time(Phase.METADATA_READING, () -> metadataDateReader.readAll(undatedMediaFiles));
+        }
+    }
 
-        if (date == null) {
-            return "unknown";
+    private String yearMonthDayStringFromName(FileEntry fileEntry, RunMetrics runMetrics) {
+        var start = System.nanoTime();
+        var yearMonthDayString = dateExtractor.toYearMonthDayString(fileEntry.path().getFileName().toString());
+        runMetrics.record(Phase.DATE_PARSING, start);
+        return yearMonthDayString;
+    }
+
+    /**
+     * Uses the date in the name of the file - falling back to the date in the metadata of the file (if enabled).
+     */
+    private String toYearMonthDayString(FileEntry fileEntry, RunMetrics runMetrics) {
+        var path = fileEntry.path();
+        var yearMonthDayString = yearMonthDayStringFromName(fileEntry, runMetrics);
+
+        if (yearMonthDayString == null && metadataDateReader != null) {
+            var date = metadataDateReader.readDate(fileEntry);
+            if (date != null) {
+                return dateExtractor.toYearMonthDayString(date);
+            }
         }
 
-        var dateCal = Calendar.getInstance();
-        dateCal.setTime(date);
+        if (yearMonthDayString == null) {
+            logger.trace("Failed to extract date from {}", path);
+            return "unknown";
+        }
 
-        var year = dateCal.get(Calendar.YEAR);
-        var month =
-                new DateFormatSymbols(appProperties.destination().localeForGeneratingDestinationFolderNames())
-                        .getMonths()[dateCal.get(Calendar.MONTH)];
-        month = Character.toUpperCase(month.charAt(0)) + month.substring(1);
-        var day = dateCal.get(Calendar.DAY_OF_MONTH);
+        return yearMonthDayString;
+    }
 
-        return String.format("%s - %s - %s", year, month, day);
+    String generateFinalDestinationDirectoryName(
+            String folderName, int mediaFileCount) {
+        var replaceWithNewLastPartOfFolderName =
+                mediaFileCount >= appProperties.destination().amountOfMediaFilesIndicatingAnEvent()
+                        ? eventFolderNameReplacement
+                        : miscFolderNameReplacement;
+        return LAST_PART_OF_FOLDER_NAME.matcher(folderName).replaceAll(replaceWithNewLastPartOfFolderName);
     }
 
-    private String generateFinalDestinationDirectoryName(
-            String folderName, List<Path> mediaFilePaths) {
-        var lastPartOfFolderName = "( - \\d+)$";
-        String replaceWithNewLastPartOfFolderName;
-        if (mediaFilePaths.size() >= appProperties.destination().amountOfMediaFilesIndicatingAnEvent()) {
-            replaceWithNewLastPartOfFolderName =
-                    String.format(
-                            "$1 - %s",
-                            appProperties.destination().suffixForDestinationFolderOfUnknownEventMediaFiles());
-        } else {
-            replaceWithNewLastPartOfFolderName =
-                    String.format(
-                            " - %s", appProperties.destination().suffixForDestinationFolderOfMiscMediaFiles());
+    private void moveAll(List<FileEntry> mediaFiles, Path destinationDirectoryPath, RunMetrics runMetrics) {
+        runMetrics.progress().processing(destinationDirectoryPath.getFileName().toString());
+        if (deduplicator == null) {
+            moveAll(mediaFiles, toMoves(mediaFiles, destinationDirectoryPath), runMetrics);
+            return;
+        }
+        // -(batches of the same destination folder must not deduplicate against each other while moving)-
+        synchronized (destinationDirectoryLocks.computeIfAbsent(destinationDirectoryPath, key -> new Object())) {
+            moveAllThatAreNotDuplicates(mediaFiles, destinationDirectoryPath, runMetrics);
         }
-        return folderName.replaceAll(lastPartOfFolderName, replaceWithNewLastPartOfFolderName);
     }
 
-    private Date parseDateFromPathName(Path path) {
-        var sdf = new SimpleDateFormat(appProperties.mediafiles().datePattern());
+    private void moveAllThatAreNotDuplicates(
+            List<FileEntry> mediaFiles, Path destinationDirectoryPath, RunMetrics runMetrics) {
+        List<Deduplicator.Decision> decisions;
         try {
-            return sdf.parse(path.getFileName().toString());
-        } catch (ParseException e) {
-            logger.warn("Failed to extract date from {} (Cause says: {})", path, e.getMessage());
-            return null;
+            decisions = runMetrics.time(Phase.DEDUPLICATION,
+                    () -> deduplicator.decide(mediaFiles, destinationDirectoryPath));
+        } catch (RuntimeException e) {
+            logger.warn("Failed to look for duplicates in [{}] - so moving the files by name (Cause says: {})",
+                    destinationDirectoryPath, e.getMessage());
+            moveAll(mediaFiles, toMoves(mediaFiles, destinationDirectoryPath), runMetrics);
+            return;
         }
+        var mediaFilesToMove = new ArrayList<FileEntry>(decisions.size());
+        var moves = new ArrayList<Move>(decisions.size());
+        for (var decision : decisions) {
+            switch (decision.verdict()) {
+                case DUPLICATE -> {
+                    logger.trace("File [{}] is a duplicate of [{}] - so leaving that",
+                            decision.mediaFile().path(), decision.duplicateOf());
+                    runMetrics.moveStatistics().duplicate();
+                    runIndex.recordProcessed(decision.mediaFile());
+                }
+                case COLLISION -> {
+                    logger.info("File [{}] differs from the file with that name at destination folder - so moving it as [{}]",
+                            decision.mediaFile().path(), decision.to().getFileName());
+                    runMetrics.moveStatistics().renamed();
+                    mediaFilesToMove.add(decision.mediaFile());
+                    moves.add(new Move(decision.mediaFile().path(), decision.to()));
+                }
+                case NEW -> {
+                    mediaFilesToMove.add(decision.mediaFile());
+                    moves.add(new Move(decision.mediaFile().path(), decision.to()));
+                }
+            }
+        }
+        moveAll(mediaFilesToMove, moves, runMetrics);
     }
 
-    private void move(Path fileToMove, Path pathThatFileShouldBeMovedTo) {
+    private static List<Move> toMoves(List<FileEntry> mediaFiles, Path destinationDirectoryPath) {
+        return mediaFiles.stream()
+                .map(mediaFile -> new Move(mediaFile.path(), destinationDirectoryPath.resolve(mediaFile.path().getFileName())))
+                .toList();
+    }
+
+    /**
+     * @param moves one move per media file - in the same order as the media files
+     */
+    private void moveAll(List<FileEntry> mediaFiles, List<Move> moves, RunMetrics runMetrics) {
+        if (moves.isEmpty()) {
+            return;
+        }
+        List<MoveResult> moveResults;
+        var start = System.nanoTime();
         try {
-            logger.info("    {}", pathThatFileShouldBeMovedTo.getFileName());
-            fileSystem.move(fileToMove, pathThatFileShouldBeMovedTo);
-        } catch (FileAlreadyExistsException e) {
-            logger.info(
-                    "File [{}] exists at destination folder - so skipping that",
-                    pathThatFileShouldBeMovedTo.getFileName());
-        } catch (IOException e) {
-            logger.warn(
-                    String.format(
-                            "Failed to move file from [%s] to [%s]",
-                            pathThatFileShouldBeMovedTo, pathThatFileShouldBeMovedTo),
-                    e);
+            moveResults = fileSystem.moveAll(moves);
+        } catch (RuntimeException e) {
+            moveResults = moves.stream().map(move -> MoveResult.failed(move, e)).toList();
+        }
+        runMetrics.recordMoveBatch(start);
+        for (int i = 0; i < moveResults.size(); i++) {
+            var moveResult = moveResults.get(i);
+            logAndCount(moveResult, mediaFiles.get(i), runMetrics.moveStatistics());
+            switch (moveResult.status()) {
+                case MOVED -> runIndex.forget(moveResult.move().from());
+                case SKIPPED -> runIndex.recordProcessed(mediaFiles.get(i));
+                case FAILED -> {
+                    // -(not remembered: it will be tried again on the next run)-
+                }
+            }
+        }
+    }
+
+    private void logAndCount(MoveResult moveResult, FileEntry mediaFile, MoveStatistics moveStatistics) {
+        var move = moveResult.move();
+        switch (moveResult.status()) {
+            case MOVED -> {
+                logger.trace("    {}", move.to().getFileName());
+                moveStatistics.moved(mediaFile.size());
+            }
+            case SKIPPED -> {
+                logger.trace(
+                        "File [{}] exists at destination folder - so skipping that",
+                        move.to().getFileName());
+                moveStatistics.skipped();
+            }
+            case FAILED -> {
+                logger.warn(
+                        String.format(
+                                "Failed to move file from [%s] to [%s]",
+                                move.from(), move.to()),
+                        moveResult.cause());
+                moveStatistics.failed();
+            }
         }
     }
 }
@@ -0,0 +1,497 @@
+package com.moelholm.tools.mediaorganizer;
+
+import com.moelholm.tools.mediaorganizer.filesystem.FileEntry;
+import com.moelholm.tools.mediaorganizer.filesystem.FileSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads the date a photo or video was taken from the metadata inside the file - for media files whose name does not
+ * contain a date.
+ * <p>
+ * Only the parts of the file that hold the metadata are read (with {@link FileSystem#read(Path, long, int)} - so on
+ * Dropbox that is a few ranged downloads, never the whole file):
+ * <ul>
+ *   <li>JPEG: the EXIF DateTimeOriginal of the APP1 segment (within the first 64 KB)</li>
+ *   <li>HEIC: the EXIF DateTimeOriginal of the "Exif" item - located through the meta box (iinf and iloc)</li>
+ *   <li>MOV/MP4: the creation time of the mvhd box in the moov box - found by reading only the headers of the top
+ *   level boxes (the moov box is often placed after the media data)</li>
+ * </ul>
+ * The dates are cached by path, size and last modified time. The files are read on a pool of its own - which is shut
+ * down when the reader is closed.
+ */
+class MetadataDateReader implements AutoCloseable {
+
+    private static final int HEADER_LENGTH = 64 * 1024;
+
+    private static final int BOX_HEADER_LENGTH = 16;
+
+    private static final int MAX_TOP_LEVEL_BOXES = 64;
+
+    private static final long SECONDS_FROM_1904_TO_1970 = 2_082_844_800L;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final FileSystem fileSystem;
+
+    private final ExecutorService readerPool;
+
+    private final Map<CacheKey, Optional<LocalDate>> cache;
+
+    /**
+     * @param parallelism how many files may be read at the same time
+     * @param cacheSize   how many dates to remember at most
+     */
+    MetadataDateReader(FileSystem fileSystem, int parallelism, int cacheSize) {
+        this.fileSystem = fileSystem;
+        this.readerPool = Executors.newFixedThreadPool(Math.max(1, parallelism), readerThreadFactory());
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, Optional<LocalDate>> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Reads the dates of the files in parallel - so that the following calls to {@link #readDate(FileEntry)} are
+     * answered from the cache.
+     */
+    void readAll(List<FileEntry> fileEntries) {
+        CompletableFuture.allOf(fileEntries.stream()
+                        .map(fileEntry -> CompletableFuture.runAsync(() -> readDate(fileEntry), readerPool))
+                        .toArray(CompletableFuture[]::new))
+                .join();
+    }
+
+    @Override
+    public void close() {
+        readerPool.shutdown();
+    }
+
+    /**
+     * @return the date the photo or video was taken - or null if the file has no (readable) date in its metadata
+     */
+    LocalDate readDate(FileEntry fileEntry) {
+        var cacheKey = new CacheKey(fileEntry.path(), fileEntry.size(), fileEntry.lastModified());
+        synchronized (cache) {
+            var cachedDate = cache.get(cacheKey);
+            if (cachedDate != null) {
+                return cachedDate.orElse(null);
+            }
+        }
+        LocalDate date;
+        try {
+            date = readDate(fileEntry.path());
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to read the metadata of [{}] (Cause says: {})", fileEntry.path(), e.getMessage());
+            date = null;
+        }
+        synchronized (cache) {
+            cache.put(cacheKey, Optional.ofNullable(date));
+        }
+        return date;
+    }
+
+    private LocalDate readDate(Path path) throws IOException {
+        var header = fileSystem.read(path, 0, HEADER_LENGTH);
+        if (header.length >= 4 && (header[0] & 0xFF) == 0xFF && (header[1] & 0xFF) == 0xD8) {
+            return dateFromJpeg(header);
+        }
+        if (header.length >= 12 && "ftyp".equals(boxType(header, 4))) {
+            var brand = boxType(header, 8);
+            return brand.startsWith("hei") || brand.startsWith("mif") || brand.startsWith("msf")
+                    ? dateFromHeif(path, header)
+                    : dateFromQuickTime(path, header);
+        }
+        return null;
+    }
+
+    // -( JPEG )-
+
+    private static LocalDate dateFromJpeg(byte[] header) {
+        var position = 2;
+        while (position + 4 <= header.length && (header[position] & 0xFF) == 0xFF) {
+            var marker = header[position + 1] & 0xFF;
+            if (marker == 0xD9 || marker == 0xDA) { // -(end of image - or start of the image data: no more metadata)-
+                return null;
+            }
+            var segmentLength = unsignedShort(header, position + 2, ByteOrder.BIG_ENDIAN);
+            if (marker == 0xE1 && startsWith(header, position + 4, "Exif\0\0")) {
+                var tiffStart = position + 10;
+                return dateFromTiff(header, tiffStart, Math.min(segmentLength - 8, header.length - tiffStart));
+            }
+            position += 2 + segmentLength;
+        }
+        return null;
+    }
+
+    // -( EXIF )-
+
+    /**
+     * @return the DateTimeOriginal (or DateTimeDigitized - or DateTime) of the TIFF structure that EXIF data is
+     */
+    private static LocalDate dateFromTiff(byte[] bytes, int start, int length) {
+        if (length < 8) {
+            return null;
+        }
+        var tiff = ByteBuffer.wrap(bytes, start, length).slice();
+        if (bytes[start] == 'I' && bytes[start + 1] == 'I') {
+            tiff.order(ByteOrder.LITTLE_ENDIAN);
+        } else if (bytes[start] != 'M' || bytes[start + 1] != 'M') {
+            return null;
+        }
+        var ifd0 = tiff.getInt(4);
+        var exifIfd = (int) ifdValue(tiff, ifd0, 0x8769);
+        if (exifIfd > 0) {
+            var date = exifDate(ifdAscii(tiff, exifIfd, 0x9003));
+            if (date == null) {
+                date = exifDate(ifdAscii(tiff, exifIfd, 0x9004));
+            }
+            if (date != null) {
+                return date;
+            }
+        }
+        return exifDate(ifdAscii(tiff, ifd0, 0x0132));
+    }
+
+    /**
+     * @return the position of the entry of the tag in the IFD - or -1 if the IFD has no such tag
+     */
+    private static int ifdEntry(ByteBuffer tiff, int ifd, int tag) {
+        if (ifd <= 0 || ifd + 2 > tiff.limit()) {
+            return -1;
+        }
+        var entryCount = Short.toUnsignedInt(tiff.getShort(ifd));
+        for (int i = 0; i < entryCount; i++) {
+            var entry = ifd + 2 + i * 12;
+            if (entry + 12 > tiff.limit()) {
+                return -1;
+            }
+            if (Short.toUnsignedInt(tiff.getShort(entry)) == tag) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private static long ifdValue(ByteBuffer tiff, int ifd, int tag) {
+        var entry = ifdEntry(tiff, ifd, tag);
+        return entry < 0 ? -1 : Integer.toUnsignedLong(tiff.getInt(entry + 8));
+    }
+
+    private static String ifdAscii(ByteBuffer tiff, int ifd, int tag) {
+        var entry = ifdEntry(tiff, ifd, tag);
+        if (entry < 0) {
+            return null;
+        }
+        var count = tiff.getInt(entry + 4);
+        var offset = count <= 4 ? entry + 8 : tiff.getInt(entry + 8);
+        if (count < 10 || offset < 0 || offset + 10 > tiff.limit()) {
+            return null;
+        }
+        var ascii = new byte[10];
+        tiff.get(offset, ascii);
+        return new String(ascii, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @param exifDate for example {@code "2015:10:11"} (the date part of {@code "2015:10:11 14:03:59"})
+     */
+    private static LocalDate exifDate(String exifDate) {
+        if (exifDate == null || exifDate.charAt(4) != ':' || exifDate.charAt(7) != ':') {
+            return null;
+        }
+        try {
+            return LocalDate.of(
+                    Integer.parseInt(exifDate, 0, 4, 10),
+                    Integer.parseInt(exifDate, 5, 7, 10),
+                    Integer.parseInt(exifDate, 8, 10, 10));
+        } catch (NumberFormatException | DateTimeException e) {
+            return null; // -(for example "0000:00:00" - which cameras write when they do not know the date)-
+        }
+    }
+
+    // -( HEIF )-
+
+    private LocalDate dateFromHeif(Path path, byte[] header) throws IOException {
+        var meta = findBox(header, 0, header.length, "meta");
+        if (meta == null) {
+            return null;
+        }
+        var metaChildren = meta.payloadStart() + 4; // -(meta is a full box: version and flags come first)-
+        var iinf = findBox(header, metaChildren, meta.end(header), "iinf");
+        var iloc = findBox(header, metaChildren, meta.end(header), "iloc");
+        if (iinf == null || iloc == null) {
+            return null;
+        }
+        var exifItemId = exifItemId(header, iinf);
+        if (exifItemId < 0) {
+            return null;
+        }
+        var exifExtent = extentOf(header, iloc, exifItemId);
+        if (exifExtent == null) {
+            return null;
+        }
+        var exif = fileSystem.read(path, exifExtent[0], (int) Math.min(exifExtent[1], HEADER_LENGTH));
+        if (exif.length < 4) {
+            return null;
+        }
+        var tiffStart = 4 + ByteBuffer.wrap(exif).getInt(0); // -(the item starts with the offset of the TIFF header)-
+        return tiffStart < 4 || tiffStart >= exif.length ? null : dateFromTiff(exif, tiffStart, exif.length - tiffStart);
+    }
+
+    private static long exifItemId(byte[] bytes, Box iinf) {
+        var buffer = ByteBuffer.wrap(bytes);
+        var version = bytes[iinf.payloadStart()];
+        var position = iinf.payloadStart() + 4 + (version == 0 ? 2 : 4);
+        var end = iinf.end(bytes);
+        while (position + 8 <= end) {
+            var infe = boxAt(bytes, position);
+            if (infe == null) {
+                return -1;
+            }
+            if ("infe".equals(infe.type()) && infe.payloadStart() + 12 <= end) {
+                var infeVersion = bytes[infe.payloadStart()];
+                if (infeVersion >= 2) {
+                    var itemIdStart = infe.payloadStart() + 4;
+                    var itemId = infeVersion == 2
+                            ? Short.toUnsignedInt(buffer.getShort(itemIdStart))
+                            : Integer.toUnsignedLong(buffer.getInt(itemIdStart));
+                    var itemTypeStart = itemIdStart + (infeVersion == 2 ? 2 : 4) + 2;
+                    if ("Exif".equals(boxType(bytes, itemTypeStart))) {
+                        return itemId;
+                    }
+                }
+            }
+            position = nextBoxOffset(infe, end);
+            if (position < 0) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the offset and length of the first extent of the item - or null if it is not stored in the file as is
+     */
+    private static long[] extentOf(byte[] bytes, Box iloc, long itemId) {
+        var buffer = ByteBuffer.wrap(bytes);
+        var position = iloc.payloadStart();
+        var version = bytes[position];
+        var offsetSize = (bytes[position + 4] & 0xFF) >> 4;
+        var lengthSize = bytes[position + 4] & 0x0F;
+        var baseOffsetSize = (bytes[position + 5] & 0xFF) >> 4;
+        var indexSize = version == 1 || version == 2 ? bytes[position + 5] & 0x0F : 0;
+        position += 6;
+        long itemCount = version < 2 ? Short.toUnsignedInt(buffer.getShort(position)) : buffer.getInt(position);
+        position += version < 2 ? 2 : 4;
+        for (long i = 0; i < itemCount; i++) {
+            long id = version < 2 ? Short.toUnsignedInt(buffer.getShort(position)) : buffer.getInt(position);
+            position += version < 2 ? 2 : 4;
+            var constructionMethod = 0;
+            if (version == 1 || version == 2) {
+                constructionMethod = buffer.getShort(position) & 0x0F;
+                position += 2;
+            }
+            position += 2; // -(data reference index)-
+            var baseOffset = sizedValue(buffer, position, baseOffsetSize);
+            position += baseOffsetSize;
+            var extentCount = Short.toUnsignedInt(buffer.getShort(position));
+            position += 2;
+            long[] firstExtent = null;
+            for (int extent = 0; extent < extentCount; extent++) {
+                position += indexSize;
+                var extentOffset = sizedValue(buffer, position, offsetSize);
+                position += offsetSize;
+                var extentLength = sizedValue(buffer, position, lengthSize);
+                position += lengthSize;
+                if (firstExtent == null) {
+                    firstExtent = new long[]{baseOffset + extentOffset, extentLength};
+                }
+            }
+            if (id == itemId) {
+                return constructionMethod == 0 ? firstExtent : null;
+            }
+        }
+        return null;
+    }
+
+    private static long sizedValue(ByteBuffer buffer, int position, int size) {
+        return switch (size) {
+            case 4 -> Integer.toUnsignedLong(buffer.getInt(position));
+            case 8 -> buffer.getLong(position);
+            default -> 0;
+        };
+    }
+
+    // -( QuickTime )-
+
+    private LocalDate dateFromQuickTime(Path path, byte[] header) throws IOException {
+        long position = 0;
+        for (int i = 0; i < MAX_TOP_LEVEL_BOXES; i++) {
+            var boxHeader = position + BOX_HEADER_LENGTH <= header.length
+                    ? slice(header, (int) position, BOX_HEADER_LENGTH)
+                    : fileSystem.read(path, position, BOX_HEADER_LENGTH);
+            var box = boxAt(boxHeader, 0);
+            if (box == null) {
+                return null;
+            }
+            if ("moov".equals(box.type())) {
+                var moovStart = position + box.headerSize();
+                var moovLength = (int) Math.min(box.size() > 0 ? box.size() - box.headerSize() : HEADER_LENGTH, HEADER_LENGTH);
+                var moov = moovStart + moovLength <= header.length
+                        ? slice(header, (int) moovStart, moovLength)
+                        : fileSystem.read(path, moovStart, moovLength);
+                return dateFromMvhd(moov);
+            }
+            if (box.size() == 0) { // -(the box extends to the end of the file)-
+                return null;
+            }
+            position += box.size();
+        }
+        return null;
+    }
+
+    private static LocalDate dateFromMvhd(byte[] moov) {
+        var mvhd = findBox(moov, 0, moov.length, "mvhd");
+        if (mvhd == null || mvhd.payloadStart() + 12 > moov.length) {
+            return null;
+        }
+        var buffer = ByteBuffer.wrap(moov);
+        var secondsSince1904 = moov[mvhd.payloadStart()] == 1
+                ? buffer.getLong(mvhd.payloadStart() + 4)
+                : Integer.toUnsignedLong(buffer.getInt(mvhd.payloadStart() + 4));
+        if (secondsSince1904 <= SECONDS_FROM_1904_TO_1970) {
+            return null; // -(not set - or set to something that cannot be a recording date)-
+        }
+        return LocalDate.ofInstant(
+                Instant.ofEpochSecond(secondsSince1904 - SECONDS_FROM_1904_TO_1970), ZoneId.systemDefault());
+    }
+
+    // -( ISO base media file format boxes )-
+
+    /**
+     * @param offset      where the box starts
+     * @param headerSize  the size of the size and type fields (8 - or 16 when the box has a 64 bit size)
+     * @param size        the size of the whole box (0 if the box extends to the end of the file)
+     */
+    private record Box(String type, long offset, int headerSize, long size) {
+        int payloadStart() {
+            return (int) offset + headerSize;
+        }
+
+        int end(byte[] bytes) {
+            return size == 0 ? bytes.length : (int) Math.min(bytes.length, offset + size);
+        }
+    }
+
+    private static Box boxAt(byte[] bytes, int offset) {
+        if (offset + 8 > bytes.length) {
+            return null;
+        }
+        var buffer = ByteBuffer.wrap(bytes);
+        long size = Integer.toUnsignedLong(buffer.getInt(offset));
+        var type = boxType(bytes, offset + 4);
+        var headerSize = 8;
+        if (size == 1) {
+            if (offset + 16 > bytes.length) {
+                return null;
+            }
+            size = buffer.getLong(offset + 8);
+            headerSize = 16;
+        }
+        if (size != 0 && size < headerSize) {
+            return null;
+        }
+        return new Box(type, offset, headerSize, size);
+    }
+
+    private static Box findBox(byte[] bytes, int from, int to, String type) {
+        var position = from;
+        while (position + 8 <= to) {
+            var box = boxAt(bytes, position);
+            if (box == null) {
+                return null;
+            }
+            if (type.equals(box.type())) {
+                return box;
+            }
+            position = nextBoxOffset(box, to);
+            if (position < 0) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return where the box after [box] starts - or -1 if no box follows it before [end]: a box of size 0 extends to
+     * the end of its parent, and a box can be larger than what has been read (up to 2^64 bytes)
+     */
+    private static int nextBoxOffset(Box box, int end) {
+        if (box.size() == 0 || box.size() > end - box.offset()) {
+            return -1;
+        }
+        return (int) (box.offset() + box.size());
+    }
+
+    private static String boxType(byte[] bytes, int offset) {
+        return new String(bytes, offset, 4, StandardCharsets.ISO_8859_1);
+    }
+
+    // -( bytes )-
+
+    private static int unsignedShort(byte[] bytes, int offset, ByteOrder byteOrder) {
+        return Short.toUnsignedInt(ByteBuffer.wrap(bytes).order(byteOrder).getShort(offset));
+    }
+
+    private static boolean startsWith(byte[] bytes, int offset, String prefix) {
+        if (offset + prefix.length() > bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (bytes[offset + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] slice(byte[] bytes, int offset, int length) {
+        var slice = new byte[length];
+        System.arraycopy(bytes, offset, slice, 0, length);
+        return slice;
+    }
+
+    private static ThreadFactory readerThreadFactory() {
+        var threadCounter = new AtomicInteger();
+        return runnable -> {
+            var thread = new Thread(runnable, String.format("metadata-reader-%s", threadCounter.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private record CacheKey(Path path, long size, Instant lastModified) {
+    }
+}
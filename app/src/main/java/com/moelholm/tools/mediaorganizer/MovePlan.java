@@ -0,0 +1,244 @@
+package com.moelholm.tools.mediaorganizer;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.moelholm.tools.mediaorganizer.filesystem.FileEntry;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A plan of what to move where - written by one run and executed by another (so that the plan can be reviewed, and so
+ * that executing it can be spread over several runs).
+ * <p>
+ * The plan is a line delimited JSON file: a header line (the source folder and the listing cursor of the run that wrote
+ * the plan) - followed by one line per media file with the destination folder it should be moved to. The progress of
+ * executing the plan is kept next to it in a checkpoint file ([plan].checkpoint) - so that a run that crashed or ran
+ * out of time is resumed where it stopped. Workers that each execute their shard of the plan have a checkpoint file
+ * each ([plan].checkpoint-[index]-of-[count]).
+ */
+class MovePlan {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private static final ObjectWriter LINE_WRITER = OBJECT_MAPPER.writer();
+
+    private static final ObjectReader ENTRY_READER = OBJECT_MAPPER.readerFor(Entry.class);
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record Header(String source, String cursor, String createdAt) {
+    }
+
+    /**
+     * @param to the destination folder (the file keeps its name)
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record Entry(String from, long size, Long lastModified, String contentHash, String to) {
+
+        static Entry of(FileEntry fileEntry, String to) {
+            return new Entry(
+                    fileEntry.path().toString(),
+                    fileEntry.size(),
+                    fileEntry.lastModified() == null ? null : fileEntry.lastModified().toEpochMilli(),
+                    fileEntry.contentHash(),
+                    to);
+        }
+
+        FileEntry fileEntry() {
+            return new FileEntry(
+                    Path.of(from), size, lastModified == null ? null : Instant.ofEpochMilli(lastModified), contentHash);
+        }
+    }
+
+    /**
+     * @param planSize         the size of the plan file the checkpoint belongs to
+     * @param planLastModified when the plan file the checkpoint belongs to was written
+     * @param failedMoves      how many moves of the executed entries failed
+     */
+    private record Checkpoint(long planSize, long planLastModified, long entriesDone, long failedMoves) {
+    }
+
+    private final Path planFile;
+
+    private final Path checkpointFile;
+
+    MovePlan(Path planFile, AppProperties.Shard shard) {
+        this.planFile = planFile.toAbsolutePath();
+        this.checkpointFile = this.planFile.resolveSibling(shard == null || shard.count() <= 1
+                ? String.format("%s.checkpoint", this.planFile.getFileName())
+                : String.format("%s.checkpoint-%s-of-%s", this.planFile.getFileName(), shard.index(), shard.count()));
+    }
+
+    Path file() {
+        return planFile;
+    }
+
+    /**
+     * @return a writer of a new plan - that replaces this plan (and its checkpoint) once it is finished
+     */
+    Writer newWriter() throws IOException {
+        return new Writer();
+    }
+
+    Header header() throws IOException {
+        try (var reader = Files.newBufferedReader(planFile, StandardCharsets.UTF_8)) {
+            return OBJECT_MAPPER.readValue(reader.readLine(), Header.class);
+        }
+    }
+
+    /**
+     * @return the entries of the plan - streamed from the file (close the stream when done)
+     */
+    Stream<Entry> entries() throws IOException {
+        var reader = Files.newBufferedReader(planFile, StandardCharsets.UTF_8);
+        try {
+            reader.readLine(); // -(the header)-
+            return entriesOf(reader);
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(reader);
+            throw e;
+        }
+    }
+
+    /**
+     * @return how many entries (from the start of the plan) have been executed - 0 if the checkpoint is missing or
+     * belongs to another plan
+     */
+    long entriesDone() throws IOException {
+        var checkpoint = checkpoint();
+        return checkpoint == null ? 0 : checkpoint.entriesDone();
+    }
+
+    /**
+     * @return how many moves of the executed entries failed - 0 if the checkpoint is missing or belongs to another plan
+     */
+    long failedMoves() throws IOException {
+        var checkpoint = checkpoint();
+        return checkpoint == null ? 0 : checkpoint.failedMoves();
+    }
+
+    /**
+     * Remembers that the first [entriesDone] entries of the plan have been executed - and how many of their moves
+     * failed. The checkpoint file is replaced atomically - so a crash never leaves a half written checkpoint.
+     */
+    void checkpoint(long entriesDone, long failedMoves) throws IOException {
+        var temporaryFile = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        OBJECT_MAPPER.writeValue(temporaryFile.toFile(), new Checkpoint(
+                Files.size(planFile), Files.getLastModifiedTime(planFile).toMillis(), entriesDone, failedMoves));
+        Files.move(temporaryFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the checkpoint - null if it is missing or belongs to another plan
+     */
+    private Checkpoint checkpoint() throws IOException {
+        if (!Files.exists(checkpointFile)) {
+            return null;
+        }
+        var checkpoint = OBJECT_MAPPER.readValue(checkpointFile.toFile(), Checkpoint.class);
+        return checkpoint.planSize() == Files.size(planFile)
+                && checkpoint.planLastModified() == Files.getLastModifiedTime(planFile).toMillis()
+                ? checkpoint
+                : null;
+    }
+
+    private static Stream<Entry> entriesOf(BufferedReader reader) throws IOException {
+        Iterator<Entry> entries = ENTRY_READER.readValues(reader);
+        return StreamSupport
+                .stream(Spliterators.spliteratorUnknownSize(entries, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> closeQuietly(reader));
+    }
+
+    private static void closeQuietly(BufferedReader reader) {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes a plan in two steps: while the media files are listed they are spooled to a temporary file together with
+     * the day they belong to (and counted per day). When the listing is done the destination folder of every day is
+     * known - and the spooled media files are written to the plan with their destination folders. So the listing is
+     * only done once - and never held in memory.
+     */
+    class Writer implements AutoCloseable {
+
+        private final Path spoolFile;
+
+        private final BufferedWriter spool;
+
+        private final Map<String, Integer> mediaFileCounts = new HashMap<>();
+
+        private Writer() throws IOException {
+            Files.createDirectories(planFile.getParent());
+            this.spoolFile = planFile.resolveSibling(planFile.getFileName() + ".spool");
+            this.spool = Files.newBufferedWriter(spoolFile, StandardCharsets.UTF_8);
+        }
+
+        void add(FileEntry mediaFile, String yearMonthDayString) {
+            try {
+                LINE_WRITER.writeValue(spool, Entry.of(mediaFile, yearMonthDayString));
+                spool.newLine();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            mediaFileCounts.merge(yearMonthDayString, 1, Integer::sum);
+        }
+
+        Map<String, Integer> mediaFileCounts() {
+            return mediaFileCounts;
+        }
+
+        /**
+         * Writes the plan - and thereby replaces the previous plan (and forgets how far that was executed: the checkpoints
+         * of the previous plan no longer match).
+         *
+         * @param destinationDirectories the destination folder of each day
+         */
+        void finish(Header header, Function<String, Path> destinationDirectories) throws IOException {
+            spool.close();
+            var temporaryFile = planFile.resolveSibling(planFile.getFileName() + ".tmp");
+            try (var planWriter = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8);
+                 var spooledEntries = entriesOf(Files.newBufferedReader(spoolFile, StandardCharsets.UTF_8))) {
+                LINE_WRITER.writeValue(planWriter, header);
+                planWriter.newLine();
+                for (var iterator = spooledEntries.iterator(); iterator.hasNext(); ) {
+                    var entry = iterator.next();
+                    LINE_WRITER.writeValue(planWriter, new Entry(entry.from(), entry.size(), entry.lastModified(),
+                            entry.contentHash(), destinationDirectories.apply(entry.to()).toString()));
+                    planWriter.newLine();
+                }
+            }
+            Files.deleteIfExists(checkpointFile);
+            Files.move(temporaryFile, planFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            spool.close();
+            Files.deleteIfExists(spoolFile);
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.moelholm.tools.mediaorganizer;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread safe tally of what happened to the media files during a run.
+ */
+class MoveStatistics {
+
+    private final LongAdder moved = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder renamed = new LongAdder();
+    private final LongAdder bytesMoved = new LongAdder();
+
+    /**
+     * @param size the size of the moved file - or a negative number if that is unknown
+     */
+    void moved(long size) {
+        moved.increment();
+        if (size > 0) {
+            bytesMoved.add(size);
+        }
+    }
+
+    void skipped() {
+        skipped.increment();
+    }
+
+    void failed() {
+        failed.increment();
+    }
+
+    void duplicate() {
+        duplicates.increment();
+    }
+
+    void renamed() {
+        renamed.increment();
+    }
+
+    long movedCount() {
+        return moved.sum();
+    }
+
+    long skippedCount() {
+        return skipped.sum();
+    }
+
+    long failedCount() {
+        return failed.sum();
+    }
+
+    long duplicateCount() {
+        return duplicates.sum();
+    }
+
+    long renamedCount() {
+        return renamed.sum();
+    }
+
+    /**
+     * @return how many media files have been dealt with: moved, skipped, failed or left as duplicates
+     */
+    long processedCount() {
+        return movedCount() + skippedCount() + failedCount() + duplicateCount();
+    }
+
+    long bytesMovedCount() {
+        return bytesMoved.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("moved=[%s], skipped=[%s], failed=[%s], duplicates=[%s], renamed=[%s]",
+                movedCount(), skippedCount(), failedCount(), duplicateCount(), renamedCount());
+    }
+}
@@ -0,0 +1,213 @@
+package com.moelholm.tools.mediaorganizer;
+
+import com.moelholm.tools.mediaorganizer.filesystem.DropboxFileSystem;
+import com.moelholm.tools.mediaorganizer.filesystem.DropboxFileSystem.DropboxFileSystemProperties;
+import com.moelholm.tools.mediaorganizer.filesystem.FileSystem;
+import com.moelholm.tools.mediaorganizer.filesystem.FileSystemType;
+import com.moelholm.tools.mediaorganizer.filesystem.LocalFileSystem;
+import com.moelholm.tools.mediaorganizer.filesystem.LocalFileSystem.LocalFileSystemProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the configured organize jobs (mediaorganizer.jobs) in one process - each with its own source folder, destination
+ * folder, file system and Dropbox account:
+ * <ul>
+ *   <li>at most [parallelism] jobs run at the same time - in the order they are configured</li>
+ *   <li>the jobs that run share one thread pool of [moveThreads] threads to move media files with: each job moves at
+ *   most [parallelism of the job] media files at the same time, and the jobs take turns on the pool (see
+ *   {@link CappedExecutor})</li>
+ *   <li>the Dropbox jobs share one connection pool to Dropbox - each with a request throttle of its own</li>
+ * </ul>
+ * The media organizers of the jobs are kept between runs (so what they have learned - such as which destination
+ * folders exist - is reused). A job that fails does not stop the others.
+ */
+@Component
+public class OrganizeJobs implements AutoCloseable {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final AppProperties appProperties;
+
+    private final LocalFileSystemProperties localFileSystemProperties;
+
+    private final DropboxFileSystemProperties dropboxFileSystemProperties;
+
+    private final ObjectProvider<DropboxFileSystem> dropboxFileSystemProvider;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, MediaOrganizer> organizers = new LinkedHashMap<>();
+
+    private final List<DropboxFileSystem> dropboxFileSystems = new ArrayList<>();
+
+    private DropboxFileSystem sharedDropboxFileSystem;
+
+    private ExecutorService jobExecutor;
+
+    private ExecutorService moveExecutor;
+
+    OrganizeJobs(
+            AppProperties appProperties,
+            LocalFileSystemProperties localFileSystemProperties,
+            DropboxFileSystemProperties dropboxFileSystemProperties,
+            ObjectProvider<DropboxFileSystem> dropboxFileSystemProvider,
+            MeterRegistry meterRegistry) {
+        this.appProperties = appProperties;
+        this.localFileSystemProperties = localFileSystemProperties;
+        this.dropboxFileSystemProperties = dropboxFileSystemProperties;
+        this.dropboxFileSystemProvider = dropboxFileSystemProvider;
+        this.meterRegistry = meterRegistry;
+        assertValidJobs(appProperties.jobList());
+    }
+
+    /**
+     * @return true if there are jobs to run
+     */
+    public boolean isConfigured() {
+        return !appProperties.jobList().isEmpty();
+    }
+
+    public void runAll() {
+        runAll(appProperties.shard());
+    }
+
+    /**
+     * Runs all of the jobs - and waits for them to finish.
+     *
+     * @param shard the part of the work each job does (see {@link MediaOrganizer#undoFlatMess(AppProperties.Shard)})
+     * @throws IllegalStateException if one or more of the jobs failed (after all of them have run)
+     */
+    public synchronized void runAll(AppProperties.Shard shard) {
+        var jobs = appProperties.jobList();
+        logger.info("Running [{}] jobs ([{}] at a time)", jobs.size(), jobParallelism());
+        var runs = new LinkedHashMap<String, CompletableFuture<Void>>();
+        for (var job : jobs) {
+            var organizer = organizerOf(job);
+            runs.put(job.name(), CompletableFuture.runAsync(() -> {
+                logger.info("Job [{}] started: moving files from [{}] to [{}]", job.name(), job.fromDir(), job.toDir());
+                organizer.undoFlatMess(shard);
+                logger.info("Job [{}] finished", job.name());
+            }, jobExecutor()));
+        }
+        var failedJobs = new ArrayList<String>();
+        runs.forEach((name, run) -> {
+            try {
+                run.join();
+            } catch (RuntimeException e) {
+                logger.error(String.format("Job [%s] failed", name), e.getCause() != null ? e.getCause() : e);
+                failedJobs.add(name);
+            }
+        });
+        if (!failedJobs.isEmpty()) {
+            throw new IllegalStateException(String.format(
+                    "[%s] of [%s] jobs failed: %s", failedJobs.size(), jobs.size(), failedJobs));
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (jobExecutor != null) {
+            jobExecutor.shutdownNow();
+        }
+        if (moveExecutor != null) {
+            moveExecutor.shutdownNow();
+        }
+        organizers.values().forEach(MediaOrganizer::close);
+        for (var dropboxFileSystem : dropboxFileSystems) {
+            dropboxFileSystem.close();
+        }
+    }
+
+    private MediaOrganizer organizerOf(AppProperties.Job job) {
+        return organizers.computeIfAbsent(job.name(), name -> {
+            var jobProperties = appProperties.forJob(job);
+            return new MediaOrganizer(jobProperties, fileSystemOf(job, jobProperties), meterRegistry, moveExecutor());
+        });
+    }
+
+    private FileSystem fileSystemOf(AppProperties.Job job, AppProperties jobProperties) {
+        if (jobProperties.fileSystemType() == FileSystemType.DROPBOX) {
+            var accessToken = job.dropboxAccessToken() != null
+                    ? job.dropboxAccessToken()
+                    : dropboxFileSystemProperties.accessToken();
+            var dropboxFileSystem = sharedDropboxFileSystem().forAccessToken(accessToken);
+            dropboxFileSystems.add(dropboxFileSystem);
+            return dropboxFileSystem;
+        }
+        return new LocalFileSystem(localFileSystemProperties, meterRegistry);
+    }
+
+    /**
+     * @return the Dropbox file system whose connection pool the jobs share: the one of the application (if it uses
+     * Dropbox) - otherwise one of the jobs' own
+     */
+    private DropboxFileSystem sharedDropboxFileSystem() {
+        if (sharedDropboxFileSystem == null) {
+            sharedDropboxFileSystem = dropboxFileSystemProvider.getIfAvailable(() -> {
+                var dropboxFileSystem = new DropboxFileSystem(dropboxFileSystemProperties, meterRegistry);
+                dropboxFileSystems.add(dropboxFileSystem);
+                return dropboxFileSystem;
+            });
+        }
+        return sharedDropboxFileSystem;
+    }
+
+    private ExecutorService jobExecutor() {
+        if (jobExecutor == null) {
+            jobExecutor = Executors.newFixedThreadPool(jobParallelism(), threadFactory("job"));
+        }
+        return jobExecutor;
+    }
+
+    private ExecutorService moveExecutor() {
+        if (moveExecutor == null) {
+            var moveThreads = appProperties.jobs().moveThreads() > 0
+                    ? appProperties.jobs().moveThreads()
+                    : Math.max(1, appProperties.move().parallelism());
+            moveExecutor = Executors.newFixedThreadPool(moveThreads, threadFactory("job-mover"));
+        }
+        return moveExecutor;
+    }
+
+    private int jobParallelism() {
+        return Math.max(1, appProperties.jobs().parallelism());
+    }
+
+    private static ThreadFactory threadFactory(String name) {
+        var threadCounter = new AtomicInteger();
+        return runnable -> {
+            var thread = new Thread(runnable, String.format("%s-%s", name, threadCounter.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static void assertValidJobs(List<AppProperties.Job> jobs) {
+        var names = new HashSet<String>();
+        for (var job : jobs) {
+            if (job.name() == null || job.name().isBlank() || job.fromDir() == null || job.toDir() == null) {
+                throw new IllegalStateException(String.format(
+                        "Invalid job: a job needs a name, a fromDir and a toDir - got [%s]", job));
+            }
+            if (!names.add(job.name())) {
+                throw new IllegalStateException(String.format("Invalid job: the name [%s] is used twice", job.name()));
+            }
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package com.moelholm.tools.mediaorganizer;
+
+public enum OrganizeMode {
+    GROUPED,
+    STREAMING;
+}
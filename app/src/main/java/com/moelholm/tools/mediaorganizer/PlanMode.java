@@ -0,0 +1,7 @@
+package com.moelholm.tools.mediaorganizer;
+
+public enum PlanMode {
+    NONE,
+    WRITE,
+    EXECUTE;
+}
@@ -0,0 +1,87 @@
+package com.moelholm.tools.mediaorganizer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logs how far a run has come - one line every [interval] instead of a line per media file: how many media files have
+ * been processed (of how many), how many per second, when the run is expected to be done and which day is being
+ * moved. The lines of the individual media files are logged at TRACE level.
+ */
+class ProgressReporter implements AutoCloseable {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final MoveStatistics moveStatistics;
+
+    private final AtomicLong expectedMediaFiles = new AtomicLong();
+
+    private final long startNanos = System.nanoTime();
+
+    private volatile String currentDay;
+
+    private ScheduledExecutorService scheduler;
+
+    ProgressReporter(MoveStatistics moveStatistics) {
+        this.moveStatistics = moveStatistics;
+    }
+
+    /**
+     * Starts logging the progress every [interval] (a missing or zero interval logs nothing).
+     */
+    ProgressReporter start(Duration interval) {
+        if (interval == null || interval.isZero() || interval.isNegative()) {
+            return this;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "progress-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::report, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    /**
+     * @param mediaFileCount how many more media files the run is expected to process
+     */
+    void expect(long mediaFileCount) {
+        expectedMediaFiles.addAndGet(mediaFileCount);
+    }
+
+    /**
+     * @param day the day (or destination folder) whose media files are being moved now
+     */
+    void processing(String day) {
+        currentDay = day;
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void report() {
+        logger.info(snapshot());
+    }
+
+    String snapshot() {
+        var processed = moveStatistics.processedCount();
+        var expected = expectedMediaFiles.get();
+        var elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+        var filesPerSecond = elapsedSeconds > 0 ? processed / elapsedSeconds : 0;
+        var eta = processed > 0 && expected > processed && filesPerSecond > 0
+                ? Duration.ofSeconds((long) ((expected - processed) / filesPerSecond)).toString().substring(2).toLowerCase()
+                : "-";
+        return String.format("Processed [%s] of [%s] media files ([%.1f] files per second) - ETA [%s] - now at [%s]",
+                processed, expected > 0 ? expected : "?", filesPerSecond, eta, currentDay == null ? "-" : currentDay);
+    }
+}
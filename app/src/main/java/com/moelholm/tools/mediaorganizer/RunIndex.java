@@ -0,0 +1,224 @@
+package com.moelholm.tools.mediaorganizer;
+
+import com.moelholm.tools.mediaorganizer.filesystem.FileEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers - across runs - what has already been done, so that a run only needs to look at what is new.
+ * <p>
+ * Two things are remembered: the files that were looked at and deliberately left in the source folder (files that are
+ * not media files, and media files that already exist at the destination) - and the listing cursors of file systems
+ * that support {@link com.moelholm.tools.mediaorganizer.filesystem.IncrementalListing}.
+ * <p>
+ * The index is an append-only text file with one tab separated record per line (later lines win):
+ * <pre>
+ *   F  size  lastModifiedMillis  path     (a file that has been processed)
+ *   R  path                               (a file that is no longer processed - e.g. because it was moved)
+ *   C  cursor  sourcePath                 (the listing cursor of a source folder)
+ * </pre>
+ * A sharded run has a listing cursor of its own (its sourcePath is followed by " [shard index of count]"): the shards
+ * list the same source folder - but each of them only moves the media files of its own destination folders.
+ * The file is read once per run index (when it is first opened or asked for a cursor) - later opens only reopen the
+ * writer, so that follow and watch cycles do not pay for the whole history each time. It is compacted when it is read
+ * and has grown to more than twice the size of its live records.
+ */
+class RunIndex {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Path indexFile;
+
+    private final Map<String, ProcessedFile> processedFiles = new HashMap<>();
+
+    private final Map<String, String> cursors = new HashMap<>();
+
+    private BufferedWriter writer;
+
+    private boolean loaded;
+
+    /**
+     * @param indexFile where to keep the index - or null if nothing should be remembered across runs
+     */
+    RunIndex(Path indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    synchronized void open() {
+        if (indexFile == null || writer != null) {
+            return;
+        }
+        try {
+            load();
+            if (indexFile.getParent() != null) {
+                Files.createDirectories(indexFile.getParent());
+            }
+            writer = Files.newBufferedWriter(
+                    indexFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            logger.warn(String.format("Failed to open run index [%s] - running without it", indexFile), e);
+            writer = null;
+        }
+    }
+
+    synchronized void close() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            logger.warn(String.format("Failed to close run index [%s]", indexFile), e);
+        } finally {
+            writer = null;
+        }
+    }
+
+    /**
+     * @return true if the file has been processed before - and has not changed since
+     */
+    synchronized boolean isProcessed(FileEntry fileEntry) {
+        var processedFile = processedFiles.get(fileEntry.path().toString());
+        return processedFile != null && processedFile.equals(ProcessedFile.of(fileEntry));
+    }
+
+    synchronized void recordProcessed(FileEntry fileEntry) {
+        if (writer == null || fileEntry.size() < 0 || isProcessed(fileEntry)) {
+            return;
+        }
+        var path = fileEntry.path().toString();
+        if (path.indexOf('\n') >= 0) {
+            return;
+        }
+        var processedFile = ProcessedFile.of(fileEntry);
+        processedFiles.put(path, processedFile);
+        append(String.format("F\t%s\t%s\t%s", processedFile.size(), processedFile.lastModified(), path));
+    }
+
+    synchronized void forget(Path path) {
+        if (writer != null && processedFiles.remove(path.toString()) != null) {
+            append(String.format("R\t%s", path));
+        }
+    }
+
+    /**
+     * @param shard the shard that lists the source folder (null - or a count of 1 - means an unsharded run)
+     */
+    synchronized String cursor(Path sourcePath, AppProperties.Shard shard) {
+        if (indexFile != null && !loaded) {
+            try {
+                load();
+            } catch (IOException e) {
+                logger.warn(String.format("Failed to read run index [%s]", indexFile), e);
+            }
+        }
+        return cursors.get(cursorKeyOf(sourcePath, shard));
+    }
+
+    synchronized void saveCursor(Path sourcePath, AppProperties.Shard shard, String cursor) {
+        if (writer == null || cursor == null) {
+            return;
+        }
+        var cursorKey = cursorKeyOf(sourcePath, shard);
+        cursors.put(cursorKey, cursor);
+        append(String.format("C\t%s\t%s", cursor, cursorKey));
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            logger.warn(String.format("Failed to write to run index [%s]", indexFile), e);
+        }
+    }
+
+    private static String cursorKeyOf(Path sourcePath, AppProperties.Shard shard) {
+        return shard == null || shard.count() <= 1
+                ? sourcePath.toString()
+                : String.format("%s [shard %s of %s]", sourcePath, shard.index(), shard.count());
+    }
+
+    private void append(String line) {
+        try {
+            writer.write(line);
+            writer.newLine();
+        } catch (IOException e) {
+            logger.warn(String.format("Failed to write to run index [%s]", indexFile), e);
+        }
+    }
+
+    private void load() throws IOException {
+        if (loaded) {
+            return;
+        }
+        var lineCount = read();
+        if (lineCount > 2 * (processedFiles.size() + cursors.size()) + 100) {
+            compact();
+        }
+        loaded = true;
+        logger.info("Using run index [{}] with [{}] processed files", indexFile, processedFiles.size());
+    }
+
+    private int read() throws IOException {
+        if (!Files.exists(indexFile)) {
+            return 0;
+        }
+        var lineCount = 0;
+        try (var lines = Files.lines(indexFile, StandardCharsets.UTF_8)) {
+            for (var iterator = lines.iterator(); iterator.hasNext(); lineCount++) {
+                var fields = iterator.next().split("\t", 4);
+                switch (fields[0]) {
+                    case "F" -> {
+                        if (fields.length == 4) {
+                            processedFiles.put(fields[3], new ProcessedFile(
+                                    Long.parseLong(fields[1]), Long.parseLong(fields[2])));
+                        }
+                    }
+                    case "R" -> {
+                        if (fields.length == 2) {
+                            processedFiles.remove(fields[1]);
+                        }
+                    }
+                    case "C" -> {
+                        if (fields.length == 3) {
+                            cursors.put(fields[2], fields[1]);
+                        }
+                    }
+                    default -> logger.warn("Ignoring unknown record in run index [{}]", indexFile);
+                }
+            }
+        }
+        return lineCount;
+    }
+
+    private void compact() throws IOException {
+        var compactedFile = indexFile.resolveSibling(indexFile.getFileName() + ".compacting");
+        try (var compactedWriter = Files.newBufferedWriter(compactedFile, StandardCharsets.UTF_8)) {
+            for (var processedFile : processedFiles.entrySet()) {
+                compactedWriter.write(String.format("F\t%s\t%s\t%s",
+                        processedFile.getValue().size(), processedFile.getValue().lastModified(), processedFile.getKey()));
+                compactedWriter.newLine();
+            }
+            for (var cursor : cursors.entrySet()) {
+                compactedWriter.write(String.format("C\t%s\t%s", cursor.getValue(), cursor.getKey()));
+                compactedWriter.newLine();
+            }
+        }
+        Files.move(compactedFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private record ProcessedFile(long size, long lastModified) {
+        static ProcessedFile of(FileEntry fileEntry) {
+            return new ProcessedFile(
+                    fileEntry.size(),
+                    fileEntry.lastModified() == null ? -1 : fileEntry.lastModified().toEpochMilli());
+        }
+    }
+}
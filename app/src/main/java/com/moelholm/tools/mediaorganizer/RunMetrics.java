@@ -0,0 +1,212 @@
+package com.moelholm.tools.mediaorganizer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSupport;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Measures one organize run: how long its phases took and what happened to the files - published as Micrometer meters
+ * and summed up as a {@link RunSummary} when the run has finished.
+ * <p>
+ * Listing, grouping and moving are timed as a whole. Filtering and date parsing happen once per file while the files
+ * are being listed - so their time is summed up per file (and is part of the listing time as well). Deduplication
+ * happens per batch right before the batch is moved - so its time is part of the moving time as well. Metadata reading
+ * (of the files without a date in their name) is timed as a whole.
+ */
+class RunMetrics {
+
+    enum Phase {
+        LISTING, FILTERING, DATE_PARSING, METADATA_READING, GROUPING, PLANNING, DEDUPLICATION, MOVING;
+
+        String tagValue() {
+            return name().toLowerCase(Locale.ROOT).replace('_', '-');
+        }
+    }
+
+    private final MeterRegistry meterRegistry;
+
+    private final MoveStatistics moveStatistics = new MoveStatistics();
+
+    private final ProgressReporter progressReporter = new ProgressReporter(moveStatistics);
+
+    private final Map<Phase, LongAdder> phaseNanos = new EnumMap<>(Phase.class);
+
+    private final LongAdder listedFiles = new LongAdder();
+
+    private final LongAdder notMediaFiles = new LongAdder();
+
+    private final Timer moveBatchTimer;
+
+    private final Instant startedAt = Instant.now();
+
+    private final long startNanos = System.nanoTime();
+
+    RunMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        for (var phase : Phase.values()) {
+            phaseNanos.put(phase, new LongAdder());
+        }
+        this.moveBatchTimer = Timer.builder("mediaorganizer.move.batch")
+                .description("Batches of media files handed to the file system to be moved")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    MoveStatistics moveStatistics() {
+        return moveStatistics;
+    }
+
+    ProgressReporter progress() {
+        return progressReporter;
+    }
+
+    <T> T time(Phase phase, Supplier<T> work) {
+        var start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            record(phase, start);
+        }
+    }
+
+    void time(Phase phase, Runnable work) {
+        var start = System.nanoTime();
+        try {
+            work.run();
+        } finally {
+            record(phase, start);
+        }
+    }
+
+    /**
+     * @param startNanos when the work started (as returned by {@link System#nanoTime()})
+     */
+    void record(Phase phase, long startNanos) {
+        phaseNanos.get(phase).add(System.nanoTime() - startNanos);
+    }
+
+    void recordMoveBatch(long startNanos) {
+        moveBatchTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void listed() {
+        listedFiles.increment();
+    }
+
+    void notMediaFile() {
+        notMediaFiles.increment();
+    }
+
+    /**
+     * Publishes the totals of the run as meters and sums the run up.
+     */
+    RunSummary finish(AppProperties appProperties) {
+        var durationNanos = System.nanoTime() - startNanos;
+
+        Timer.builder("mediaorganizer.run")
+                .description("Organize runs")
+                .register(meterRegistry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+        var phaseMillis = new LinkedHashMap<String, Long>();
+        phaseNanos.forEach((phase, nanos) -> {
+            Timer.builder("mediaorganizer.run.phase")
+                    .description("Time spent in the phases of organize runs")
+                    .tag("phase", phase.tagValue())
+                    .register(meterRegistry)
+                    .record(nanos.sum(), TimeUnit.NANOSECONDS);
+            phaseMillis.put(phase.tagValue(), TimeUnit.NANOSECONDS.toMillis(nanos.sum()));
+        });
+        countFiles("listed", listedFiles.sum());
+        countFiles("not-media", notMediaFiles.sum());
+        countFiles("moved", moveStatistics.movedCount());
+        countFiles("skipped", moveStatistics.skippedCount());
+        countFiles("failed", moveStatistics.failedCount());
+        countFiles("duplicate", moveStatistics.duplicateCount());
+        countFiles("renamed", moveStatistics.renamedCount());
+        Counter.builder("mediaorganizer.bytes.moved")
+                .baseUnit("bytes")
+                .register(meterRegistry)
+                .increment(moveStatistics.bytesMovedCount());
+
+        var processedFiles = moveStatistics.processedCount();
+        var durationSeconds = durationNanos / 1e9;
+        return new RunSummary(
+                startedAt.toString(),
+                TimeUnit.NANOSECONDS.toMillis(durationNanos),
+                String.valueOf(appProperties.fileSystemType()),
+                modeOf(appProperties),
+                listedFiles.sum(),
+                notMediaFiles.sum(),
+                moveStatistics.movedCount(),
+                moveStatistics.skippedCount(),
+                moveStatistics.failedCount(),
+                moveStatistics.duplicateCount(),
+                moveStatistics.renamedCount(),
+                moveStatistics.bytesMovedCount(),
+                durationSeconds > 0 ? processedFiles / durationSeconds : 0,
+                phaseMillis,
+                snapshotOfMeters());
+    }
+
+    private static String modeOf(AppProperties appProperties) {
+        var planMode = appProperties.plan() == null ? PlanMode.NONE : appProperties.plan().mode();
+        return planMode == PlanMode.NONE
+                ? String.valueOf(appProperties.move().mode())
+                : String.format("PLAN_%s", planMode);
+    }
+
+    private void countFiles(String outcome, long count) {
+        Counter.builder("mediaorganizer.files")
+                .description("Files seen by organize runs - by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment(count);
+    }
+
+    /**
+     * @return every meter of the registry (these are totals since the application started - not just of this run)
+     */
+    private List<RunSummary.MeterSnapshot> snapshotOfMeters() {
+        var meters = new ArrayList<RunSummary.MeterSnapshot>();
+        for (var meter : meterRegistry.getMeters()) {
+            var tags = new LinkedHashMap<String, String>();
+            meter.getId().getTags().forEach(tag -> tags.put(tag.getKey(), tag.getValue()));
+            var measurements = new LinkedHashMap<String, Double>();
+            meter.measure().forEach(measurement ->
+                    measurements.put(measurement.getStatistic().getTagValueRepresentation(), measurement.getValue()));
+            meters.add(new RunSummary.MeterSnapshot(
+                    meter.getId().getName(), tags, baseUnitOf(meter), measurements, percentilesOf(meter)));
+        }
+        return meters;
+    }
+
+    private static String baseUnitOf(Meter meter) {
+        return meter instanceof Timer timer ? timer.baseTimeUnit().name().toLowerCase(Locale.ROOT) : meter.getId().getBaseUnit();
+    }
+
+    private static Map<String, Double> percentilesOf(Meter meter) {
+        if (!(meter instanceof HistogramSupport histogramSupport)) {
+            return null;
+        }
+        var percentiles = new LinkedHashMap<String, Double>();
+        for (var percentileValue : histogramSupport.takeSnapshot().percentileValues()) {
+            percentiles.put(
+                    String.format(Locale.ROOT, "p%s", Math.round(percentileValue.percentile() * 100)),
+                    meter instanceof Timer timer ? percentileValue.value(timer.baseTimeUnit()) : percentileValue.value());
+        }
+        return percentiles.isEmpty() ? null : percentiles;
+    }
+}
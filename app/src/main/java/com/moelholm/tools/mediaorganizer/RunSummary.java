@@ -0,0 +1,99 @@
+package com.moelholm.tools.mediaorganizer;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Machine readable summary of an organize run - written as JSON, or as a CloudWatch Embedded Metric Format (EMF) log
+ * line that CloudWatch turns into metrics.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+record RunSummary(
+        String startedAt,
+        long durationMillis,
+        String fileSystemType,
+        String mode,
+        long filesListed,
+        long filesNotMedia,
+        long filesMoved,
+        long filesSkipped,
+        long filesFailed,
+        long filesDuplicate,
+        long filesRenamed,
+        long bytesMoved,
+        double filesPerSecond,
+        Map<String, Long> phaseMillis,
+        List<MeterSnapshot> meters) {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record MeterSnapshot(
+            String name,
+            Map<String, String> tags,
+            String baseUnit,
+            Map<String, Double> measurements,
+            Map<String, Double> percentiles) {
+    }
+
+    /**
+     * Writes the summary as (pretty printed) JSON. The file is replaced atomically - so a reader never sees a half
+     * written summary.
+     */
+    void writeTo(Path summaryFile) throws IOException {
+        var absoluteSummaryFile = summaryFile.toAbsolutePath();
+        Files.createDirectories(absoluteSummaryFile.getParent());
+        var temporaryFile = absoluteSummaryFile.resolveSibling(absoluteSummaryFile.getFileName() + ".tmp");
+        OBJECT_MAPPER.writer(SerializationFeature.INDENT_OUTPUT).writeValue(temporaryFile.toFile(), this);
+        Files.move(temporaryFile, absoluteSummaryFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the summary as a single line in the CloudWatch Embedded Metric Format - dimensioned by file system type
+     * and mode
+     */
+    String toEmfLine(String namespace) throws IOException {
+        var document = OBJECT_MAPPER.createObjectNode();
+        var metricDefinitions = OBJECT_MAPPER.createArrayNode();
+
+        var aws = document.putObject("_aws");
+        aws.put("Timestamp", Instant.parse(startedAt).toEpochMilli());
+        var cloudWatchMetrics = aws.putArray("CloudWatchMetrics").addObject();
+        cloudWatchMetrics.put("Namespace", namespace);
+        cloudWatchMetrics.putArray("Dimensions").addArray().add("FileSystemType").add("Mode");
+        cloudWatchMetrics.set("Metrics", metricDefinitions);
+
+        document.put("FileSystemType", fileSystemType);
+        document.put("Mode", mode);
+        putMetric(document, metricDefinitions, "DurationMillis", "Milliseconds", durationMillis);
+        putMetric(document, metricDefinitions, "FilesListed", "Count", filesListed);
+        putMetric(document, metricDefinitions, "FilesMoved", "Count", filesMoved);
+        putMetric(document, metricDefinitions, "FilesSkipped", "Count", filesSkipped);
+        putMetric(document, metricDefinitions, "FilesFailed", "Count", filesFailed);
+        putMetric(document, metricDefinitions, "FilesDuplicate", "Count", filesDuplicate);
+        putMetric(document, metricDefinitions, "FilesRenamed", "Count", filesRenamed);
+        putMetric(document, metricDefinitions, "BytesMoved", "Bytes", bytesMoved);
+        putMetric(document, metricDefinitions, "FilesPerSecond", "Count/Second", filesPerSecond);
+        phaseMillis.forEach((phase, millis) -> putMetric(
+                document, metricDefinitions, String.format("PhaseMillis.%s", phase), "Milliseconds", millis));
+
+        return OBJECT_MAPPER.writeValueAsString(document);
+    }
+
+    private static void putMetric(ObjectNode document, ArrayNode metricDefinitions,
+                                  String name, String unit, double value) {
+        metricDefinitions.addObject().put("Name", name).put("Unit", unit);
+        document.put(name, value);
+    }
+}
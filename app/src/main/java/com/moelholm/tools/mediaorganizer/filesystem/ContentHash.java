@@ -0,0 +1,51 @@
+package com.moelholm.tools.mediaorganizer.filesystem;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * The content hash that Dropbox uses: the file is split into blocks of 4 MB, every block is hashed with SHA-256 - and
+ * the content hash is the (hex encoded) SHA-256 of the concatenated block hashes.
+ * <p>
+ * Every file system computes its content hashes this way - so hashes computed locally can be compared to the
+ * {@code content_hash} that Dropbox returns. The blocks can be hashed independently of each other, so large files
+ * can be hashed in parallel.
+ */
+final class ContentHash {
+
+    static final int BLOCK_SIZE = 4 * 1024 * 1024;
+
+    private ContentHash() {
+    }
+
+    static byte[] hashOfBlock(ByteBuffer block) {
+        var digest = sha256();
+        digest.update(block);
+        return digest.digest();
+    }
+
+    static byte[] hashOfBlock(byte[] block) {
+        return sha256().digest(block);
+    }
+
+    static String of(List<byte[]> hashesOfBlocks) {
+        var digest = sha256();
+        hashesOfBlocks.forEach(digest::update);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    static int blockCount(long size) {
+        return (int) ((size + BLOCK_SIZE - 1) / BLOCK_SIZE);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
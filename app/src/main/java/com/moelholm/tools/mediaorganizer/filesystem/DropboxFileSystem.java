@@ -2,34 +2,187 @@ package com.moelholm.tools.mediaorganizer.filesystem;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.ManagedHttpClientConnectionFactory;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestTemplate;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
-
-import static java.util.Collections.singletonList;
+import java.util.stream.StreamSupport;
 
 @Component
 @ConditionalOnProperty(name = "mediaorganizer.fileSystemType", havingValue = "dropbox")
-public class DropboxFileSystem implements FileSystem {
+public class DropboxFileSystem implements FileSystem, IncrementalListing, AutoCloseable {
+
+    private static final int MAX_ENTRIES_PER_MOVE_BATCH = 1000;
+
+    private static final int MAX_PATHS_PER_CREATE_FOLDER_BATCH = 10000;
+
+    private static final Duration MOVE_BATCH_POLL_INTERVAL = Duration.ofSeconds(1);
+
+    private static final Duration MIN_LONGPOLL_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final Duration MAX_LONGPOLL_TIMEOUT = Duration.ofSeconds(480);
+
+    /**
+     * Dropbox adds up to 90 seconds to the timeout of a longpoll (so that not all clients come back at the same time).
+     */
+    private static final Duration LONGPOLL_JITTER = Duration.ofSeconds(90);
+
+    private static final Set<String> NON_IDEMPOTENT_ENDPOINTS = Set.of("/files/move", "/files/move_batch_v2");
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
 
     private final DropboxFileSystemProperties dropboxAccessToken;
 
-    public DropboxFileSystem(DropboxFileSystemProperties dropboxAccessToken) {
+    private final ObjectMapper objectMapper;
+
+    private final LongAdder requestCount;
+
+    private final LongAdder openedConnectionCount;
+
+    private final Set<String> existingDirectories = ConcurrentHashMap.newKeySet();
+
+    private volatile long nextLongpollNanos = System.nanoTime();
+
+    private final CloseableHttpClient httpClient;
+
+    private final RestTemplate restTemplate;
+
+    private final DropboxRequestThrottle requestThrottle;
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * The request timers by endpoint and HTTP status - so a timer is only built (and looked up in the registry) once.
+     */
+    private final Map<List<String>, Timer> requestTimers;
+
+    private final ExecutorService prefetchExecutor;
+
+    /**
+     * Is the connection pool (and the prefetch threads) owned by another instance? See {@link #forAccessToken(String)}.
+     */
+    private final boolean sharesConnectionPool;
+
+    @Autowired
+    public DropboxFileSystem(DropboxFileSystemProperties dropboxAccessToken, MeterRegistry meterRegistry) {
         this.dropboxAccessToken = dropboxAccessToken;
+        this.objectMapper = new ObjectMapper().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.requestCount = new LongAdder();
+        this.openedConnectionCount = new LongAdder();
+        this.httpClient = createHttpClient(dropboxAccessToken.http());
+        this.restTemplate = createRestTemplate(httpClient);
+        this.requestThrottle = new DropboxRequestThrottle(dropboxAccessToken.throttle());
+        this.meterRegistry = meterRegistry;
+        this.requestTimers = new ConcurrentHashMap<>();
+        this.prefetchExecutor = Executors.newCachedThreadPool(runnable -> {
+            var thread = new Thread(runnable, "dropbox-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sharesConnectionPool = false;
+        registerMeters();
+    }
+
+    private DropboxFileSystem(DropboxFileSystem owner, String accessToken) {
+        var properties = owner.dropboxAccessToken;
+        this.dropboxAccessToken = new DropboxFileSystemProperties(accessToken, properties.http(), properties.throttle());
+        this.objectMapper = owner.objectMapper;
+        this.requestCount = owner.requestCount;
+        this.openedConnectionCount = owner.openedConnectionCount;
+        this.httpClient = owner.httpClient;
+        this.restTemplate = owner.restTemplate;
+        this.requestThrottle = new DropboxRequestThrottle(properties.throttle());
+        this.meterRegistry = owner.meterRegistry;
+        this.requestTimers = owner.requestTimers;
+        this.prefetchExecutor = owner.prefetchExecutor;
+        this.sharesConnectionPool = true;
+    }
+
+    /**
+     * @return a file system for another Dropbox account (the one of the [accessToken]) that shares the connection pool
+     * and the prefetch threads of this one - but has a request throttle of its own (as Dropbox limits the requests per
+     * account). Closing it leaves the connection pool open: it is closed with this file system. The throttle meters are
+     * only registered for this file system.
+     */
+    public DropboxFileSystem forAccessToken(String accessToken) {
+        return new DropboxFileSystem(this, accessToken);
+    }
+
+    private void registerMeters() {
+        Gauge.builder("dropbox.throttle.concurrency.limit", requestThrottle, DropboxRequestThrottle::concurrencyLimit)
+                .description("Current limit of concurrent requests to Dropbox")
+                .register(meterRegistry);
+        FunctionCounter.builder("dropbox.throttle.retries", requestThrottle, DropboxRequestThrottle::retryCount)
+                .description("Requests to Dropbox that were retried")
+                .register(meterRegistry);
+        FunctionCounter.builder("dropbox.throttle.slowdowns", requestThrottle, DropboxRequestThrottle::slowDownCount)
+                .description("Times Dropbox asked us to slow down")
+                .register(meterRegistry);
+        FunctionCounter.builder("dropbox.connections.opened", openedConnectionCount, LongAdder::sum)
+                .description("Connections opened to Dropbox")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (sharesConnectionPool) {
+            return;
+        }
+        prefetchExecutor.shutdownNow();
+        httpClient.close();
     }
 
     @Override
@@ -40,6 +193,9 @@ public class DropboxFileSystem implements FileSystem {
             var metaData =
                     postToDropboxAndGetResponse(
                             "/files/get_metadata", dropboxRequest, DropboxFile.class);
+            if (metaData.isDirectory()) {
+                existingDirectories.add(dropboxPathToTest.toLowerCase(Locale.ROOT));
+            }
             return metaData.isDirectory();
         } catch (HttpClientErrorException e) {
             if (e.getStatusCode() == HttpStatus.CONFLICT) { // -(file-does-not-exist)-
@@ -52,24 +208,82 @@ public class DropboxFileSystem implements FileSystem {
     }
 
     @Override
-    public Stream<Path> streamOfAllFilesFromPath(Path from) {
+    public Stream<FileEntry> streamOfAllFileEntriesFromPath(Path from) {
+        return streamOfAllFileEntriesFromPath(from, cursor -> {
+        });
+    }
+
+    @Override
+    public Stream<FileEntry> streamOfAllFileEntriesFromPath(Path from, Consumer<String> cursorConsumer) {
         try {
             var dropboxPath = toAbsoluteDropboxPath(from);
-            var listFolderResponse =
-                    postToDropboxAndGetResponse(
+            var firstPage =
+                    postToDropboxAndDecodeResponse(
                             "/files/list_folder",
                             new DropboxFileRequest(dropboxPath),
-                            DropboxListFolderResponse.class);
-            var allFiles = new ArrayList<>(listFolderResponse.dropboxFiles());
-            while (listFolderResponse.more()) {
-                listFolderResponse =
-                        postToDropboxAndGetResponse(
-                                "/files/list_folder/continue",
-                                new DropboxCursorRequest(listFolderResponse.cursor()),
-                                DropboxListFolderResponse.class);
-                allFiles.addAll(listFolderResponse.dropboxFiles());
+                            DropboxListFolderDecoder::decode);
+            return streamOfFileEntries(firstPage, cursorConsumer);
+        } catch (HttpClientErrorException e) {
+            throw asRuntimeException(e);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public Stream<FileEntry> streamOfFileEntriesChangedSince(String cursor, Consumer<String> cursorConsumer) {
+        return streamOfFileEntries(listFolderContinue(cursor), cursorConsumer);
+    }
+
+    /**
+     * Waits with /files/list_folder/longpoll: Dropbox holds the request until something changes (or the timeout - of
+     * 30 to 480 seconds - passes). The request is sent without the access token (as Dropbox requires) and outside of
+     * the request throttle. Should Dropbox ask for a backoff, the next longpoll waits that long before it is sent.
+     */
+    @Override
+    public boolean awaitChanges(String cursor, Duration timeout) throws IOException, InterruptedException {
+        var backoffNanos = nextLongpollNanos - System.nanoTime();
+        if (backoffNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(backoffNanos);
+        }
+        var longpollTimeout = timeout.compareTo(MIN_LONGPOLL_TIMEOUT) < 0 ? MIN_LONGPOLL_TIMEOUT
+                : timeout.compareTo(MAX_LONGPOLL_TIMEOUT) > 0 ? MAX_LONGPOLL_TIMEOUT
+                : timeout;
+        var request = new HttpPost(String.format("%s/files/list_folder/longpoll", dropboxAccessToken.http().notifyBaseUrl()));
+        request.setConfig(RequestConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(dropboxAccessToken.http().connectTimeout().toMillis()))
+                .setResponseTimeout(Timeout.ofMilliseconds(longpollTimeout.plus(LONGPOLL_JITTER).toMillis()))
+                .build());
+        request.setEntity(new StringEntity(
+                objectMapper.writeValueAsString(new DropboxLongpollRequest(cursor, longpollTimeout.toSeconds())),
+                ContentType.APPLICATION_JSON));
+        var response = httpClient.execute(request, httpResponse -> {
+            if (httpResponse.getCode() != HttpStatus.OK.value()) {
+                throw new IOException(String.format("Longpoll failed with HTTP status [%s] (Dropbox says: [%s])",
+                        httpResponse.getCode(), EntityUtils.toString(httpResponse.getEntity())));
             }
-            return allFiles.stream().map(DropboxFile::pathLower).map(Paths::get);
+            return objectMapper.readValue(httpResponse.getEntity().getContent(), DropboxLongpollResponse.class);
+        });
+        requestCount.increment();
+        if (response.backoff() != null) {
+            nextLongpollNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(response.backoff());
+        }
+        return response.changes();
+    }
+
+    private Stream<FileEntry> streamOfFileEntries(
+            DropboxListFolderResponse firstPage, Consumer<String> cursorConsumer) {
+        var pages = new DropboxListFolderSpliterator(
+                firstPage, this::listFolderContinue, prefetchExecutor, cursorConsumer);
+        return StreamSupport.stream(pages, false).onClose(pages::cancel);
+    }
+
+    private DropboxListFolderResponse listFolderContinue(String cursor) {
+        try {
+            return postToDropboxAndDecodeResponse(
+                    "/files/list_folder/continue",
+                    new DropboxCursorRequest(cursor),
+                    DropboxListFolderDecoder::decode);
         } catch (HttpClientErrorException e) {
             throw asRuntimeException(e);
         } catch (Exception e) {
@@ -94,36 +308,341 @@ public class DropboxFileSystem implements FileSystem {
         }
     }
 
+    @Override
+    public List<MoveResult> moveAll(List<Move> moves) {
+        var results = new ArrayList<MoveResult>(moves.size());
+        for (int i = 0; i < moves.size(); i += MAX_ENTRIES_PER_MOVE_BATCH) {
+            var chunk = moves.subList(i, Math.min(i + MAX_ENTRIES_PER_MOVE_BATCH, moves.size()));
+            results.addAll(moveBatch(chunk));
+        }
+        return results;
+    }
+
+    /**
+     * Creates the folders that are not known to exist yet with /files/create_folder_batch - up to 10000 folders per
+     * request (folders that turn out to exist already are fine).
+     */
+    @Override
+    public void ensureDirectories(Set<Path> directories) throws IOException {
+        var dropboxPaths = directories.stream()
+                .map(DropboxFileSystem::toAbsoluteDropboxPath)
+                .filter(dropboxPath -> !existingDirectories.contains(dropboxPath.toLowerCase(Locale.ROOT)))
+                .distinct()
+                .toList();
+        for (int i = 0; i < dropboxPaths.size(); i += MAX_PATHS_PER_CREATE_FOLDER_BATCH) {
+            createFolderBatch(dropboxPaths.subList(i, Math.min(i + MAX_PATHS_PER_CREATE_FOLDER_BATCH, dropboxPaths.size())));
+        }
+    }
+
+    private void createFolderBatch(List<String> dropboxPaths) throws IOException {
+        try {
+            var batchResponse = postToDropboxAndGetResponse(
+                    "/files/create_folder_batch",
+                    new DropboxCreateFolderBatchRequest(dropboxPaths, false, false),
+                    DropboxCreateFolderBatchResponse.class);
+            var asyncJobId = batchResponse.asyncJobId();
+            while (batchResponse.isInProgress()) {
+                Thread.sleep(MOVE_BATCH_POLL_INTERVAL.toMillis());
+                batchResponse = postToDropboxAndGetResponse(
+                        "/files/create_folder_batch/check",
+                        new DropboxAsyncJobRequest(asyncJobId),
+                        DropboxCreateFolderBatchResponse.class);
+            }
+            if (!batchResponse.isComplete() || batchResponse.entries() == null
+                    || batchResponse.entries().size() != dropboxPaths.size()) {
+                throw new IOException(
+                        String.format("Create folder batch did not complete (Dropbox says: [%s])", batchResponse.tag()));
+            }
+            for (int i = 0; i < dropboxPaths.size(); i++) {
+                var entry = batchResponse.entries().get(i);
+                if (entry.isSuccess() || entry.isExistingFolder()) {
+                    existingDirectories.add(dropboxPaths.get(i).toLowerCase(Locale.ROOT));
+                } else {
+                    logger.warn("Failed to create folder [{}] (Dropbox says: [{}])", dropboxPaths.get(i), entry.failure());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (HttpClientErrorException e) {
+            throw new IOException(asRuntimeException(e));
+        }
+    }
+
+    @Override
+    public byte[] read(Path path, long position, int length) throws IOException {
+        try {
+            var dropboxRequest = objectMapper.writeValueAsString(new DropboxFileRequest(toAbsoluteDropboxPath(path)));
+            return throttled("/files/download", true, () -> restTemplate.execute(
+                    String.format("%s/files/download", dropboxAccessToken.http().contentBaseUrl()),
+                    HttpMethod.POST,
+                    request -> {
+                        request.getHeaders().setBearerAuth(dropboxAccessToken.accessToken());
+                        request.getHeaders().set("Dropbox-API-Arg", dropboxRequest);
+                        request.getHeaders().setRange(List.of(HttpRange.createByteRange(position, position + length - 1)));
+                    },
+                    clientHttpResponse -> clientHttpResponse.getBody().readNBytes(length)));
+        } catch (HttpClientErrorException e) {
+            throw asRuntimeException(e);
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Uses the content hash from the listing - or asks Dropbox for it (Dropbox computes it when a file is uploaded, so
+     * the file is never downloaded to hash it).
+     */
+    @Override
+    public String contentHash(FileEntry fileEntry) throws IOException {
+        if (fileEntry.contentHash() != null) {
+            return fileEntry.contentHash();
+        }
+        try {
+            var metaData = postToDropboxAndGetResponse(
+                    "/files/get_metadata",
+                    new DropboxFileRequest(toAbsoluteDropboxPath(fileEntry.path())),
+                    DropboxFile.class);
+            if (metaData.contentHash() == null) {
+                throw new IOException(String.format("Dropbox has no content hash of [%s]", fileEntry.path()));
+            }
+            return metaData.contentHash();
+        } catch (HttpClientErrorException e) {
+            throw new IOException(asRuntimeException(e));
+        }
+    }
+
+    /**
+     * Moves the files with /files/move_batch_v2. The moves that Dropbox refuses as there are too many write operations
+     * (in the namespace) were not performed - so they are moved again in a batch of their own (with backoff).
+     */
+    private List<MoveResult> moveBatch(List<Move> moves) {
+        var results = new ArrayList<MoveResult>(Collections.nCopies(moves.size(), null));
+        var pending = IntStream.range(0, moves.size()).boxed().toList();
+        for (int attempt = 1; ; attempt++) {
+            var pendingMoves = pending.stream().map(moves::get).toList();
+            List<DropboxMoveBatchResultEntry> entries;
+            try {
+                entries = moveBatchEntries(pendingMoves);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return failPending(results, pending, moves, e);
+            } catch (HttpClientErrorException e) {
+                return failPending(results, pending, moves, asRuntimeException(e));
+            } catch (Exception e) {
+                return failPending(results, pending, moves, e);
+            }
+            var refused = new ArrayList<Integer>();
+            for (int i = 0; i < pending.size(); i++) {
+                var entry = entries.get(i);
+                if (entry.isTooManyWriteOperations()) {
+                    refused.add(pending.get(i));
+                } else {
+                    results.set(pending.get(i), toMoveResult(pendingMoves.get(i), entry));
+                }
+            }
+            if (refused.isEmpty()) {
+                return results;
+            }
+            pending = refused;
+            var backoff = requestThrottle.onRefusedEntries("/files/move_batch_v2", attempt, refused.size());
+            if (backoff == null) {
+                return failPending(results, pending, moves, new IOException(
+                        "Dropbox refused the moves as there were too many write operations - also when tried again"));
+            }
+            try {
+                Thread.sleep(backoff.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return failPending(results, pending, moves, e);
+            }
+        }
+    }
+
+    /**
+     * @return the result entries of the move batch - one per move, in the same order
+     */
+    private List<DropboxMoveBatchResultEntry> moveBatchEntries(List<Move> moves) throws Exception {
+        var dropboxRequest = new DropboxMoveBatchRequest(
+                moves.stream()
+                        .map(move -> new DropboxMoveRequest(
+                                toAbsoluteDropboxPath(move.from()),
+                                toAbsoluteDropboxPath(move.to())))
+                        .toList(),
+                false);
+        var batchResponse =
+                postToDropboxAndGetResponse(
+                        "/files/move_batch_v2", dropboxRequest, DropboxMoveBatchResponse.class);
+        var asyncJobId = batchResponse.asyncJobId();
+        while (batchResponse.isInProgress()) {
+            Thread.sleep(MOVE_BATCH_POLL_INTERVAL.toMillis());
+            batchResponse =
+                    postToDropboxAndGetResponse(
+                            "/files/move_batch/check_v2",
+                            new DropboxAsyncJobRequest(asyncJobId),
+                            DropboxMoveBatchResponse.class);
+        }
+        if (!batchResponse.isComplete() || batchResponse.entries() == null
+                || batchResponse.entries().size() != moves.size()) {
+            throw new IOException(
+                    String.format("Move batch did not complete (Dropbox says: [%s])", batchResponse.tag()));
+        }
+        return batchResponse.entries();
+    }
+
+    private static MoveResult toMoveResult(Move move, DropboxMoveBatchResultEntry entry) {
+        if (entry.isSuccess()) {
+            return MoveResult.moved(move);
+        }
+        if (entry.isConflict()) {
+            return MoveResult.skipped(move);
+        }
+        return MoveResult.failed(move, new IOException(
+                String.format("Failed to move [%s] (Dropbox says: [%s])", move.from(), entry.failure())));
+    }
+
+    /**
+     * @return the results - with the moves that are still pending failed
+     */
+    private static List<MoveResult> failPending(
+            List<MoveResult> results, List<Integer> pending, List<Move> moves, Exception cause) {
+        pending.forEach(index -> results.set(index, MoveResult.failed(moves.get(index), cause)));
+        return results;
+    }
+
     private RuntimeException asRuntimeException(HttpClientErrorException e) {
         return new RuntimeException(
                 String.format("%s [A%s]", e.getMessage(), e.getResponseBodyAsString()), e);
     }
 
-    private RestTemplate createRestTemplate() {
-        return new RestTemplateBuilder().interceptors(createHeadersInterceptor()).build();
+    private CloseableHttpClient createHttpClient(DropboxFileSystemProperties.Http http) {
+        var connectionManager = createConnectionManager(http);
+        var requestConfig = RequestConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(http.connectTimeout().toMillis()))
+                .setResponseTimeout(Timeout.ofMilliseconds(http.responseTimeout().toMillis()))
+                .build();
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictIdleConnections(TimeValue.ofMilliseconds(http.connectionTimeToLive().toMillis()))
+                .build();
     }
 
-    private ClientHttpRequestInterceptor createHeadersInterceptor() {
-        return (request, bytes, execution) -> {
-            request.getHeaders()
-                    .put(
-                            "Authorization",
-                            singletonList(String.format("Bearer %s", dropboxAccessToken.accessToken())));
-            request.getHeaders().put("Content-Type", singletonList("application/json"));
-            return execution.execute(request, bytes);
-        };
+    private PoolingHttpClientConnectionManager createConnectionManager(DropboxFileSystemProperties.Http http) {
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(http.maxConnections())
+                .setMaxConnPerRoute(http.maxConnections())
+                .setConnectionTimeToLive(TimeValue.ofMilliseconds(http.connectionTimeToLive().toMillis()))
+                .setConnectionFactory(socket -> {
+                    openedConnectionCount.increment();
+                    return ManagedHttpClientConnectionFactory.INSTANCE.createConnection(socket);
+                })
+                .build();
+    }
+
+    private static RestTemplate createRestTemplate(CloseableHttpClient httpClient) {
+        return new RestTemplateBuilder()
+                .requestFactory(() -> new HttpComponentsClientHttpRequestFactory(httpClient))
+                .build();
     }
 
     private <T> T postToDropboxAndGetResponse(String path, Object arg, Class<T> responseType)
             throws IOException {
+        return postToDropboxAndDecodeResponse(path, arg, body -> objectMapper.readValue(body, responseType));
+    }
+
+    private <T> T postToDropboxAndDecodeResponse(String path, Object arg, ResponseDecoder<T> responseDecoder)
+            throws IOException {
+
+        var url = String.format("%s%s", dropboxAccessToken.http().apiBaseUrl(), path);
+        var response = throttled(path, !NON_IDEMPOTENT_ENDPOINTS.contains(path), () -> restTemplate.execute(
+                url,
+                HttpMethod.POST,
+                request -> {
+                    request.getHeaders().setBearerAuth(dropboxAccessToken.accessToken());
+                    request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+                    objectMapper.writeValue(request.getBody(), arg);
+                },
+                clientHttpResponse -> responseDecoder.decode(clientHttpResponse.getBody())));
+
+        requestCount.increment();
+        if (logger.isDebugEnabled()) {
+            logger.debug("Dropbox request [{}] done (connection reuse rate: [{}%])", path, connectionReuseRate());
+        }
+        return response;
+    }
+
+    private <T> T throttled(String endpoint, boolean idempotent, Callable<T> request) throws IOException {
+        try {
+            return requestThrottle.execute(endpoint, idempotent, () -> timed(endpoint, request));
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Times a single attempt of a request - tagged with the endpoint and the HTTP status (or "io-error").
+     */
+    private <T> T timed(String endpoint, Callable<T> request) throws Exception {
+        var sample = Timer.start(meterRegistry);
+        var status = "200";
+        try {
+            return request.call();
+        } catch (HttpStatusCodeException e) {
+            status = Integer.toString(e.getStatusCode().value());
+            throw e;
+        } catch (Exception e) {
+            status = "io-error";
+            throw e;
+        } finally {
+            sample.stop(requestTimer(endpoint, status));
+        }
+    }
+
+    private Timer requestTimer(String endpoint, String status) {
+        return requestTimers.computeIfAbsent(List.of(endpoint, status), key -> Timer.builder("dropbox.requests")
+                .description("Requests to the Dropbox API")
+                .tag("endpoint", endpoint)
+                .tag("status", status)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry));
+    }
+
+    /**
+     * @return the current limit of concurrent requests to Dropbox (lowered when Dropbox asks us to slow down)
+     */
+    public int concurrencyLimit() {
+        return requestThrottle.concurrencyLimit();
+    }
+
+    /**
+     * @return how many requests to Dropbox have been retried so far
+     */
+    public long retryCount() {
+        return requestThrottle.retryCount();
+    }
 
-        var url = String.format("https://api.dropboxapi.com/2%s", path);
-        var resultJsonString = createRestTemplate().postForObject(url, arg, String.class);
+    /**
+     * @return how many times Dropbox has asked us to slow down so far
+     */
+    public long slowDownCount() {
+        return requestThrottle.slowDownCount();
+    }
 
-        // Note (!) : this is a workaround for an ...ahem temporary issue... with
-        // getting the Java POJO object directly from the RestTemplate
-        var mapper = new ObjectMapper();
-        return mapper.readValue(resultJsonString, responseType);
+    /**
+     * @return the percentage of the requests so far that got served by an already open connection
+     */
+    public long connectionReuseRate() {
+        var requests = requestCount.sum();
+        if (requests == 0) {
+            return 0;
+        }
+        return Math.max(0, (requests - openedConnectionCount.sum()) * 100 / requests);
     }
 
     private static String toAbsoluteDropboxPath(Path pathToTest) {
@@ -145,26 +664,183 @@ public class DropboxFileSystem implements FileSystem {
     ) {
     }
 
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    public record DropboxListFolderResponse(
+    public record DropboxMoveBatchRequest(
             @JsonProperty("entries")
-            List<DropboxFile> dropboxFiles,
-            @JsonProperty("has_more")
-            boolean more,
+            List<DropboxMoveRequest> entries,
+            @JsonProperty("autorename")
+            boolean autorename
+    ) {
+    }
+
+    public record DropboxLongpollRequest(
             @JsonProperty("cursor")
-            String cursor) {
+            String cursor,
+            @JsonProperty("timeout")
+            long timeout
+    ) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record DropboxLongpollResponse(
+            @JsonProperty("changes")
+            boolean changes,
+            @JsonProperty("backoff")
+            Integer backoff) {
+    }
+
+    public record DropboxCreateFolderBatchRequest(
+            @JsonProperty("paths")
+            List<String> paths,
+            @JsonProperty("autorename")
+            boolean autorename,
+            @JsonProperty("force_async")
+            boolean forceAsync
+    ) {
+    }
+
+    public record DropboxAsyncJobRequest(
+            @JsonProperty("async_job_id")
+            String asyncJobId
+    ) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record DropboxMoveBatchResponse(
+            @JsonProperty(".tag")
+            String tag,
+            @JsonProperty("async_job_id")
+            String asyncJobId,
+            @JsonProperty("entries")
+            List<DropboxMoveBatchResultEntry> entries) {
+        public boolean isInProgress() {
+            return "async_job_id".equals(tag) || "in_progress".equals(tag);
+        }
+
+        public boolean isComplete() {
+            return "complete".equals(tag);
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record DropboxMoveBatchResultEntry(
+            @JsonProperty(".tag")
+            String tag,
+            @JsonProperty("failure")
+            JsonNode failure) {
+        public boolean isSuccess() {
+            return "success".equals(tag);
+        }
+
+        public boolean isConflict() {
+            // -(failure: {.tag: relocation_error, relocation_error: {.tag: to, to: {.tag: conflict, ...}}})-
+            var relocationError = failure == null ? null : failure.path("relocation_error");
+            return relocationError != null
+                    && "to".equals(relocationError.path(".tag").asText())
+                    && "conflict".equals(relocationError.path("to").path(".tag").asText());
+        }
+
+        public boolean isTooManyWriteOperations() {
+            // -(failure: {.tag: too_many_write_operations})-
+            return failure != null && "too_many_write_operations".equals(failure.path(".tag").asText());
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record DropboxCreateFolderBatchResponse(
+            @JsonProperty(".tag")
+            String tag,
+            @JsonProperty("async_job_id")
+            String asyncJobId,
+            @JsonProperty("entries")
+            List<DropboxCreateFolderBatchResultEntry> entries) {
+        public boolean isInProgress() {
+            return "async_job_id".equals(tag) || "in_progress".equals(tag);
+        }
+
+        public boolean isComplete() {
+            return "complete".equals(tag);
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record DropboxCreateFolderBatchResultEntry(
+            @JsonProperty(".tag")
+            String tag,
+            @JsonProperty("failure")
+            JsonNode failure) {
+        public boolean isSuccess() {
+            return "success".equals(tag);
+        }
+
+        public boolean isExistingFolder() {
+            // -(failure: {.tag: path, path: {.tag: conflict, conflict: {.tag: folder}}})-
+            var pathError = failure == null ? null : failure.path("path");
+            return pathError != null
+                    && "conflict".equals(pathError.path(".tag").asText())
+                    && "folder".equals(pathError.path("conflict").path(".tag").asText());
+        }
+    }
+
+    /**
+     * A page of a folder listing - decoded by {@link DropboxListFolderDecoder}.
+     *
+     * @param fileEntries the files of the page (folders and deleted entries are left out)
+     */
+    public record DropboxListFolderResponse(List<FileEntry> fileEntries, boolean more, String cursor) {
     }
 
     @JsonIgnoreProperties(ignoreUnknown = true)
     public record DropboxFile(
             @JsonProperty(".tag") String tag,
-            @JsonProperty("path_lower") String pathLower) {
+            @JsonProperty("path_lower") String pathLower,
+            @JsonProperty("size") long size,
+            @JsonProperty("client_modified") String clientModified,
+            @JsonProperty("content_hash") String contentHash) {
+        public FileEntry toFileEntry() {
+            return new FileEntry(
+                    Paths.get(pathLower),
+                    size,
+                    clientModified == null ? null : Instant.parse(clientModified),
+                    contentHash);
+        }
+
         public boolean isDirectory() {
             return "folder".equalsIgnoreCase(tag);
         }
+
+        public boolean isFile() {
+            return "file".equalsIgnoreCase(tag);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ResponseDecoder<T> {
+        T decode(InputStream body) throws IOException;
     }
 
     @ConfigurationProperties(prefix = "dropbox")
-    public record DropboxFileSystemProperties(String accessToken) {
+    public record DropboxFileSystemProperties(String accessToken, Http http, Throttle throttle) {
+
+        /**
+         * @param apiBaseUrl     where the Dropbox API is (for example https://api.dropboxapi.com/2)
+         * @param contentBaseUrl where the Dropbox content API is (for example https://content.dropboxapi.com/2)
+         * @param notifyBaseUrl  where the Dropbox notification API is (for example https://notify.dropboxapi.com/2)
+         */
+        public record Http(
+                String apiBaseUrl,
+                String contentBaseUrl,
+                String notifyBaseUrl,
+                int maxConnections,
+                Duration connectTimeout,
+                Duration responseTimeout,
+                Duration connectionTimeToLive) {
+        }
+
+        public record Throttle(
+                int maxConcurrency,
+                int maxRetries,
+                Duration initialBackoff,
+                Duration maxBackoff) {
+        }
     }
 }
@@ -0,0 +1,158 @@
+package com.moelholm.tools.mediaorganizer.filesystem;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.moelholm.tools.mediaorganizer.filesystem.DropboxFileSystem.DropboxListFolderResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Decodes the responses of the Dropbox list_folder (and list_folder/continue) endpoints with a streaming parser: a page
+ * holds up to 2000 entries with many fields each - of which only the tag, path_lower, size, client_modified and
+ * content_hash are used. So only those are read (everything else is skipped without being turned into strings), and
+ * each file entry is turned into a {@link FileEntry} as soon as it has been parsed.
+ */
+final class DropboxListFolderDecoder {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private DropboxListFolderDecoder() {
+    }
+
+    /**
+     * @return the page - with the file entries only (folders and deleted entries are left out)
+     */
+    static DropboxListFolderResponse decode(InputStream body) throws IOException {
+        try (var parser = JSON_FACTORY.createParser(body)) {
+            var fileEntries = new ArrayList<FileEntry>();
+            var more = false;
+            String cursor = null;
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                var fieldName = parser.getCurrentName();
+                parser.nextToken();
+                switch (fieldName) {
+                    case "entries" -> readFileEntries(parser, fileEntries::add);
+                    case "has_more" -> more = parser.getValueAsBoolean();
+                    case "cursor" -> cursor = parser.getValueAsString();
+                    default -> parser.skipChildren();
+                }
+            }
+            return new DropboxListFolderResponse(fileEntries, more, cursor);
+        }
+    }
+
+    private static void readFileEntries(JsonParser parser, Consumer<FileEntry> fileEntryConsumer) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_ARRAY);
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            var fileEntry = readFileEntry(parser);
+            if (fileEntry != null) {
+                fileEntryConsumer.accept(fileEntry);
+            }
+        }
+        expect(parser, parser.currentToken(), JsonToken.END_ARRAY);
+    }
+
+    /**
+     * @return the entry - or null if it is not a file
+     */
+    private static FileEntry readFileEntry(JsonParser parser) throws IOException {
+        var file = false;
+        String pathLower = null;
+        long size = 0;
+        Instant clientModified = null;
+        String contentHash = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var fieldName = parser.getCurrentName();
+            parser.nextToken();
+            switch (fieldName) {
+                case ".tag" -> file = textEquals(parser, "file");
+                case "path_lower" -> pathLower = parser.getValueAsString();
+                case "size" -> size = parser.getValueAsLong();
+                case "client_modified" -> clientModified = readInstant(parser);
+                case "content_hash" -> contentHash = parser.getValueAsString();
+                default -> parser.skipChildren();
+            }
+        }
+        if (!file || pathLower == null) {
+            return null;
+        }
+        return new FileEntry(Path.of(pathLower), size, clientModified, contentHash);
+    }
+
+    /**
+     * Compares the current text value with the given (lower case ASCII) text - without turning the value into a string.
+     */
+    private static boolean textEquals(JsonParser parser, String text) throws IOException {
+        if (parser.currentToken() != JsonToken.VALUE_STRING || parser.getTextLength() != text.length()) {
+            return false;
+        }
+        var characters = parser.getTextCharacters();
+        var offset = parser.getTextOffset();
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.toLowerCase(characters[offset + i]) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a timestamp. Dropbox sends them as "yyyy-MM-ddTHH:mm:ssZ" - which is parsed directly from the characters
+     * of the value (other forms are handed to {@link Instant#parse(CharSequence)}).
+     */
+    private static Instant readInstant(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.VALUE_STRING) {
+            return null;
+        }
+        var characters = parser.getTextCharacters();
+        var offset = parser.getTextOffset();
+        if (parser.getTextLength() != 20
+                || characters[offset + 4] != '-' || characters[offset + 7] != '-' || characters[offset + 10] != 'T'
+                || characters[offset + 13] != ':' || characters[offset + 16] != ':' || characters[offset + 19] != 'Z') {
+            return Instant.parse(parser.getText());
+        }
+        try {
+            var epochDay = LocalDate.of(
+                    digits(characters, offset, 4), digits(characters, offset + 5, 2), digits(characters, offset + 8, 2))
+                    .toEpochDay();
+            var hour = digits(characters, offset + 11, 2);
+            var minute = digits(characters, offset + 14, 2);
+            var second = digits(characters, offset + 17, 2);
+            if (hour > 23 || minute > 59 || second > 59) {
+                return Instant.parse(parser.getText());
+            }
+            return Instant.ofEpochSecond(epochDay * 86400 + hour * 3600 + minute * 60 + second);
+        } catch (DateTimeException | NumberFormatException e) {
+            return Instant.parse(parser.getText());
+        }
+    }
+
+    private static int digits(char[] characters, int offset, int count) {
+        var value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            var digit = characters[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException(new String(characters, offset, count));
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static void expect(JsonParser parser, JsonToken token, JsonToken expectedToken) throws JsonParseException {
+        if (token != expectedToken) {
+            throw new JsonParseException(parser, String.format(
+                    "Unexpected token in list_folder response: expected [%s] but got [%s]", expectedToken, token));
+        }
+    }
+}
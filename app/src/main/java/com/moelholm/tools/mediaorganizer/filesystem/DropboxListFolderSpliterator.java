@@ -0,0 +1,105 @@
+package com.moelholm.tools.mediaorganizer.filesystem;
+
+import com.moelholm.tools.mediaorganizer.filesystem.DropboxFileSystem.DropboxListFolderResponse;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Walks the pages of a Dropbox folder listing lazily: only the page being consumed and the page after that are held in
+ * memory. The next page is fetched in the background while the current one is being consumed.
+ * <p>
+ * When the last page has been consumed, the cursor of that page is handed to the cursor consumer. A listing that is
+ * cancelled before that (the stream is closed early) fetches no more pages - and hands on no cursor.
+ */
+class DropboxListFolderSpliterator extends Spliterators.AbstractSpliterator<FileEntry> {
+
+    private final Function<String, DropboxListFolderResponse> nextPageFetcher;
+
+    private final Executor prefetchExecutor;
+
+    private final Consumer<String> cursorConsumer;
+
+    private String cursor;
+
+    private Iterator<FileEntry> currentPage;
+
+    private CompletableFuture<DropboxListFolderResponse> nextPage;
+
+    private volatile boolean cancelled;
+
+    DropboxListFolderSpliterator(
+            DropboxListFolderResponse firstPage,
+            Function<String, DropboxListFolderResponse> nextPageFetcher,
+            Executor prefetchExecutor,
+            Consumer<String> cursorConsumer) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        this.nextPageFetcher = nextPageFetcher;
+        this.prefetchExecutor = prefetchExecutor;
+        this.cursorConsumer = cursorConsumer;
+        useAsCurrentPage(firstPage);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super FileEntry> action) {
+        while (!currentPage.hasNext()) {
+            if (nextPage == null || cancelled) {
+                if (cursor != null && !cancelled) {
+                    cursorConsumer.accept(cursor);
+                    cursor = null;
+                }
+                return false;
+            }
+            useAsCurrentPage(awaitNextPage());
+        }
+        action.accept(currentPage.next());
+        return true;
+    }
+
+    private void useAsCurrentPage(DropboxListFolderResponse page) {
+        cursor = page.cursor();
+        currentPage = page.fileEntries() == null
+                ? Collections.emptyIterator()
+                : page.fileEntries().iterator();
+        nextPage = page.more()
+                ? CompletableFuture.supplyAsync(() -> fetchNextPage(page.cursor()), prefetchExecutor)
+                : null;
+    }
+
+    /**
+     * Stops the listing: the page being prefetched is dropped - and if its request has not been sent yet, it is not.
+     */
+    void cancel() {
+        cancelled = true;
+        var page = nextPage;
+        if (page != null) {
+            page.cancel(false);
+        }
+    }
+
+    private DropboxListFolderResponse fetchNextPage(String cursor) {
+        if (cancelled) {
+            throw new CancellationException("The listing has been cancelled");
+        }
+        return nextPageFetcher.apply(cursor);
+    }
+
+    private DropboxListFolderResponse awaitNextPage() {
+        try {
+            return nextPage.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.moelholm.tools.mediaorganizer.filesystem;
+
+import com.moelholm.tools.mediaorganizer.filesystem.DropboxFileSystem.DropboxFileSystemProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the requests to Dropbox at a rate that Dropbox accepts.
+ * <p>
+ * The amount of concurrent requests is limited by an AIMD (additive increase, multiplicative decrease) limit: every
+ * successful request raises the limit a little (up to [maxConcurrency]) - every "slow down" answer from Dropbox (HTTP 429
+ * or 503) halves it. A Retry-After header from Dropbox pauses all requests for that long.
+ * <p>
+ * Failed requests are retried with jittered exponential backoff: requests that Dropbox asked us to slow down are always
+ * retried (they were not performed), other failures (HTTP 5xx, I/O errors) only if the request is idempotent.
+ */
+class DropboxRequestThrottle {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final DropboxFileSystemProperties.Throttle throttle;
+
+    private final LongAdder retryCount = new LongAdder();
+
+    private final LongAdder slowDownCount = new LongAdder();
+
+    private double concurrencyLimit;
+
+    private int inFlightRequests;
+
+    private long pausedUntilMillis;
+
+    DropboxRequestThrottle(DropboxFileSystemProperties.Throttle throttle) {
+        this.throttle = throttle;
+        this.concurrencyLimit = maxConcurrency();
+    }
+
+    <T> T execute(String endpoint, boolean idempotent, Callable<T> request) throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            Duration backoff;
+            String cause;
+            acquire();
+            try {
+                var response = request.call();
+                onSuccess();
+                return response;
+            } catch (HttpStatusCodeException e) {
+                var slowDown = e.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS
+                        || e.getStatusCode() == HttpStatus.SERVICE_UNAVAILABLE;
+                var retryable = slowDown || (idempotent && e.getStatusCode().is5xxServerError());
+                if (!retryable || attempt >= throttle.maxRetries()) {
+                    throw e;
+                }
+                backoff = slowDown
+                        ? onSlowDown(retryAfter(e.getResponseHeaders()), backoff(attempt))
+                        : backoff(attempt);
+                cause = e.getStatusCode().toString();
+            } catch (ResourceAccessException e) {
+                if (!idempotent || attempt >= throttle.maxRetries()) {
+                    throw e;
+                }
+                backoff = backoff(attempt);
+                cause = e.getMessage();
+            } finally {
+                release();
+            }
+            retryCount.increment();
+            logger.info("Retrying Dropbox request [{}] in [{}] ms (attempt [{}] failed with [{}])",
+                    endpoint, backoff.toMillis(), attempt + 1, cause);
+            Thread.sleep(backoff.toMillis());
+        }
+    }
+
+    /**
+     * For requests that Dropbox performed - but refused some entries of (for example the moves of a move batch that
+     * Dropbox answers with "too_many_write_operations"): those entries were not performed, so they can be tried again.
+     * Counts as a retry and slows down like a "slow down" answer does.
+     *
+     * @param attempt how many times the entries have been tried (1 after the first time)
+     * @return how long to wait before trying the entries again - or null if they have been tried too many times
+     */
+    Duration onRefusedEntries(String endpoint, int attempt, int refusedEntries) {
+        if (attempt > throttle.maxRetries()) {
+            return null;
+        }
+        retryCount.increment();
+        var backoff = onSlowDown(null, backoff(attempt - 1));
+        logger.info("Retrying [{}] entries of Dropbox request [{}] in [{}] ms (attempt [{}] was refused)",
+                refusedEntries, endpoint, backoff.toMillis(), attempt);
+        return backoff;
+    }
+
+    int concurrencyLimit() {
+        synchronized (this) {
+            return (int) concurrencyLimit;
+        }
+    }
+
+    long retryCount() {
+        return retryCount.sum();
+    }
+
+    long slowDownCount() {
+        return slowDownCount.sum();
+    }
+
+    private synchronized void acquire() throws InterruptedException {
+        while (true) {
+            var pauseMillis = pausedUntilMillis - System.currentTimeMillis();
+            if (pauseMillis > 0) {
+                wait(pauseMillis);
+            } else if (inFlightRequests >= (int) concurrencyLimit) {
+                wait();
+            } else {
+                inFlightRequests++;
+                return;
+            }
+        }
+    }
+
+    private synchronized void release() {
+        inFlightRequests--;
+        notifyAll();
+    }
+
+    private synchronized void onSuccess() {
+        concurrencyLimit = Math.min(maxConcurrency(), concurrencyLimit + 1 / concurrencyLimit);
+    }
+
+    private synchronized Duration onSlowDown(Duration retryAfter, Duration backoff) {
+        slowDownCount.increment();
+        concurrencyLimit = Math.max(1, concurrencyLimit / 2);
+        var pause = retryAfter != null && retryAfter.compareTo(backoff) > 0 ? retryAfter : backoff;
+        pausedUntilMillis = Math.max(pausedUntilMillis, System.currentTimeMillis() + pause.toMillis());
+        logger.info("Dropbox asked us to slow down - concurrency limit is now [{}], pausing for [{}] ms",
+                (int) concurrencyLimit, pause.toMillis());
+        return pause;
+    }
+
+    private Duration backoff(int attempt) {
+        var maxBackoffMillis = throttle.maxBackoff().toMillis();
+        var exponentialBackoffMillis = Math.min(maxBackoffMillis, throttle.initialBackoff().toMillis() << Math.min(attempt, 20));
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(exponentialBackoffMillis / 2, exponentialBackoffMillis + 1));
+    }
+
+    private int maxConcurrency() {
+        return Math.max(1, throttle.maxConcurrency());
+    }
+
+    private static Duration retryAfter(HttpHeaders headers) {
+        var retryAfter = headers == null ? null : headers.getFirst(HttpHeaders.RETRY_AFTER);
+        try {
+            return retryAfter == null ? null : Duration.ofSeconds(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
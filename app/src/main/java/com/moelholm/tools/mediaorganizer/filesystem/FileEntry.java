@@ -0,0 +1,22 @@
+package com.moelholm.tools.mediaorganizer.filesystem;
+
+import java.nio.file.Path;
+import java.time.Instant;
+
+/**
+ * A file as seen by a listing of a {@link FileSystem}.
+ *
+ * @param size         the size of the file in bytes (-1 if unknown)
+ * @param lastModified when the file was last modified (null if unknown)
+ * @param contentHash  the {@link ContentHash content hash} of the file - if the listing includes it (null otherwise)
+ */
+public record FileEntry(Path path, long size, Instant lastModified, String contentHash) {
+
+    public FileEntry(Path path, long size, Instant lastModified) {
+        this(path, size, lastModified, null);
+    }
+
+    public static FileEntry of(Path path) {
+        return new FileEntry(path, -1, null);
+    }
+}
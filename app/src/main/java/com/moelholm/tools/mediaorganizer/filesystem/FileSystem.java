@@ -1,14 +1,79 @@
 package com.moelholm.tools.mediaorganizer.filesystem;
 
 import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.stream.Stream;
 
 public interface FileSystem {
 
     void move(Path from, Path to) throws IOException;
 
-    Stream<Path> streamOfAllFilesFromPath(Path from);
+    /**
+     * Moves all the given files. Implementations that can move several files in one go should override this - the
+     * default implementation simply moves the files one by one.
+     *
+     * @return one result per move - in the same order as the given moves
+     */
+    default List<MoveResult> moveAll(List<Move> moves) {
+        var results = new ArrayList<MoveResult>(moves.size());
+        for (var move : moves) {
+            try {
+                move(move.from(), move.to());
+                results.add(MoveResult.moved(move));
+            } catch (FileAlreadyExistsException e) {
+                results.add(MoveResult.skipped(move));
+            } catch (IOException | RuntimeException e) {
+                results.add(MoveResult.failed(move, e));
+            }
+        }
+        return results;
+    }
+
+    Stream<FileEntry> streamOfAllFileEntriesFromPath(Path from);
+
+    default Stream<Path> streamOfAllFilesFromPath(Path from) {
+        return streamOfAllFileEntriesFromPath(from).map(FileEntry::path);
+    }
+
+    /**
+     * Reads a part of a file - without reading the rest of it.
+     *
+     * @return at most [length] bytes of the file, starting at byte [position] (fewer if the file ends before that)
+     */
+    byte[] read(Path path, long position, int length) throws IOException;
+
+    /**
+     * @return the {@link ContentHash content hash} of the file. The default implementation uses the hash from the
+     * listing if there is one - and otherwise reads the file block by block.
+     */
+    default String contentHash(FileEntry fileEntry) throws IOException {
+        if (fileEntry.contentHash() != null) {
+            return fileEntry.contentHash();
+        }
+        var hashesOfBlocks = new ArrayList<byte[]>();
+        for (long position = 0; ; position += ContentHash.BLOCK_SIZE) {
+            var block = read(fileEntry.path(), position, ContentHash.BLOCK_SIZE);
+            if (block.length > 0) {
+                hashesOfBlocks.add(ContentHash.hashOfBlock(block));
+            }
+            if (block.length < ContentHash.BLOCK_SIZE) {
+                return ContentHash.of(hashesOfBlocks);
+            }
+        }
+    }
 
     boolean existingDirectory(Path from);
+
+    /**
+     * Creates the given directories (and their parents) unless they exist already - so that files can be moved into
+     * them without checking for (or creating) the directory per file. Implementations remember the directories that
+     * are known to exist. The default implementation does nothing: the directories are then created as files are
+     * moved into them.
+     */
+    default void ensureDirectories(Set<Path> directories) throws IOException {
+    }
 }
@@ -0,0 +1,38 @@
+package com.moelholm.tools.mediaorganizer.filesystem;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Implemented by file systems that can list only the files that changed since a previous listing. The listings hand
+ * out a cursor when they have been consumed completely - and that cursor is then the starting point of the next
+ * listing.
+ */
+public interface IncrementalListing {
+
+    /**
+     * Like {@link FileSystem#streamOfAllFileEntriesFromPath(Path)} - but hands the cursor of the listing to the
+     * [cursorConsumer] when the stream has been consumed completely.
+     */
+    Stream<FileEntry> streamOfAllFileEntriesFromPath(Path from, Consumer<String> cursorConsumer);
+
+    /**
+     * Lists the files that have been added or modified since the [cursor] was handed out - and hands the cursor of
+     * this listing to the [cursorConsumer] when the stream has been consumed completely.
+     *
+     * @throws RuntimeException if the cursor is no longer valid (and a complete listing is needed)
+     */
+    Stream<FileEntry> streamOfFileEntriesChangedSince(String cursor, Consumer<String> cursorConsumer);
+
+    /**
+     * Waits until something has changed since the [cursor] was handed out - without listing anything.
+     *
+     * @param timeout how long to wait at most (implementations may round it to what they support)
+     * @return true if something has changed - false if nothing changed within the timeout
+     * @throws IOException if the cursor is no longer valid (and a complete listing is needed)
+     */
+    boolean awaitChanges(String cursor, Duration timeout) throws IOException, InterruptedException;
+}
@@ -1,40 +1,373 @@
 package com.moelholm.tools.mediaorganizer.filesystem;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 @Component
 @ConditionalOnProperty(name = "mediaorganizer.fileSystemType", havingValue = "local")
 public class LocalFileSystem implements FileSystem {
 
+    private static final String PARTIAL_FILE_SUFFIX = ".partial";
+
+    private static final String SOURCE_FILE_SUFFIX = ".source";
+
+    /**
+     * How much is copied across file stores between syncs - a resumed copy continues from the last sync.
+     */
+    private static final long SYNC_INTERVAL_BYTES = 64L * 1024 * 1024;
+
+    private final LocalFileSystemProperties properties;
+
+    private final Set<Path> existingDirectories = ConcurrentHashMap.newKeySet();
+
+    private final Map<Path, FileStore> fileStores = new ConcurrentHashMap<>();
+
+    private final Object[] renameLocks = Stream.generate(Object::new).limit(64).toArray();
+
+    private final Timer renameTimer;
+
+    private final Timer copyTimer;
+
+    private final Counter bytesCopied;
+
+    public LocalFileSystem(LocalFileSystemProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.renameTimer = moveTimer("rename", meterRegistry);
+        this.copyTimer = moveTimer("copy", meterRegistry);
+        this.bytesCopied = Counter.builder("filesystem.local.bytes.copied")
+                .description("Bytes copied by moves across file stores")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    private static Timer moveTimer(String strategy, MeterRegistry meterRegistry) {
+        return Timer.builder("filesystem.local.moves")
+                .description("Moves of files on the local file system")
+                .tag("strategy", strategy)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
     @Override
     public boolean existingDirectory(Path pathToTest) {
         return (pathToTest != null) && (pathToTest.toFile().isDirectory());
     }
 
+    /**
+     * Creates the directories that are not known to exist yet - in parallel.
+     */
+    @Override
+    public void ensureDirectories(Set<Path> directories) throws IOException {
+        try {
+            directories.stream()
+                    .map(Path::toAbsolutePath)
+                    .filter(directory -> !existingDirectories.contains(directory))
+                    .parallel()
+                    .forEach(directory -> {
+                        try {
+                            ensureDirectoryStructureExists(directory);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
     @Override
-    public Stream<Path> streamOfAllFilesFromPath(Path from) {
+    public Stream<FileEntry> streamOfAllFileEntriesFromPath(Path from) {
+        if (properties.recursive()) {
+            return ParallelFileTreeWalker.walk(from, properties.walkerParallelism());
+        }
         try {
-            return Files.list(from);
+            return Files.list(from).map(LocalFileSystem::toFileEntry).filter(Objects::nonNull);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * @return the file entry - or null if the path is not a regular file
+     */
+    private static FileEntry toFileEntry(Path path) {
+        try {
+            var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                return null;
+            }
+            return new FileEntry(path, attributes.size(), attributes.lastModifiedTime().toInstant());
+        } catch (IOException e) {
+            return FileEntry.of(path);
+        }
+    }
+
+    @Override
+    public byte[] read(Path path, long position, int length) throws IOException {
+        try (var channel = FileChannel.open(path)) {
+            var buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) >= 0) {
+                // -(keep reading until the buffer is full or the file ends)-
+            }
+            return Arrays.copyOf(buffer.array(), buffer.position());
+        }
+    }
+
+    /**
+     * Hashes the blocks of the file in parallel - reading them through memory mapping (so the file is not copied into
+     * the heap).
+     */
+    @Override
+    public String contentHash(FileEntry fileEntry) throws IOException {
+        try (var channel = FileChannel.open(fileEntry.path())) {
+            var size = channel.size();
+            var hashesOfBlocks = IntStream.range(0, ContentHash.blockCount(size))
+                    .parallel()
+                    .mapToObj(block -> hashOfBlock(channel, block, size))
+                    .toList();
+            return ContentHash.of(hashesOfBlocks);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static byte[] hashOfBlock(FileChannel channel, int block, long size) {
+        var position = (long) block * ContentHash.BLOCK_SIZE;
+        try {
+            return ContentHash.hashOfBlock(channel.map(
+                    FileChannel.MapMode.READ_ONLY, position, Math.min(ContentHash.BLOCK_SIZE, size - position)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Moves the file with a rename when [from] and [to] are on the same file store. Otherwise the file is copied
+     * across (see {@link #moveAcrossFileStores(Path, Path)}).
+     */
     @Override
     public void move(Path from, Path to) throws IOException {
-        ensureDirectoryStructureExists(to.getParent());
-        Files.move(from, to);
+        var toDirectory = to.toAbsolutePath().getParent();
+        ensureDirectoryStructureExists(toDirectory);
+        try {
+            moveToExistingDirectory(from, to, toDirectory);
+        } catch (NoSuchFileException e) {
+            if (toDirectory == null || Files.isDirectory(toDirectory) || !Files.exists(from)) {
+                throw e;
+            }
+            // -(the directory was removed after it got cached as existing)-
+            existingDirectories.remove(toDirectory);
+            ensureDirectoryStructureExists(toDirectory);
+            moveToExistingDirectory(from, to, toDirectory);
+        }
+    }
+
+    private void moveToExistingDirectory(Path from, Path to, Path toDirectory) throws IOException {
+        if (Files.exists(to, LinkOption.NOFOLLOW_LINKS)) {
+            throw new FileAlreadyExistsException(to.toString());
+        }
+        var start = System.nanoTime();
+        if (fileStoreOf(from.toAbsolutePath().getParent()).equals(fileStoreOf(toDirectory))) {
+            renameWithoutReplacing(from, to);
+            renameTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        } else {
+            moveAcrossFileStores(from, to);
+            copyTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
     }
 
-    private void ensureDirectoryStructureExists(Path directoryPath) {
-        if (directoryPath != null && !directoryPath.toFile().exists()) {
-            directoryPath.toFile().mkdirs();
+    /**
+     * Renames [from] to [to] - and fails with a {@link FileAlreadyExistsException} if [to] exists. A rename would
+     * silently replace a [to] that appeared after it was checked for (two files with the same name - from different
+     * folders or batches - can be moved to the same destination folder at the same time). A hard link never replaces a
+     * file: so [from] is linked as [to] and then unlinked. File systems without hard links get a check and a rename
+     * under a lock per destination file (which covers the moves of this process).
+     */
+    private void renameWithoutReplacing(Path from, Path to) throws IOException {
+        try {
+            Files.createLink(to, from);
+        } catch (FileAlreadyExistsException | NoSuchFileException | AccessDeniedException e) {
+            throw e;
+        } catch (FileSystemException | UnsupportedOperationException e) {
+            // -(no hard links here)-
+            synchronized (renameLocks[Math.floorMod(to.hashCode(), renameLocks.length)]) {
+                if (Files.exists(to, LinkOption.NOFOLLOW_LINKS)) {
+                    throw new FileAlreadyExistsException(to.toString());
+                }
+                Files.move(from, to);
+            }
+            return;
         }
+        Files.delete(from);
+    }
+
+    /**
+     * Copies [from] to a ".partial" file next to [to] - which is then synced and renamed to [to], and only then is
+     * [from] deleted.
+     * <p>
+     * The ".partial" file is named after [from] (its path, size and last modified time): so files with the same name
+     * from different folders - or a file that was replaced since - never share one. Next to it a ".source" file tells
+     * which file is being copied and how much of the copy has been synced. A copy that was interrupted resumes from the
+     * synced part - but only if the ".source" file tells exactly the same file. Otherwise the copy starts over.
+     */
+    void moveAcrossFileStores(Path from, Path to) throws IOException {
+        var fromAttributes = Files.readAttributes(from, BasicFileAttributes.class);
+        var identity = identityOf(from, fromAttributes);
+        var partialTo = partialFileOf(to, identity);
+        var sourceOfPartialTo = sourceFileOf(partialTo);
+        try (var source = FileChannel.open(from, StandardOpenOption.READ);
+             var target = FileChannel.open(partialTo, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            var size = fromAttributes.size();
+            var position = Math.min(syncedLengthOf(sourceOfPartialTo, identity), Math.min(target.size(), size));
+            target.truncate(position);
+            target.position(position);
+            writeSource(sourceOfPartialTo, identity, position);
+            while (position < size) {
+                var chunkEnd = Math.min(size, position + SYNC_INTERVAL_BYTES);
+                while (position < chunkEnd) {
+                    var transferred = source.transferTo(position, chunkEnd - position, target);
+                    if (transferred == 0) {
+                        throw new IOException(String.format(
+                                "Source [%s] shrank during copy (copied [%s] of [%s] bytes)", from, position, size));
+                    }
+                    bytesCopied.increment(transferred);
+                    position += transferred;
+                }
+                target.force(true);
+                writeSource(sourceOfPartialTo, identity, position);
+            }
+        }
+        Files.setLastModifiedTime(partialTo, fromAttributes.lastModifiedTime());
+        renameWithoutReplacing(partialTo, to);
+        Files.delete(sourceOfPartialTo);
+        Files.delete(from);
+    }
+
+    /**
+     * @return true if the file is a leftover of a copy across file stores that has not finished (a ".partial" file - or
+     * the ".source" file next to it)
+     */
+    public static boolean isUnfinishedCopy(Path path) {
+        var fileName = path.getFileName().toString();
+        return fileName.endsWith(PARTIAL_FILE_SUFFIX) || fileName.endsWith(SOURCE_FILE_SUFFIX);
+    }
+
+    /**
+     * @return the ".partial" file that [from] is copied to on its way to [to]
+     */
+    static Path partialFileOf(Path from, Path to) throws IOException {
+        return partialFileOf(to, identityOf(from, Files.readAttributes(from, BasicFileAttributes.class)));
+    }
+
+    /**
+     * @return the ".source" file next to the [partialTo] file: the lines of the identity of the source (its absolute
+     * path, size and last modified time in milliseconds) - followed by a line with how much of it has been synced
+     */
+    static Path sourceFileOf(Path partialTo) {
+        return partialTo.resolveSibling(partialTo.getFileName() + SOURCE_FILE_SUFFIX);
+    }
+
+    private static Path partialFileOf(Path to, String identity) {
+        return to.resolveSibling(String.format("%s.%s%s", to.getFileName(), shortHashOf(identity), PARTIAL_FILE_SUFFIX));
+    }
+
+    private static String identityOf(Path from, BasicFileAttributes attributes) {
+        return String.format("%s\n%s\n%s",
+                from.toAbsolutePath(), attributes.size(), attributes.lastModifiedTime().toMillis());
+    }
+
+    /**
+     * @return how much of the copy of the source with the [identity] has been synced (0 if the ".source" file tells
+     * another source - or nothing)
+     */
+    private static long syncedLengthOf(Path sourceOfPartialTo, String identity) {
+        try {
+            var lines = Files.readString(sourceOfPartialTo, StandardCharsets.UTF_8);
+            var syncedLengthStart = lines.lastIndexOf('\n');
+            if (syncedLengthStart < 0 || !lines.substring(0, syncedLengthStart).equals(identity)) {
+                return 0;
+            }
+            return Long.parseLong(lines.substring(syncedLengthStart + 1));
+        } catch (IOException | NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static void writeSource(Path sourceOfPartialTo, String identity, long syncedLength) throws IOException {
+        try (var channel = FileChannel.open(sourceOfPartialTo,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(
+                    String.format("%s\n%s", identity, syncedLength).getBytes(StandardCharsets.UTF_8)));
+            channel.force(true);
+        }
+    }
+
+    private static String shortHashOf(String text) {
+        try {
+            var hash = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    private FileStore fileStoreOf(Path directory) throws IOException {
+        try {
+            return fileStores.computeIfAbsent(directory, key -> {
+                try {
+                    return Files.getFileStore(key);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void ensureDirectoryStructureExists(Path directoryPath) throws IOException {
+        if (directoryPath != null && !existingDirectories.contains(directoryPath)) {
+            Files.createDirectories(directoryPath);
+            existingDirectories.add(directoryPath);
+        }
+    }
+
+    /**
+     * @param recursive          should the files in subfolders of the source folder be organized too?
+     * @param walkerParallelism  how many folders may be listed in parallel when organizing recursively?
+     */
+    @ConfigurationProperties(prefix = "local")
+    public record LocalFileSystemProperties(boolean recursive, int walkerParallelism) {
     }
 }
@@ -0,0 +1,6 @@
+package com.moelholm.tools.mediaorganizer.filesystem;
+
+import java.nio.file.Path;
+
+public record Move(Path from, Path to) {
+}
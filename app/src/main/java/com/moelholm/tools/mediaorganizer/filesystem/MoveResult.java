@@ -0,0 +1,22 @@
+package com.moelholm.tools.mediaorganizer.filesystem;
+
+public record MoveResult(Move move, Status status, Exception cause) {
+
+    public enum Status {
+        MOVED,
+        SKIPPED,
+        FAILED
+    }
+
+    public static MoveResult moved(Move move) {
+        return new MoveResult(move, Status.MOVED, null);
+    }
+
+    public static MoveResult skipped(Move move) {
+        return new MoveResult(move, Status.SKIPPED, null);
+    }
+
+    public static MoveResult failed(Move move, Exception cause) {
+        return new MoveResult(move, Status.FAILED, cause);
+    }
+}
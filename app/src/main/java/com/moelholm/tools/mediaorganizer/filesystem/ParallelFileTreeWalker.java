@@ -0,0 +1,136 @@
+package com.moelholm.tools.mediaorganizer.filesystem;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Walks a directory tree with a fork/join pool: every directory is listed by its own task, so sibling subtrees are
+ * listed in parallel. The attributes of every file are read while walking, so the files do not need to be looked at
+ * again later.
+ * <p>
+ * The files are handed to the returned stream through a bounded queue - so walking and consuming overlap, and a slow
+ * consumer slows the walk down instead of filling up the memory. Closing the stream stops the walk.
+ */
+class ParallelFileTreeWalker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelFileTreeWalker.class);
+
+    private static final int QUEUE_CAPACITY = 10_000;
+
+    private static final FileEntry END_OF_WALK = FileEntry.of(Path.of(""));
+
+    static Stream<FileEntry> walk(Path root, int parallelism) {
+        var queue = new LinkedBlockingQueue<FileEntry>(QUEUE_CAPACITY);
+        var pool = new ForkJoinPool(Math.max(1, parallelism));
+        CompletableFuture
+                .runAsync(() -> new DirectoryWalk(root, queue).invoke(), pool)
+                .whenComplete((result, throwable) -> {
+                    if (throwable != null) {
+                        LOGGER.warn(String.format("Failed to walk [%s]", root), throwable);
+                    }
+                    put(queue, END_OF_WALK);
+                });
+        return StreamSupport.stream(new QueueSpliterator(queue), false)
+                .onClose(() -> {
+                    pool.shutdownNow();
+                    queue.clear();
+                });
+    }
+
+    private static boolean put(BlockingQueue<FileEntry> queue, FileEntry fileEntry) {
+        try {
+            queue.put(fileEntry);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static final class DirectoryWalk extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+
+        private final BlockingQueue<FileEntry> queue;
+
+        DirectoryWalk(Path directory, BlockingQueue<FileEntry> queue) {
+            this.directory = directory;
+            this.queue = queue;
+        }
+
+        @Override
+        protected void compute() {
+            var subdirectoryWalks = new ArrayList<DirectoryWalk>();
+            try (var directoryStream = Files.newDirectoryStream(directory)) {
+                for (var path : directoryStream) {
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        LOGGER.warn("Failed to read [{}] - so skipping that (Cause says: {})", path, e.getMessage());
+                        continue;
+                    }
+                    if (attributes.isDirectory()) {
+                        subdirectoryWalks.add(new DirectoryWalk(path, queue));
+                    } else if (attributes.isRegularFile()
+                            && !put(queue, new FileEntry(path, attributes.size(), attributes.lastModifiedTime().toInstant()))) {
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Failed to list [{}] - so skipping that (Cause says: {})", directory, e.getMessage());
+            }
+            invokeAll(subdirectoryWalks);
+        }
+    }
+
+    private static final class QueueSpliterator extends Spliterators.AbstractSpliterator<FileEntry> {
+
+        private final BlockingQueue<FileEntry> queue;
+
+        private boolean ended;
+
+        QueueSpliterator(BlockingQueue<FileEntry> queue) {
+            super(Long.MAX_VALUE, Spliterator.NONNULL);
+            this.queue = queue;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super FileEntry> action) {
+            if (ended) {
+                return false;
+            }
+            try {
+                var fileEntry = queue.take();
+                if (fileEntry == END_OF_WALK) {
+                    ended = true;
+                    return false;
+                }
+                action.accept(fileEntry);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while walking the file tree", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.moelholm.tools.mediaorganizer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.ConfigDataApplicationContextInitializer;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Boots the application against a local source folder (target/testground-from) and destination folder
+ * (target/testground-to) - which are emptied before and after each test.
+ */
+@ActiveProfiles(profiles = "test")
+@TestPropertySource(properties = {
+        "mediaorganizer.fileSystemType=local",
+        "mediaorganizer.source.fromDir=target/testground-from",
+        "mediaorganizer.destination.suffixForDestinationFolderOfUnknownEventMediaFiles=This Must Be An Event",
+        "mediaorganizer.destination.suffixForDestinationFolderOfMiscMediaFiles=Misc",
+        "mediaorganizer.destination.localeForGeneratingDestinationFolderNames=en_UK",
+        "mediaorganizer.destination.toDir=target/testground-to",
+})
+@SpringBootTest
+public abstract class AbstractMediaOrganizerIntegrationTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AbstractMediaOrganizerIntegrationTest.class);
+
+    @Autowired
+    protected MediaOrganizer organizer; // S.U.T.
+
+    protected Path from;
+
+    protected Path to;
+
+    @AfterEach
+    public void after() {
+        LOG.info("Test stopped");
+        deleteTestDataDirectory(from);
+        deleteTestDataDirectory(to);
+    }
+
+    @BeforeEach
+    public void before() throws IOException {
+        LOG.info("Test started");
+        from = createTestDataDirectoryAndReturnPath("target/testground-from");
+        to = createTestDataDirectoryAndReturnPath("target/testground-to");
+    }
+
+    protected void assertPathExistsInDirectory(Path directoryPath, String first, String... other) {
+        Path pathInToDirectoryPath = directoryPath.resolve(Paths.get(first, other));
+        assertTrue(pathInToDirectoryPath.toFile().exists());
+    }
+
+    protected void assertPathNotExistsInDirectory(Path directoryPath, String first, String... other) {
+        Path pathInToDirectoryPath = directoryPath.resolve(Paths.get(first, other));
+        assertFalse(pathInToDirectoryPath.toFile().exists());
+    }
+
+    private void deleteTestDataDirectory(Path path) {
+        LOG.info("    Deleting {}", path);
+        if (path.toFile().exists()) {
+            try {
+                Files.walkFileTree(path, new FileDeleterVisitor());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private Path createTestDataDirectoryAndReturnPath(String pathAsString) {
+        Path path = Paths.get(pathAsString);
+        if (path.toFile().exists()) { // A-nasty-little-side-effect-ok-for-testing-!-:)-
+            deleteTestDataDirectory(path);
+        }
+        path.toFile().mkdirs();
+        return path;
+    }
+
+    protected void addFileToDirectoryPath(Path targetDirectoryPath, String fileName) {
+        addFileToDirectoryPath(targetDirectoryPath, fileName, fileName); // -(unique content: so no file is a duplicate of another)-
+    }
+
+    protected void addFileToDirectoryPath(Path targetDirectoryPath, String fileName, String content) {
+        try {
+            Files.createDirectories(targetDirectoryPath);
+            Files.writeString(targetDirectoryPath.resolve(fileName), content);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static final class FileDeleterVisitor extends SimpleFileVisitor<Path> {
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+            Files.delete(file);
+            LOG.info("        Deleted {}", file.getFileName());
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+            Files.delete(dir);
+            LOG.info("        Deleted {}", dir.getFileName());
+            return FileVisitResult.CONTINUE;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.moelholm.tools.mediaorganizer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CappedExecutorTest {
+
+    private final Queue<Runnable> pool = new ArrayDeque<>();
+
+    @Test
+    public void execute_whenPoolHasMoreThreadsThanTheCap_thenRunsAtMostCapTasksAtTheSameTime() throws InterruptedException {
+
+        // Given
+        var threadPool = Executors.newFixedThreadPool(8);
+        var cappedExecutor = new CappedExecutor(threadPool, 2);
+        var running = new AtomicInteger();
+        var maxRunning = new AtomicInteger();
+        var done = new CountDownLatch(20);
+
+        // When
+        for (int i = 0; i < 20; i++) {
+            cappedExecutor.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        // Then
+        try {
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(2, maxRunning.get());
+        } finally {
+            threadPool.shutdown();
+        }
+    }
+
+    @Test
+    public void execute_whenExecutorsShareAPool_thenTheyTakeTurns() {
+
+        // Given
+        var anna = new CappedExecutor(pool::add, 1);
+        var bob = new CappedExecutor(pool::add, 1);
+        var ran = new ArrayList<String>();
+
+        // When
+        for (int i = 1; i <= 3; i++) {
+            var task = i;
+            anna.execute(() -> ran.add("anna-" + task));
+        }
+        for (int i = 1; i <= 3; i++) {
+            var task = i;
+            bob.execute(() -> ran.add("bob-" + task));
+        }
+        runPool();
+
+        // Then
+        assertEquals(List.of("anna-1", "bob-1", "anna-2", "bob-2", "anna-3", "bob-3"), ran);
+    }
+
+    @Test
+    public void execute_whenTaskFails_thenStillRunsTheNextTask() {
+
+        // Given
+        var cappedExecutor = new CappedExecutor(pool::add, 1);
+        var ran = new AtomicInteger();
+        cappedExecutor.execute(() -> {
+            throw new IllegalStateException("Failed");
+        });
+        cappedExecutor.execute(ran::incrementAndGet);
+
+        // When
+        assertThrows(IllegalStateException.class, () -> pool.poll().run());
+        runPool();
+
+        // Then
+        assertEquals(1, ran.get());
+    }
+
+    private void runPool() {
+        while (!pool.isEmpty()) {
+            pool.poll().run();
+        }
+    }
+}
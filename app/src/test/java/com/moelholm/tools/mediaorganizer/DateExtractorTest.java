@@ -0,0 +1,64 @@
+package com.moelholm.tools.mediaorganizer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class DateExtractorTest {
+
+    private final DateExtractor dateExtractor = new DateExtractor("yyyy-MM-dd HH.mm.ss", Locale.ENGLISH); // S.U.T.
+
+    @Test
+    public void toYearMonthDayString_whenFileNameStartsWithADate_thenReturnsItsDay() {
+
+        // When
+        var yearMonthDayString = dateExtractor.toYearMonthDayString("2015-10-11 15.13.00.jpg");
+
+        // Then
+        assertEquals("2015 - October - 11", yearMonthDayString);
+    }
+
+    @Test
+    public void toYearMonthDayString_whenNumbersOfTheDateHaveNoLeadingZeros_thenStillReturnsItsDay() {
+
+        // When
+        var yearMonthDayString = dateExtractor.toYearMonthDayString("2015-3-7 9.5.0.jpg");
+
+        // Then
+        assertEquals("2015 - March - 7", yearMonthDayString);
+    }
+
+    @Test
+    public void toYearMonthDayString_whenDayIsOutOfRange_thenRollsOver() {
+
+        // When
+        var yearMonthDayString = dateExtractor.toYearMonthDayString("2015-02-30 15.13.00.jpg");
+
+        // Then
+        assertEquals("2015 - March - 2", yearMonthDayString);
+    }
+
+    @Test
+    public void toYearMonthDayString_whenFileNameDoesNotStartWithADate_thenReturnsNull() {
+
+        // When / Then
+        assertNull(dateExtractor.toYearMonthDayString("IMG_0001.jpg"));
+        assertNull(dateExtractor.toYearMonthDayString("2015-03-07.jpg"));
+    }
+
+    @Test
+    public void toYearMonthDayString_whenPatternHasAMonthName_thenAcceptsItInAnyCase() {
+
+        // Given
+        var dateExtractor = new DateExtractor("dd MMM yyyy", Locale.ENGLISH);
+
+        // When
+        var yearMonthDayString = dateExtractor.toYearMonthDayString("7 mar 2015 - beach.jpg");
+
+        // Then
+        assertEquals("2015 - March - 7", yearMonthDayString);
+    }
+}
@@ -0,0 +1,134 @@
+package com.moelholm.tools.mediaorganizer;
+
+import com.moelholm.tools.mediaorganizer.Deduplicator.Verdict;
+import com.moelholm.tools.mediaorganizer.filesystem.FileEntry;
+import com.moelholm.tools.mediaorganizer.filesystem.LocalFileSystem;
+import com.moelholm.tools.mediaorganizer.filesystem.LocalFileSystem.LocalFileSystemProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class DeduplicatorTest {
+
+    @TempDir
+    Path folder;
+
+    private Path from;
+
+    private Path to;
+
+    private Deduplicator deduplicator; // S.U.T.
+
+    @BeforeEach
+    public void before() throws IOException {
+        from = Files.createDirectories(folder.resolve("from"));
+        to = folder.resolve("to").resolve("2015 - January - Misc");
+        deduplicator = new Deduplicator(
+                new LocalFileSystem(new LocalFileSystemProperties(false, 1), new SimpleMeterRegistry()), 2);
+    }
+
+    @AfterEach
+    public void after() {
+        deduplicator.close();
+    }
+
+    @Test
+    public void decide_whenDestinationFolderDoesNotExist_thenEveryMediaFileIsNew() throws IOException {
+
+        // Given
+        var first = file(from, "2015-01-13 03.13.53.jpg", "some content");
+        var second = file(from, "2015-01-13 03.13.54.jpg", "other content");
+
+        // When
+        var decisions = deduplicator.decide(List.of(first, second), to);
+
+        // Then
+        assertEquals(Verdict.NEW, decisions.get(0).verdict());
+        assertEquals(to.resolve("2015-01-13 03.13.53.jpg"), decisions.get(0).to());
+        assertEquals(Verdict.NEW, decisions.get(1).verdict());
+        assertEquals(to.resolve("2015-01-13 03.13.54.jpg"), decisions.get(1).to());
+    }
+
+    @Test
+    public void decide_whenMediaFilesOfTheBatchHaveTheSameContent_thenOnlyTheFirstIsNew() throws IOException {
+
+        // Given
+        var first = file(from, "2015-01-13 03.13.53.jpg", "same content");
+        var second = file(from, "2015-01-13 03.13.53-1.jpg", "same content");
+
+        // When
+        var decisions = deduplicator.decide(List.of(first, second), to);
+
+        // Then
+        assertEquals(Verdict.NEW, decisions.get(0).verdict());
+        assertEquals(Verdict.DUPLICATE, decisions.get(1).verdict());
+        assertNull(decisions.get(1).to());
+        assertEquals(to.resolve("2015-01-13 03.13.53.jpg"), decisions.get(1).duplicateOf());
+    }
+
+    @Test
+    public void decide_whenDestinationHasTheSameContentUnderAnotherName_thenMediaFileIsADuplicate() throws IOException {
+
+        // Given
+        var existing = file(to, "IMG_0001.jpg", "same content");
+        var mediaFile = file(from, "2015-01-13 03.13.53.jpg", "same content");
+
+        // When
+        var decisions = deduplicator.decide(List.of(mediaFile), to);
+
+        // Then
+        assertEquals(Verdict.DUPLICATE, decisions.get(0).verdict());
+        assertEquals(existing.path(), decisions.get(0).duplicateOf());
+    }
+
+    @Test
+    public void decide_whenDestinationHasAnotherFileWithTheSameName_thenMediaFileGetsAnUnusedName() throws IOException {
+
+        // Given
+        file(to, "2015-01-13 03.13.53.JPG", "some content");
+        file(to, "2015-01-13 03.13.53 (1).jpg", "more content");
+        var mediaFile = file(from, "2015-01-13 03.13.53.jpg", "other content");
+
+        // When
+        var decisions = deduplicator.decide(List.of(mediaFile), to);
+
+        // Then
+        assertEquals(Verdict.COLLISION, decisions.get(0).verdict());
+        assertEquals(to.resolve("2015-01-13 03.13.53 (2).jpg"), decisions.get(0).to());
+    }
+
+    @Test
+    public void decide_whenFilesDifferOnlyAfterTheirFirst64Kilobytes_thenTheyAreNotDuplicates() throws IOException {
+
+        // Given
+        var content = new byte[100_000];
+        file(to, "IMG_0001.jpg", content);
+        content[99_999] = 1;
+        var mediaFile = file(from, "2015-01-13 03.13.53.jpg", content);
+
+        // When
+        var decisions = deduplicator.decide(List.of(mediaFile), to);
+
+        // Then
+        assertEquals(Verdict.NEW, decisions.get(0).verdict());
+    }
+
+    private static FileEntry file(Path directory, String name, String content) throws IOException {
+        return file(directory, name, content.getBytes());
+    }
+
+    private static FileEntry file(Path directory, String name, byte[] content) throws IOException {
+        var path = Files.write(Files.createDirectories(directory).resolve(name), content);
+        return new FileEntry(path, content.length, Files.getLastModifiedTime(path).toInstant());
+    }
+}
@@ -0,0 +1,53 @@
+package com.moelholm.tools.mediaorganizer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Organizes with deduplication by content enabled - to see that the decisions of the {@link Deduplicator} are carried
+ * out (the decisions themselves are covered by {@link DeduplicatorTest}).
+ */
+@TestPropertySource(properties = {
+        "mediaorganizer.dedup.enabled=true",
+})
+public class MediaOrganizerDedupIntegrationTest extends AbstractMediaOrganizerIntegrationTest {
+
+    @Test
+    public void undoFlatMess_whenProcessingMediaFilesWithSameContent_thenMovesOnlyOneOfThem() {
+
+        // Given
+        addFileToDirectoryPath(from, "2015-01-13 03.13.53.jpg", "same content");
+        addFileToDirectoryPath(from, "2015-01-13 03.13.53-1.jpg", "same content");
+
+        // When
+        organizer.undoFlatMess();
+
+        // Then
+        assertPathExistsInDirectory(to, "2015 - January - Misc", "2015-01-13 03.13.53-1.jpg");
+        assertPathNotExistsInDirectory(to, "2015 - January - Misc", "2015-01-13 03.13.53.jpg");
+        assertPathExistsInDirectory(from, "2015-01-13 03.13.53.jpg");
+    }
+
+    @Test
+    public void undoFlatMess_whenDifferentFileWithSameNameExistsAtDestination_thenMovesItUnderNewName() throws IOException {
+
+        // Given
+        addFileToDirectoryPath(to.resolve("2015 - January - Misc"), "2015-01-13 03.13.53.jpg", "some content");
+        addFileToDirectoryPath(from, "2015-01-13 03.13.53.jpg", "other content");
+
+        // When
+        organizer.undoFlatMess();
+
+        // Then
+        assertPathNotExistsInDirectory(from, "2015-01-13 03.13.53.jpg");
+        assertEquals("some content",
+                Files.readString(to.resolve("2015 - January - Misc").resolve("2015-01-13 03.13.53.jpg")));
+        assertEquals("other content",
+                Files.readString(to.resolve("2015 - January - Misc").resolve("2015-01-13 03.13.53 (1).jpg")));
+    }
+}
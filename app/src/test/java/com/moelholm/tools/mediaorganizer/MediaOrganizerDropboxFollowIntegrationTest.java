@@ -0,0 +1,114 @@
+package com.moelholm.tools.mediaorganizer;
+
+import com.moelholm.tools.mediaorganizer.filesystem.FakeDropboxServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Organizes the same Dropbox source folder several times with the run index enabled - so every run after the first
+ * lists only what has changed (talking to a {@link FakeDropboxServer}).
+ */
+@TestPropertySource(properties = {
+        "mediaorganizer.fileSystemType=dropbox",
+        "mediaorganizer.index.enabled=true",
+        "mediaorganizer.index.file=target/testground-index/media-organizer-dropbox.index",
+        "dropbox.accessToken=test-token",
+        "dropbox.throttle.initialBackoff=10ms",
+})
+public class MediaOrganizerDropboxFollowIntegrationTest extends AbstractMediaOrganizerIntegrationTest {
+
+    private static final FakeDropboxServer DROPBOX = FakeDropboxServer.start(Path.of(""));
+
+    @DynamicPropertySource
+    static void dropboxProperties(DynamicPropertyRegistry registry) {
+        registry.add("dropbox.http.apiBaseUrl", DROPBOX::apiBaseUrl);
+        registry.add("dropbox.http.contentBaseUrl", DROPBOX::contentBaseUrl);
+        registry.add("dropbox.http.notifyBaseUrl", DROPBOX::notifyBaseUrl);
+    }
+
+    @AfterEach
+    public void resetDropbox() {
+        DROPBOX.reset();
+    }
+
+    @AfterAll
+    public static void stopDropbox() {
+        DROPBOX.close();
+    }
+
+    @Test
+    public void organizeChanges_whenMediaFileAppears_thenWaitsForItAndMovesOnlyWhatChanged() throws Exception {
+
+        // Given
+        addFileToDirectoryPath(from, "2015-01-13 03.13.53.jpg");
+        organizer.organizeChanges(Duration.ofSeconds(30));
+        organizer.organizeChanges(Duration.ofSeconds(30)); // -(picks up the media files that the first run moved away)-
+        DROPBOX.reset();
+        var appearing = CompletableFuture.runAsync(
+                () -> addFileToDirectoryPath(from, "2015-03-13 06.13.54.jpg"),
+                CompletableFuture.delayedExecutor(200, TimeUnit.MILLISECONDS));
+
+        // When
+        var organized = organizer.organizeChanges(Duration.ofSeconds(30));
+
+        // Then
+        appearing.get();
+        assertTrue(organized);
+        assertPathExistsInDirectory(to, "2015 - January - Misc", "2015-01-13 03.13.53.jpg");
+        assertPathExistsInDirectory(to, "2015 - March - Misc", "2015-03-13 06.13.54.jpg");
+        assertEquals(1, DROPBOX.requestCount("/files/list_folder/longpoll"));
+        assertEquals(0, DROPBOX.requestCount("/files/list_folder"));
+    }
+
+    @Test
+    public void undoFlatMess_whenShardsListIncrementally_thenEveryShardMovesItsOwnMediaFiles() {
+
+        // Given
+        addFileToDirectoryPath(from, "2015-01-13 03.13.53.jpg"); // -(2015 - January - Misc: shard 0 of 2)-
+        addFileToDirectoryPath(from, "2015-03-13 06.13.54.jpg"); // -(2015 - March - Misc: shard 1 of 2)-
+        organizer.undoFlatMess(new AppProperties.Shard(0, 2));
+
+        // When
+        organizer.undoFlatMess(new AppProperties.Shard(1, 2));
+        addFileToDirectoryPath(from, "2015-03-14 06.13.54.jpg");
+        DROPBOX.reset();
+        organizer.undoFlatMess(new AppProperties.Shard(1, 2));
+
+        // Then
+        assertPathExistsInDirectory(to, "2015 - January - Misc", "2015-01-13 03.13.53.jpg");
+        assertPathExistsInDirectory(to, "2015 - March - Misc", "2015-03-13 06.13.54.jpg");
+        assertPathExistsInDirectory(to, "2015 - March - Misc", "2015-03-14 06.13.54.jpg");
+        assertEquals(0, DROPBOX.requestCount("/files/list_folder")); // -(the second run of shard 1 lists only what changed)-
+    }
+
+    @Test
+    public void undoFlatMess_whenAMoveFailed_thenListsTheMediaFileAgainOnTheNextRun() {
+
+        // Given
+        addFileToDirectoryPath(from, "2015-01-13 03.13.53.jpg");
+        addFileToDirectoryPath(from, "2015-03-13 06.13.54.jpg");
+        DROPBOX.failMovesOf("2015-03-13 06.13.54.jpg");
+        organizer.undoFlatMess();
+        assertPathExistsInDirectory(from, "2015-03-13 06.13.54.jpg");
+        DROPBOX.failMovesOf(null);
+
+        // When
+        organizer.undoFlatMess();
+
+        // Then
+        assertPathExistsInDirectory(to, "2015 - January - Misc", "2015-01-13 03.13.53.jpg");
+        assertPathExistsInDirectory(to, "2015 - March - Misc", "2015-03-13 06.13.54.jpg");
+    }
+}
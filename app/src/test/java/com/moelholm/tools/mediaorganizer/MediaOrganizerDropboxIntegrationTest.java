@@ -0,0 +1,121 @@
+package com.moelholm.tools.mediaorganizer;
+
+import com.moelholm.tools.mediaorganizer.filesystem.FakeDropboxServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The Dropbox file system lists, creates folders and moves through the Dropbox API - so the scenarios of
+ * {@link MediaOrganizerIntegrationTest} are run against it too: talking to a {@link FakeDropboxServer} that serves the
+ * working directory.
+ */
+@TestPropertySource(properties = {
+        "mediaorganizer.fileSystemType=dropbox",
+        "dropbox.accessToken=test-token",
+        "dropbox.throttle.initialBackoff=10ms",
+        "mediaorganizer.move.batchSize=2",
+})
+public class MediaOrganizerDropboxIntegrationTest extends MediaOrganizerIntegrationTest {
+
+    private static final FakeDropboxServer DROPBOX = FakeDropboxServer.start(Path.of(""));
+
+    @DynamicPropertySource
+    static void dropboxProperties(DynamicPropertyRegistry registry) {
+        registry.add("dropbox.http.apiBaseUrl", DROPBOX::apiBaseUrl);
+        registry.add("dropbox.http.contentBaseUrl", DROPBOX::contentBaseUrl);
+        registry.add("dropbox.http.notifyBaseUrl", DROPBOX::notifyBaseUrl);
+    }
+
+    @AfterEach
+    public void resetDropbox() {
+        DROPBOX.reset();
+    }
+
+    @AfterAll
+    public static void stopDropbox() {
+        DROPBOX.close();
+    }
+
+    @Test
+    public void undoFlatMess_whenMovingMediaFilesToSeveralFolders_thenCreatesTheFoldersInOneRequest() {
+
+        // Given
+        addFileToDirectoryPath(from, "2015-01-13 03.13.53.jpg");
+        addFileToDirectoryPath(from, "2015-03-13 06.13.54.jpg");
+        addFileToDirectoryPath(from, "2015-05-13 06.13.54.jpg");
+
+        // When
+        organizer.undoFlatMess();
+
+        // Then
+        assertPathExistsInDirectory(to, "2015 - January - Misc", "2015-01-13 03.13.53.jpg");
+        assertPathExistsInDirectory(to, "2015 - March - Misc", "2015-03-13 06.13.54.jpg");
+        assertPathExistsInDirectory(to, "2015 - May - Misc", "2015-05-13 06.13.54.jpg");
+        assertEquals(1, DROPBOX.requestCount("/files/create_folder_batch"));
+    }
+
+    @Test
+    public void undoFlatMess_whenDropboxAsksToSlowDown_thenStillMovesMediaFiles() {
+
+        // Given
+        addFileToDirectoryPath(from, "2015-01-13 03.13.53.jpg");
+        addFileToDirectoryPath(from, "2015-03-13 06.13.54.jpg");
+        DROPBOX.rateLimit(3, Duration.ZERO);
+
+        // When
+        organizer.undoFlatMess();
+
+        // Then
+        assertPathExistsInDirectory(to, "2015 - January - Misc", "2015-01-13 03.13.53.jpg");
+        assertPathExistsInDirectory(to, "2015 - March - Misc", "2015-03-13 06.13.54.jpg");
+        assertTrue(DROPBOX.rateLimitedCount() > 0);
+    }
+
+    @Test
+    public void undoFlatMess_whenDayHasMoreMediaFilesThanBatchSize_thenMovesThemInSeveralBatches() {
+
+        // Given
+        addFileToDirectoryPath(from, "2015-01-13 03.13.53.jpg");
+        addFileToDirectoryPath(from, "2015-01-13 03.13.54.jpg");
+        addFileToDirectoryPath(from, "2015-01-13 03.13.55.jpg");
+        addFileToDirectoryPath(from, "2015-01-13 03.13.56.jpg");
+        addFileToDirectoryPath(from, "2015-01-13 03.13.57.jpg");
+
+        // When
+        organizer.undoFlatMess();
+
+        // Then
+        assertPathExistsInDirectory(to, "2015 - January - Misc", "2015-01-13 03.13.53.jpg");
+        assertPathExistsInDirectory(to, "2015 - January - Misc", "2015-01-13 03.13.57.jpg");
+        assertEquals(3, DROPBOX.requestCount("/files/move_batch_v2"));
+    }
+
+    @Test
+    public void undoFlatMess_whenDropboxRefusesMovesAsTooManyWriteOperations_thenMovesThemAgain() {
+
+        // Given
+        addFileToDirectoryPath(from, "2015-01-13 03.13.53.jpg");
+        addFileToDirectoryPath(from, "2015-03-13 06.13.54.jpg");
+        DROPBOX.refuseMoves(2);
+
+        // When
+        organizer.undoFlatMess();
+
+        // Then
+        assertPathExistsInDirectory(to, "2015 - January - Misc", "2015-01-13 03.13.53.jpg");
+        assertPathExistsInDirectory(to, "2015 - March - Misc", "2015-03-13 06.13.54.jpg");
+        assertPathNotExistsInDirectory(from, "2015-01-13 03.13.53.jpg");
+        assertPathNotExistsInDirectory(from, "2015-03-13 06.13.54.jpg");
+        assertEquals(4, DROPBOX.requestCount("/files/move_batch_v2"));
+    }
+}
@@ -0,0 +1,105 @@
+package com.moelholm.tools.mediaorganizer;
+
+import com.moelholm.tools.mediaorganizer.filesystem.FakeDropboxServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs several organize jobs in one process: two local ones and a Dropbox one (talking to a {@link FakeDropboxServer}
+ * that serves the working directory). How the jobs share the move threads is covered by {@link CappedExecutorTest}.
+ */
+@TestPropertySource(properties = {
+        "mediaorganizer.jobs.parallelism=2",
+        "mediaorganizer.jobs.moveThreads=2",
+        "mediaorganizer.jobs.list[0].name=anna",
+        "mediaorganizer.jobs.list[0].fromDir=target/testground-from/anna",
+        "mediaorganizer.jobs.list[0].toDir=target/testground-to/anna",
+        "mediaorganizer.jobs.list[1].name=bob",
+        "mediaorganizer.jobs.list[1].fromDir=target/testground-from/bob",
+        "mediaorganizer.jobs.list[1].toDir=target/testground-to/bob",
+        "mediaorganizer.jobs.list[1].parallelism=1",
+        "mediaorganizer.jobs.list[2].name=carl",
+        "mediaorganizer.jobs.list[2].fileSystemType=dropbox",
+        "mediaorganizer.jobs.list[2].fromDir=target/testground-from/carl",
+        "mediaorganizer.jobs.list[2].toDir=target/testground-to/carl",
+        "mediaorganizer.jobs.list[2].dropboxAccessToken=carl-token",
+        "dropbox.throttle.initialBackoff=10ms",
+})
+public class MediaOrganizerJobsIntegrationTest extends AbstractMediaOrganizerIntegrationTest {
+
+    private static final FakeDropboxServer DROPBOX = FakeDropboxServer.start(Path.of(""));
+
+    @Autowired
+    private OrganizeJobs organizeJobs;
+
+    @DynamicPropertySource
+    static void dropboxProperties(DynamicPropertyRegistry registry) {
+        registry.add("dropbox.http.apiBaseUrl", DROPBOX::apiBaseUrl);
+        registry.add("dropbox.http.contentBaseUrl", DROPBOX::contentBaseUrl);
+        registry.add("dropbox.http.notifyBaseUrl", DROPBOX::notifyBaseUrl);
+    }
+
+    @AfterEach
+    public void resetDropbox() {
+        DROPBOX.reset();
+    }
+
+    @AfterAll
+    public static void stopDropbox() {
+        DROPBOX.close();
+    }
+
+    @Test
+    public void runAll_whenJobsHaveMediaFiles_thenMovesThemToTheDestinationOfTheirJob() throws IOException {
+
+        // Given
+        for (var job : new String[]{"anna", "bob", "carl"}) {
+            Files.createDirectories(to.resolve(job));
+        }
+        addFileToDirectoryPath(from.resolve("anna"), "2015-01-13 03.13.53.jpg");
+        addFileToDirectoryPath(from.resolve("bob"), "2015-03-13 06.13.54.jpg");
+        addFileToDirectoryPath(from.resolve("bob"), "2015-03-14 06.13.54.jpg");
+        addFileToDirectoryPath(from.resolve("carl"), "2015-05-13 06.13.54.jpg");
+
+        // When
+        organizeJobs.runAll();
+
+        // Then
+        assertPathExistsInDirectory(to, "anna", "2015 - January - Misc", "2015-01-13 03.13.53.jpg");
+        assertPathExistsInDirectory(to, "bob", "2015 - March - Misc", "2015-03-13 06.13.54.jpg");
+        assertPathExistsInDirectory(to, "bob", "2015 - March - Misc", "2015-03-14 06.13.54.jpg");
+        assertPathExistsInDirectory(to, "carl", "2015 - May - Misc", "2015-05-13 06.13.54.jpg");
+        assertTrue(DROPBOX.requestCount() > 0);
+    }
+
+    @Test
+    public void runAll_whenAJobFails_thenRunsTheOtherJobsAndReportsTheFailedOne() throws IOException {
+
+        // Given
+        Files.createDirectories(to.resolve("anna"));
+        Files.createDirectories(to.resolve("carl"));
+        addFileToDirectoryPath(from.resolve("anna"), "2015-01-13 03.13.53.jpg");
+        addFileToDirectoryPath(from.resolve("carl"), "2015-05-13 06.13.54.jpg");
+
+        // When
+        var failure = assertThrows(IllegalStateException.class, () -> organizeJobs.runAll());
+
+        // Then
+        assertEquals("[1] of [3] jobs failed: [bob]", failure.getMessage());
+        assertPathExistsInDirectory(to, "anna", "2015 - January - Misc", "2015-01-13 03.13.53.jpg");
+        assertPathExistsInDirectory(to, "carl", "2015 - May - Misc", "2015-05-13 06.13.54.jpg");
+    }
+}
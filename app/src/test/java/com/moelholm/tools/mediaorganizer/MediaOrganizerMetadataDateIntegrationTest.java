@@ -0,0 +1,32 @@
+package com.moelholm.tools.mediaorganizer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Organizes a media file without a date in its name - with its date read from its metadata (reading the dates of the
+ * various formats is covered by {@link MetadataDateReaderTest}).
+ */
+@TestPropertySource(properties = {
+        "mediaorganizer.metadata.enabled=true",
+})
+public class MediaOrganizerMetadataDateIntegrationTest extends AbstractMediaOrganizerIntegrationTest {
+
+    @Test
+    public void undoFlatMess_whenProcessingJpegWithExifDate_thenMovesItByThatDate() throws IOException {
+
+        // Given
+        var jpeg = MetadataDateReaderTest.jpegWithDateTimeOriginal("2016:03:04 05:06:07");
+        Files.write(from.resolve("IMG_0001.jpg"), jpeg);
+
+        // When
+        organizer.undoFlatMess();
+
+        // Then
+        assertPathExistsInDirectory(to, "2016 - March - Misc", "IMG_0001.jpg");
+        assertPathNotExistsInDirectory(from, "IMG_0001.jpg");
+    }
+}
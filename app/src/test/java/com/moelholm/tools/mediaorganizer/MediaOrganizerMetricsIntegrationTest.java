@@ -0,0 +1,39 @@
+package com.moelholm.tools.mediaorganizer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the run summary file that a run writes when property mediaorganizer.metrics.summaryFile is set.
+ */
+@TestPropertySource(properties = {
+        "mediaorganizer.metrics.summaryFile=target/testground-metrics/summary.json",
+})
+public class MediaOrganizerMetricsIntegrationTest extends AbstractMediaOrganizerIntegrationTest {
+
+    @Test
+    public void undoFlatMess_whenInvoked_thenWritesRunSummary() throws IOException {
+
+        // Given
+        addFileToDirectoryPath(from, "2015-01-01 10.00.00.jpg");
+        addFileToDirectoryPath(from, "notes.txt");
+
+        // When
+        organizer.undoFlatMess();
+
+        // Then
+        var summary = new ObjectMapper().readTree(Path.of("target/testground-metrics/summary.json").toFile());
+        assertEquals(2, summary.get("filesListed").asLong());
+        assertEquals(1, summary.get("filesNotMedia").asLong());
+        assertEquals(1, summary.get("filesMoved").asLong());
+        assertTrue(summary.get("phaseMillis").has("date-parsing"));
+        assertTrue(summary.get("meters").isArray());
+    }
+}
@@ -0,0 +1,110 @@
+package com.moelholm.tools.mediaorganizer;
+
+import com.moelholm.tools.mediaorganizer.filesystem.FileSystem;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Writes a plan of what to move where in one run - and executes it over several runs (the plan file and its
+ * checkpoints are covered by {@link MovePlanTest}).
+ */
+@TestPropertySource(properties = {
+        "mediaorganizer.plan.file=target/testground-plan/media-organizer.plan",
+})
+public class MediaOrganizerPlanIntegrationTest extends AbstractMediaOrganizerIntegrationTest {
+
+    private static final Path PLAN_FILE = Path.of("target/testground-plan/media-organizer.plan");
+
+    @Autowired
+    private AppProperties appProperties;
+
+    @Autowired
+    private FileSystem fileSystem;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    public void undoFlatMess_whenWritingPlan_thenMovesNothing() throws IOException {
+
+        // Given
+        addFileToDirectoryPath(from, "2015-01-13 03.13.53.jpg");
+        addFileToDirectoryPath(from, "2015-03-13 06.13.54.jpg");
+
+        // When
+        organizerWithPlan(PlanMode.WRITE, Duration.ZERO).undoFlatMess();
+
+        // Then
+        assertPathExistsInDirectory(from, "2015-01-13 03.13.53.jpg");
+        assertPathExistsInDirectory(from, "2015-03-13 06.13.54.jpg");
+        var plan = Files.readAllLines(PLAN_FILE);
+        assertEquals(3, plan.size());
+        assertTrue(plan.stream().anyMatch(line -> line.contains("2015 - January - Misc")));
+        assertTrue(plan.stream().anyMatch(line -> line.contains("2015 - March - Misc")));
+    }
+
+    @Test
+    public void undoFlatMess_whenExecutingPlanWithSpentTimeBudget_thenResumesWhereItStopped() {
+
+        // Given
+        addFileToDirectoryPath(from, "2015-01-13 03.13.53.jpg");
+        addFileToDirectoryPath(from, "2015-01-14 03.13.53.jpg");
+        addFileToDirectoryPath(from, "2015-01-15 03.13.53.jpg");
+        organizerWithPlan(PlanMode.WRITE, Duration.ZERO).undoFlatMess();
+        var organizer = organizerWithPlan(PlanMode.EXECUTE, Duration.ofNanos(1));
+
+        // When
+        organizer.undoFlatMess();
+
+        // Then
+        assertEquals(1, filesIn(to.resolve("2015 - January - Misc")));
+
+        // When
+        organizer.undoFlatMess();
+        organizer.undoFlatMess();
+
+        // Then
+        assertEquals(3, filesIn(to.resolve("2015 - January - Misc")));
+        assertEquals(0, filesIn(from));
+    }
+
+    /**
+     * @return an organizer that moves one media file at a time (so that the plan is checkpointed after every file)
+     */
+    private MediaOrganizer organizerWithPlan(PlanMode planMode, Duration timeBudget) {
+        var properties = new AppProperties(
+                appProperties.fileSystemType(),
+                appProperties.source(),
+                appProperties.destination(),
+                appProperties.mediafiles(),
+                new AppProperties.Move(1, appProperties.move().mode(), 1),
+                appProperties.index(),
+                appProperties.metrics(),
+                appProperties.dedup(),
+                appProperties.metadata(),
+                new AppProperties.Plan(planMode, PLAN_FILE.toString(), timeBudget),
+                appProperties.shard(),
+                appProperties.progress(),
+                appProperties.watch(),
+                appProperties.jobs());
+        return new MediaOrganizer(properties, fileSystem, meterRegistry);
+    }
+
+    private static long filesIn(Path directory) {
+        try (var files = Files.list(directory)) {
+            return files.count();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.moelholm.tools.mediaorganizer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Organizes a source folder with subfolders - walked recursively (the walk itself is covered by LocalFileSystemTest).
+ */
+@TestPropertySource(properties = {
+        "local.recursive=true",
+        "mediaorganizer.move.batchSize=1",
+})
+public class MediaOrganizerRecursiveIntegrationTest extends AbstractMediaOrganizerIntegrationTest {
+
+    @Test
+    public void undoFlatMess_whenMediaFilesAreInSubfolders_thenMovesThemToo() {
+
+        // Given
+        from.resolve("camera/100APPLE").toFile().mkdirs();
+        addFileToDirectoryPath(from, "camera/100APPLE/2015-01-13 03.13.53.jpg");
+
+        // When
+        organizer.undoFlatMess();
+
+        // Then
+        assertPathExistsInDirectory(to, "2015 - January - Misc", "2015-01-13 03.13.53.jpg");
+        assertPathNotExistsInDirectory(from, "camera/100APPLE", "2015-01-13 03.13.53.jpg");
+    }
+
+    @Test
+    public void undoFlatMess_whenSubfoldersHaveMediaFilesWithTheSameName_thenMovesOneAndKeepsTheOther() throws IOException {
+
+        // Given
+        addFileToDirectoryPath(from.resolve("camera/100APPLE"), "2015-01-13 03.13.53.jpg", "first camera");
+        addFileToDirectoryPath(from.resolve("camera/101APPLE"), "2015-01-13 03.13.53.jpg", "second camera");
+
+        // When
+        organizer.undoFlatMess();
+
+        // Then
+        var moved = Files.readString(to.resolve("2015 - January - Misc").resolve("2015-01-13 03.13.53.jpg"));
+        var kept = moved.equals("first camera") ? "camera/101APPLE" : "camera/100APPLE";
+        assertPathExistsInDirectory(from, kept, "2015-01-13 03.13.53.jpg");
+    }
+}
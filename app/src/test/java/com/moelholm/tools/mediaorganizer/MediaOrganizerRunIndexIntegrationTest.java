@@ -0,0 +1,69 @@
+package com.moelholm.tools.mediaorganizer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Organizes twice with the run index enabled - to see what the second run leaves out (the index itself is covered by
+ * {@link RunIndexTest}).
+ */
+@TestPropertySource(properties = {
+        "mediaorganizer.index.enabled=true",
+        "mediaorganizer.index.file=target/testground-index/media-organizer.index",
+        "mediaorganizer.metrics.summaryFile=target/testground-index/summary.json",
+})
+public class MediaOrganizerRunIndexIntegrationTest extends AbstractMediaOrganizerIntegrationTest {
+
+    @BeforeEach
+    public void deleteRunIndex() throws IOException {
+        Files.deleteIfExists(Path.of("target/testground-index/media-organizer.index"));
+    }
+
+    @Test
+    public void undoFlatMess_whenRunAgain_thenSkipsTheFilesItProcessed() throws IOException {
+
+        // Given
+        addFileToDirectoryPath(from, "notes.txt");
+        addFileToDirectoryPath(from, "2015-01-13 03.13.53.jpg");
+        addFileToDirectoryPath(to.resolve("2015 - January - Misc"), "2015-01-13 03.13.53.jpg");
+        organizer.undoFlatMess();
+
+        // When
+        organizer.undoFlatMess();
+
+        // Then
+        var summary = new ObjectMapper().readTree(Path.of("target/testground-index/summary.json").toFile());
+        assertEquals(2, summary.get("filesListed").asLong());
+        assertEquals(0, summary.get("filesNotMedia").asLong());
+        assertEquals(0, summary.get("filesSkipped").asLong());
+        assertPathExistsInDirectory(from, "notes.txt");
+        assertPathExistsInDirectory(from, "2015-01-13 03.13.53.jpg");
+    }
+
+    @Test
+    public void undoFlatMess_whenAMoveFailed_thenTriesItAgainOnTheNextRun() throws IOException {
+
+        // Given
+        addFileToDirectoryPath(from, "2015-01-13 03.13.53.jpg");
+        var inTheWay = Files.writeString(to.resolve("2015 - January - Misc"), "not a folder");
+        organizer.undoFlatMess();
+        assertPathExistsInDirectory(from, "2015-01-13 03.13.53.jpg");
+        Files.delete(inTheWay);
+
+        // When
+        organizer.undoFlatMess();
+
+        // Then
+        var summary = new ObjectMapper().readTree(Path.of("target/testground-index/summary.json").toFile());
+        assertEquals(1, summary.get("filesMoved").asLong());
+        assertPathExistsInDirectory(to, "2015 - January - Misc", "2015-01-13 03.13.53.jpg");
+    }
+}
@@ -0,0 +1,52 @@
+package com.moelholm.tools.mediaorganizer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Splits the work between shards: each shard moves the media files of its own destination folders.
+ */
+public class MediaOrganizerShardIntegrationTest extends AbstractMediaOrganizerIntegrationTest {
+
+    @Test
+    public void undoFlatMess_whenRunningOneShard_thenMovesOnlyTheMediaFilesOfItsDestinationFolders() {
+
+        // Given
+        addFileToDirectoryPath(from, "2015-01-13 03.13.53.jpg"); // -(2015 - January - Misc: shard 0 of 2)-
+        addFileToDirectoryPath(from, "2015-03-13 06.13.54.jpg"); // -(2015 - March - Misc: shard 1 of 2)-
+
+        // When
+        organizer.undoFlatMess(new AppProperties.Shard(1, 2));
+
+        // Then
+        assertPathExistsInDirectory(from, "2015-01-13 03.13.53.jpg");
+        assertPathNotExistsInDirectory(to, "2015 - January - Misc", "2015-01-13 03.13.53.jpg");
+        assertPathExistsInDirectory(to, "2015 - March - Misc", "2015-03-13 06.13.54.jpg");
+    }
+
+    @Test
+    public void undoFlatMess_whenRunningAllShardsAtTheSameTime_thenMovesMediaFilesAsOneRunWould() {
+
+        // Given
+        addFileToDirectoryPath(from, "2015-01-13 03.13.53.jpg");
+        addFileToDirectoryPath(from, "2015-03-13 06.13.54.jpg");
+        for (int i = 0; i < 13; i++) {
+            addFileToDirectoryPath(from, String.format("2015-10-11 15.13.%02d.jpg", i));
+        }
+
+        // When
+        CompletableFuture.allOf(
+                CompletableFuture.runAsync(() -> organizer.undoFlatMess(new AppProperties.Shard(0, 2))),
+                CompletableFuture.runAsync(() -> organizer.undoFlatMess(new AppProperties.Shard(1, 2)))
+        ).join();
+
+        // Then
+        assertPathExistsInDirectory(to, "2015 - January - Misc", "2015-01-13 03.13.53.jpg");
+        assertPathExistsInDirectory(to, "2015 - March - Misc", "2015-03-13 06.13.54.jpg");
+        for (int i = 0; i < 13; i++) {
+            assertPathExistsInDirectory(to, "2015 - October - 11 - This Must Be An Event",
+                    String.format("2015-10-11 15.13.%02d.jpg", i));
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.moelholm.tools.mediaorganizer;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Streaming mode lists and moves the media files batch by batch instead of all at once - so the scenarios of
+ * {@link MediaOrganizerIntegrationTest} are run in that mode too. Batches of 2 media files make the day folders of the
+ * scenarios span several batches.
+ */
+@TestPropertySource(properties = {
+        "mediaorganizer.move.mode=streaming",
+        "mediaorganizer.move.batchSize=2",
+})
+public class MediaOrganizerStreamingIntegrationTest extends MediaOrganizerIntegrationTest {
+}
@@ -0,0 +1,119 @@
+package com.moelholm.tools.mediaorganizer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.TestPropertySource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Watches the source folder - and checks that media files that appear in it are organized once they have settled.
+ */
+@TestPropertySource(properties = {
+        "mediaorganizer.watch.settleTime=200ms",
+        "mediaorganizer.watch.quietPeriod=100ms",
+})
+public class MediaOrganizerWatchIntegrationTest extends AbstractMediaOrganizerIntegrationTest {
+
+    private ExecutorService executor;
+
+    private Future<?> watching;
+
+    @BeforeEach
+    public void startWatching() {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    public void stopWatching() throws Exception {
+        if (watching != null) {
+            watching.cancel(true);
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void watch_whenMediaFilesAppear_thenMovesThem() {
+
+        // Given
+        addFileToDirectoryPath(from, "2015-01-13 03.13.53.jpg");
+        watching = executor.submit(organizer::watch);
+        awaitPath(to.resolve("2015 - January - Misc").resolve("2015-01-13 03.13.53.jpg"));
+
+        // When
+        addFileToDirectoryPath(from, "2015-03-13 06.13.54.jpg");
+
+        // Then
+        awaitPath(to.resolve("2015 - March - Misc").resolve("2015-03-13 06.13.54.jpg"));
+        assertPathNotExistsInDirectory(from, "2015-03-13 06.13.54.jpg");
+    }
+
+    @Test
+    public void watch_whenEnoughMediaFilesOfADayAppear_thenTurnsTheDayIntoAnEvent() {
+
+        // Given
+        for (int i = 0; i < 3; i++) {
+            addFileToDirectoryPath(from, String.format("2015-10-11 15.13.%02d.jpg", i));
+        }
+        watching = executor.submit(organizer::watch);
+        awaitPath(to.resolve("2015 - October - Misc").resolve("2015-10-11 15.13.02.jpg"));
+
+        // When
+        for (int i = 3; i < 13; i++) {
+            addFileToDirectoryPath(from, String.format("2015-10-11 15.13.%02d.jpg", i));
+        }
+
+        // Then
+        for (int i = 0; i < 13; i++) {
+            awaitPath(to.resolve("2015 - October - 11 - This Must Be An Event")
+                    .resolve(String.format("2015-10-11 15.13.%02d.jpg", i)));
+        }
+        assertPathNotExistsInDirectory(to, "2015 - October - Misc", "2015-10-11 15.13.00.jpg");
+    }
+
+    @Test
+    public void watch_whenMiscFolderHasOtherFilesOfTheDay_thenCountsOnlyItsMediaFiles() {
+
+        // Given
+        var miscDirectoryPath = to.resolve("2015 - October - Misc");
+        addFileToDirectoryPath(from, "2015-10-11 15.13.00.jpg");
+        watching = executor.submit(organizer::watch);
+        awaitPath(miscDirectoryPath.resolve("2015-10-11 15.13.00.jpg"));
+        for (int i = 0; i < 10; i++) {
+            addFileToDirectoryPath(miscDirectoryPath, String.format("2015-10-11 15.14.%02d.txt", i));
+        }
+        addFileToDirectoryPath(miscDirectoryPath, "2015-10-11 15.15.00.jpg.0123456789abcdef.partial");
+        addFileToDirectoryPath(miscDirectoryPath, "2015-10-11 15.15.00.jpg.0123456789abcdef.partial.source");
+
+        // When
+        addFileToDirectoryPath(from, "2015-10-11 15.13.01.jpg");
+
+        // Then
+        awaitPath(miscDirectoryPath.resolve("2015-10-11 15.13.01.jpg"));
+        assertPathNotExistsInDirectory(to, "2015 - October - 11 - This Must Be An Event");
+        assertPathExistsInDirectory(miscDirectoryPath, "2015-10-11 15.14.00.txt");
+        assertPathExistsInDirectory(miscDirectoryPath, "2015-10-11 15.15.00.jpg.0123456789abcdef.partial");
+    }
+
+    private static void awaitPath(Path path) {
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!Files.exists(path) && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        assertTrue(Files.exists(path), String.format("[%s] does not exist", path));
+    }
+}
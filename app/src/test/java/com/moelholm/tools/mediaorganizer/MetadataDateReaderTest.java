@@ -0,0 +1,221 @@
+package com.moelholm.tools.mediaorganizer;
+
+import com.moelholm.tools.mediaorganizer.filesystem.FileEntry;
+import com.moelholm.tools.mediaorganizer.filesystem.LocalFileSystem;
+import com.moelholm.tools.mediaorganizer.filesystem.LocalFileSystem.LocalFileSystemProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+public class MetadataDateReaderTest {
+
+    private static final String DATE_TIME_ORIGINAL = "2018:06:07 08:09:10";
+
+    @TempDir
+    Path folder;
+
+    private MetadataDateReader metadataDateReader; // S.U.T.
+
+    @BeforeEach
+    public void before() {
+        metadataDateReader = new MetadataDateReader(
+                new LocalFileSystem(new LocalFileSystemProperties(false, 1), new SimpleMeterRegistry()), 1, 100);
+    }
+
+    @AfterEach
+    public void after() {
+        metadataDateReader.close();
+    }
+
+    @Test
+    public void readDate_whenJpegHasExifDate_thenReadsItsDateTimeOriginal() throws IOException {
+
+        // Given
+        var jpeg = file("IMG_0001.jpg", jpegWithDateTimeOriginal("2016:03:04 05:06:07"));
+
+        // When
+        var date = metadataDateReader.readDate(jpeg);
+
+        // Then
+        assertEquals(LocalDate.of(2016, 3, 4), date);
+    }
+
+    @Test
+    public void readDate_whenJpegHasNoExif_thenGivesUp() throws IOException {
+
+        // Given
+        var jpeg = file("IMG_0002.jpg", new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xD9});
+
+        // When
+        var date = metadataDateReader.readDate(jpeg);
+
+        // Then
+        assertNull(date);
+    }
+
+    @Test
+    public void readDate_whenMovHasItsMovieHeaderAfterTheMediaData_thenReadsItsCreationTime() throws IOException {
+
+        // Given
+        var creationTime = LocalDateTime.of(2017, 8, 9, 12, 0).atZone(ZoneId.systemDefault()).toEpochSecond();
+        var mov = file("MVI_0001.mov", movWithCreationTimeAfterMediaData(creationTime));
+
+        // When
+        var date = metadataDateReader.readDate(mov);
+
+        // Then
+        assertEquals(LocalDate.of(2017, 8, 9), date);
+    }
+
+    @Test
+    public void readDate_whenHeicHasExifItem_thenReadsItsDateTimeOriginal() throws IOException {
+
+        // Given
+        var heic = file("IMG_0001.HEIC", heic(infe(2, "Exif"), ByteBuffer.allocate(0)));
+
+        // When
+        var date = metadataDateReader.readDate(heic);
+
+        // Then
+        assertEquals(LocalDate.of(2018, 6, 7), date);
+    }
+
+    @Test
+    public void readDate_whenHeicHasItemInfoEntryOfSizeZero_thenGivesUp() throws IOException {
+
+        // Given
+        var infeOfSizeZero = infe(2, "mime").putInt(0, 0); // -(size 0: the box extends to the end of its parent)-
+        var heic = file("IMG_0002.HEIC", heic(infeOfSizeZero, ByteBuffer.allocate(0)));
+
+        // When
+        var date = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> metadataDateReader.readDate(heic));
+
+        // Then
+        assertNull(date);
+    }
+
+    @Test
+    public void readDate_whenHeicHasBoxLargerThan4Gigabytes_thenSkipsAllOfIt() throws IOException {
+
+        // Given
+        var largeBox = ByteBuffer.allocate(16);
+        largeBox.putInt(1).put("free".getBytes(StandardCharsets.US_ASCII)).putLong((1L << 32) + 16); // -(not 16)-
+        var heic = file("IMG_0003.HEIC", heic(infe(2, "Exif"), largeBox));
+
+        // When
+        var date = metadataDateReader.readDate(heic);
+
+        // Then
+        assertNull(date);
+    }
+
+    private FileEntry file(String name, byte[] content) throws IOException {
+        var path = Files.write(folder.resolve(name), content);
+        return new FileEntry(path, content.length, Files.getLastModifiedTime(path).toInstant());
+    }
+
+    /**
+     * @return a JPEG with just an APP1 segment - holding an EXIF IFD with a DateTimeOriginal
+     */
+    static byte[] jpegWithDateTimeOriginal(String dateTimeOriginal) {
+        var tiff = ByteBuffer.allocate(64);
+        tiff.put("MM".getBytes(StandardCharsets.US_ASCII)).putShort((short) 42).putInt(8);
+        // -(IFD0: a pointer to the EXIF IFD)-
+        tiff.putShort((short) 1).putShort((short) 0x8769).putShort((short) 4).putInt(1).putInt(26).putInt(0);
+        // -(EXIF IFD: the DateTimeOriginal - stored after the IFD)-
+        tiff.putShort((short) 1).putShort((short) 0x9003).putShort((short) 2).putInt(20).putInt(44).putInt(0);
+        tiff.put(dateTimeOriginal.getBytes(StandardCharsets.US_ASCII)).put((byte) 0);
+
+        var app1Payload = 6 + tiff.position();
+        var jpeg = ByteBuffer.allocate(2 + 4 + app1Payload + 2);
+        jpeg.putShort((short) 0xFFD8);
+        jpeg.putShort((short) 0xFFE1).putShort((short) (2 + app1Payload));
+        jpeg.put("Exif\0\0".getBytes(StandardCharsets.US_ASCII)).put(tiff.array(), 0, tiff.position());
+        jpeg.putShort((short) 0xFFD9);
+        return jpeg.array();
+    }
+
+    /**
+     * @return a QuickTime movie with the moov box placed after a media data box that is larger than the header that is
+     * read up front (as is common for videos straight from a camera)
+     */
+    private static byte[] movWithCreationTimeAfterMediaData(long epochSecond) {
+        var mediaDataSize = 100 * 1024;
+        var mvhdSize = 8 + 4 + 4 + 4 + 4 + 4;
+        var mov = ByteBuffer.allocate(16 + mediaDataSize + 8 + mvhdSize);
+        mov.putInt(16).put("ftyp".getBytes(StandardCharsets.US_ASCII))
+                .put("qt  ".getBytes(StandardCharsets.US_ASCII)).putInt(0);
+        mov.putInt(mediaDataSize).put("mdat".getBytes(StandardCharsets.US_ASCII)).position(16 + mediaDataSize);
+        mov.putInt(8 + mvhdSize).put("moov".getBytes(StandardCharsets.US_ASCII));
+        mov.putInt(mvhdSize).put("mvhd".getBytes(StandardCharsets.US_ASCII)).putInt(0)
+                .putInt((int) (epochSecond + 2_082_844_800L)).putInt(0).putInt(600).putInt(0);
+        return mov.array();
+    }
+
+    /**
+     * @param infe       the item info entry of item 1 (the EXIF data)
+     * @param beforeMeta a box to put between the ftyp box and the meta box
+     * @return a HEIC file with a meta box (iinf and iloc) that locates item 1 - stored right after the meta box
+     */
+    private static byte[] heic(ByteBuffer infe, ByteBuffer beforeMeta) {
+        var iinfSize = 8 + 4 + 2 + infe.capacity();
+        var ilocSize = 8 + 4 + 2 + 2 + 2 + 2 + 2 + 4 + 4;
+        var metaSize = 8 + 4 + iinfSize + ilocSize;
+        var exif = exifItem();
+        var exifOffset = 16 + beforeMeta.capacity() + metaSize;
+        var heic = ByteBuffer.allocate(exifOffset + exif.length);
+        heic.putInt(16).put("ftyp".getBytes(StandardCharsets.US_ASCII))
+                .put("heic".getBytes(StandardCharsets.US_ASCII)).putInt(0);
+        heic.put(beforeMeta.array());
+        heic.putInt(metaSize).put("meta".getBytes(StandardCharsets.US_ASCII)).putInt(0);
+        heic.putInt(iinfSize).put("iinf".getBytes(StandardCharsets.US_ASCII)).putInt(0).putShort((short) 1);
+        heic.put(infe.array());
+        heic.putInt(ilocSize).put("iloc".getBytes(StandardCharsets.US_ASCII)).putInt(0)
+                .put((byte) 0x44).put((byte) 0) // -(4 byte offsets and lengths - no base offset)-
+                .putShort((short) 1) // -(item count)-
+                .putShort((short) 1).putShort((short) 0).putShort((short) 1) // -(item 1: data reference 0 - 1 extent)-
+                .putInt(exifOffset).putInt(exif.length);
+        heic.put(exif);
+        return heic.array();
+    }
+
+    private static ByteBuffer infe(int version, String itemType) {
+        var infe = ByteBuffer.allocate(8 + 4 + 2 + 2 + 4 + 1);
+        infe.putInt(infe.capacity()).put("infe".getBytes(StandardCharsets.US_ASCII))
+                .putInt(version << 24).putShort((short) 1).putShort((short) 0)
+                .put(itemType.getBytes(StandardCharsets.US_ASCII)).put((byte) 0);
+        return infe;
+    }
+
+    /**
+     * @return an EXIF item: the offset of the TIFF header (0) - followed by a TIFF structure with an EXIF IFD holding a
+     * DateTimeOriginal
+     */
+    private static byte[] exifItem() {
+        var exif = ByteBuffer.allocate(4 + 64);
+        exif.putInt(0);
+        exif.put("MM".getBytes(StandardCharsets.US_ASCII)).putShort((short) 42).putInt(8);
+        // -(IFD0: a pointer to the EXIF IFD)-
+        exif.putShort((short) 1).putShort((short) 0x8769).putShort((short) 4).putInt(1).putInt(26).putInt(0);
+        // -(EXIF IFD: the DateTimeOriginal - stored after the IFD)-
+        exif.putShort((short) 1).putShort((short) 0x9003).putShort((short) 2).putInt(20).putInt(44).putInt(0);
+        exif.put(DATE_TIME_ORIGINAL.getBytes(StandardCharsets.US_ASCII)).put((byte) 0);
+        return exif.array();
+    }
+}
@@ -0,0 +1,138 @@
+package com.moelholm.tools.mediaorganizer;
+
+import com.moelholm.tools.mediaorganizer.filesystem.FileEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class MovePlanTest {
+
+    private static final Path SOURCE = Path.of("/camera uploads");
+
+    private static final FileEntry JANUARY =
+            new FileEntry(SOURCE.resolve("2015-01-13 03.13.53.jpg"), 42, Instant.parse("2015-01-13T03:13:53Z"), "hash");
+
+    private static final FileEntry MARCH =
+            new FileEntry(SOURCE.resolve("2015-03-13 06.13.54.jpg"), 43, null);
+
+    @TempDir
+    Path folder;
+
+    @Test
+    public void finish_whenMediaFilesWereAdded_thenWritesThemWithTheDestinationFolderOfTheirDay() throws IOException {
+
+        // Given
+        var plan = new MovePlan(folder.resolve("plans/media-organizer.plan"), null);
+        var destinationDirectories = Map.of(
+                "2015 - January - 13 - 1", Path.of("/media/2015 - January - Misc"),
+                "2015 - March - 13 - 1", Path.of("/media/2015 - March - Misc"));
+
+        // When
+        try (var writer = plan.newWriter()) {
+            writer.add(JANUARY, "2015 - January - 13 - 1");
+            writer.add(MARCH, "2015 - March - 13 - 1");
+            writer.finish(new MovePlan.Header(SOURCE.toString(), "cursor", null), destinationDirectories::get);
+        }
+
+        // Then
+        assertEquals(new MovePlan.Header(SOURCE.toString(), "cursor", null), plan.header());
+        List<MovePlan.Entry> entries;
+        try (var planEntries = plan.entries()) {
+            entries = planEntries.toList();
+        }
+        assertEquals(2, entries.size());
+        assertEquals(JANUARY, entries.get(0).fileEntry());
+        assertEquals("/media/2015 - January - Misc", entries.get(0).to());
+        assertEquals(MARCH, entries.get(1).fileEntry());
+        assertEquals("/media/2015 - March - Misc", entries.get(1).to());
+        try (var files = Files.list(plan.file().getParent())) {
+            assertEquals(1, files.count()); // -(no spool or temporary file is left behind)-
+        }
+    }
+
+    @Test
+    public void entriesDone_whenCheckpointed_thenTellsHowFarThePlanWasExecuted() throws IOException {
+
+        // Given
+        var plan = planOf(folder.resolve("media-organizer.plan"), JANUARY, MARCH);
+
+        // When
+        plan.checkpoint(1, 1);
+
+        // Then
+        assertEquals(1, new MovePlan(plan.file(), null).entriesDone());
+        assertEquals(1, new MovePlan(plan.file(), null).failedMoves());
+    }
+
+    @Test
+    public void entriesDone_whenPlanWasReplaced_thenStartsOver() throws IOException {
+
+        // Given
+        var plan = planOf(folder.resolve("media-organizer.plan"), JANUARY, MARCH);
+        plan.checkpoint(2, 0);
+
+        // When
+        plan = planOf(plan.file(), MARCH);
+
+        // Then
+        assertEquals(0, plan.entriesDone());
+        assertEquals(0, plan.failedMoves());
+    }
+
+    @Test
+    public void entriesDone_whenShardsCheckpoint_thenEveryShardHasItsOwnCheckpoint() throws IOException {
+
+        // Given
+        var planFile = planOf(folder.resolve("media-organizer.plan"), JANUARY, MARCH).file();
+        var shard0 = new MovePlan(planFile, new AppProperties.Shard(0, 2));
+        var shard1 = new MovePlan(planFile, new AppProperties.Shard(1, 2));
+
+        // When
+        shard0.checkpoint(2, 0);
+
+        // Then
+        assertEquals(2, shard0.entriesDone());
+        assertEquals(0, shard1.entriesDone());
+        assertEquals(0, new MovePlan(planFile, null).entriesDone());
+    }
+
+    @Test
+    public void close_whenWriterWasNotFinished_thenKeepsThePreviousPlan() throws IOException {
+
+        // Given
+        var plan = planOf(folder.resolve("media-organizer.plan"), JANUARY);
+        plan.checkpoint(1, 0);
+
+        // When
+        try (var writer = plan.newWriter()) {
+            writer.add(MARCH, "2015 - March - 13 - 1");
+        }
+
+        // Then
+        assertEquals(1, plan.entriesDone());
+        try (var entries = plan.entries()) {
+            assertEquals(List.of(JANUARY), entries.map(MovePlan.Entry::fileEntry).toList());
+        }
+        assertFalse(Files.exists(folder.resolve("media-organizer.plan.spool")));
+    }
+
+    private static MovePlan planOf(Path planFile, FileEntry... mediaFiles) throws IOException {
+        var plan = new MovePlan(planFile, null);
+        try (var writer = plan.newWriter()) {
+            for (var mediaFile : mediaFiles) {
+                writer.add(mediaFile, "day");
+            }
+            writer.finish(new MovePlan.Header(SOURCE.toString(), null, null), day -> Path.of("/media", day));
+        }
+        return plan;
+    }
+}
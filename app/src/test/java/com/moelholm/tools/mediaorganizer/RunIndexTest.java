@@ -0,0 +1,177 @@
+package com.moelholm.tools.mediaorganizer;
+
+import com.moelholm.tools.mediaorganizer.filesystem.FileEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RunIndexTest {
+
+    private static final Path SOURCE = Path.of("/camera uploads");
+
+    private static final FileEntry FILE =
+            new FileEntry(SOURCE.resolve("notes.txt"), 42, Instant.parse("2015-01-13T03:13:53Z"));
+
+    @TempDir
+    Path folder;
+
+    @Test
+    public void isProcessed_whenRecordedInAnEarlierRun_thenIsTrue() {
+
+        // Given
+        var indexFile = folder.resolve("media-organizer.index");
+        run(indexFile, runIndex -> runIndex.recordProcessed(FILE));
+
+        // When
+        var runIndex = open(indexFile);
+
+        // Then
+        assertTrue(runIndex.isProcessed(FILE));
+    }
+
+    @Test
+    public void isProcessed_whenFileChangedSinceItWasRecorded_thenIsFalse() {
+
+        // Given
+        var indexFile = folder.resolve("media-organizer.index");
+        run(indexFile, runIndex -> runIndex.recordProcessed(FILE));
+
+        // When
+        var runIndex = open(indexFile);
+
+        // Then
+        assertFalse(runIndex.isProcessed(new FileEntry(FILE.path(), 43, FILE.lastModified())));
+        assertFalse(runIndex.isProcessed(new FileEntry(FILE.path(), FILE.size(), Instant.now())));
+    }
+
+    @Test
+    public void isProcessed_whenForgottenInAnEarlierRun_thenIsFalse() {
+
+        // Given
+        var indexFile = folder.resolve("media-organizer.index");
+        run(indexFile, runIndex -> runIndex.recordProcessed(FILE));
+        run(indexFile, runIndex -> runIndex.forget(FILE.path()));
+
+        // When
+        var runIndex = open(indexFile);
+
+        // Then
+        assertFalse(runIndex.isProcessed(FILE));
+    }
+
+    @Test
+    public void cursor_whenSavedByShards_thenEveryShardGetsItsOwn() {
+
+        // Given
+        var indexFile = folder.resolve("media-organizer.index");
+        run(indexFile, runIndex -> {
+            runIndex.saveCursor(SOURCE, null, "cursor");
+            runIndex.saveCursor(SOURCE, new AppProperties.Shard(0, 2), "cursor-0");
+            runIndex.saveCursor(SOURCE, new AppProperties.Shard(1, 2), "cursor-1");
+        });
+
+        // When
+        var runIndex = open(indexFile);
+
+        // Then
+        assertEquals("cursor", runIndex.cursor(SOURCE, null));
+        assertEquals("cursor", runIndex.cursor(SOURCE, new AppProperties.Shard(0, 1)));
+        assertEquals("cursor-0", runIndex.cursor(SOURCE, new AppProperties.Shard(0, 2)));
+        assertEquals("cursor-1", runIndex.cursor(SOURCE, new AppProperties.Shard(1, 2)));
+        assertNull(runIndex.cursor(SOURCE.resolve("other"), null));
+    }
+
+    @Test
+    public void open_whenIndexHasGrownMuchLargerThanItsLiveRecords_thenCompactsIt() throws IOException {
+
+        // Given
+        var indexFile = folder.resolve("media-organizer.index");
+        run(indexFile, runIndex -> {
+            for (int i = 0; i < 500; i++) {
+                runIndex.recordProcessed(new FileEntry(FILE.path(), i, FILE.lastModified()));
+            }
+            runIndex.saveCursor(SOURCE, null, "cursor");
+        });
+        var sizeBefore = Files.size(indexFile);
+
+        // When
+        var runIndex = open(indexFile);
+
+        // Then
+        assertTrue(Files.size(indexFile) < sizeBefore);
+        assertEquals(2, Files.readAllLines(indexFile).size());
+        assertTrue(runIndex.isProcessed(new FileEntry(FILE.path(), 499, FILE.lastModified())));
+        assertEquals("cursor", runIndex.cursor(SOURCE, null));
+    }
+
+    @Test
+    public void open_whenReopened_thenKeepsWhatItRecordedWithoutReadingTheFileAgain() throws IOException {
+
+        // Given
+        var indexFile = folder.resolve("media-organizer.index");
+        var runIndex = new RunIndex(indexFile);
+        run(runIndex, () -> runIndex.recordProcessed(FILE));
+        Files.writeString(indexFile, "R\t" + FILE.path() + "\n", StandardOpenOption.APPEND); // -(by someone else)-
+
+        // When
+        var other = new FileEntry(SOURCE.resolve("story.pdf"), 1, FILE.lastModified());
+        run(runIndex, () -> runIndex.recordProcessed(other));
+
+        // Then
+        assertTrue(runIndex.isProcessed(FILE));
+        assertTrue(runIndex.isProcessed(other));
+        assertTrue(open(indexFile).isProcessed(other));
+    }
+
+    @Test
+    public void recordProcessed_whenThereIsNoIndexFile_thenRemembersNothing() {
+
+        // Given
+        var runIndex = new RunIndex(null);
+        runIndex.open();
+
+        // When
+        runIndex.recordProcessed(FILE);
+        runIndex.saveCursor(SOURCE, null, "cursor");
+        runIndex.close();
+
+        // Then
+        assertFalse(runIndex.isProcessed(FILE));
+        assertNull(runIndex.cursor(SOURCE, null));
+    }
+
+    private static RunIndex open(Path indexFile) {
+        var runIndex = new RunIndex(indexFile);
+        runIndex.open();
+        return runIndex;
+    }
+
+    private static void run(RunIndex runIndex, Runnable run) {
+        runIndex.open();
+        try {
+            run.run();
+        } finally {
+            runIndex.close();
+        }
+    }
+
+    private static void run(Path indexFile, Consumer<RunIndex> run) {
+        var runIndex = open(indexFile);
+        try {
+            run.accept(runIndex);
+        } finally {
+            runIndex.close();
+        }
+    }
+}
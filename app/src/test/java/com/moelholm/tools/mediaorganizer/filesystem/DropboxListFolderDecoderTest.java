@@ -0,0 +1,99 @@
+package com.moelholm.tools.mediaorganizer.filesystem;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.moelholm.tools.mediaorganizer.filesystem.DropboxFileSystem.DropboxListFolderResponse;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DropboxListFolderDecoderTest {
+
+    @Test
+    public void decode_whenPageHasFilesFoldersAndDeletedEntries_thenKeepsOnlyTheFiles() throws IOException {
+
+        // Given
+        var body = """
+                {
+                  "entries": [
+                    {".tag": "folder", "name": "2015 - January - Misc", "path_lower": "/2015 - january - misc"},
+                    {
+                      ".tag": "file",
+                      "name": "2015-01-13 03.13.53.jpg",
+                      "path_lower": "/camera uploads/2015-01-13 03.13.53.jpg",
+                      "id": "id:a4ayc_80_OEAAAAAAAAAXw",
+                      "client_modified": "2015-01-13T03:13:53Z",
+                      "server_modified": "2015-01-14T10:00:00Z",
+                      "size": 7212,
+                      "sharing_info": {"read_only": false, "modified_by": "dbid:AAH4f99T0taONIb"},
+                      "property_groups": [{"template_id": "ptid:1a5n2i6d3OYEAAAAAAAAAYa", "fields": []}],
+                      "content_hash": "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855"
+                    },
+                    {".tag": "deleted", "name": "old.jpg", "path_lower": "/camera uploads/old.jpg"}
+                  ],
+                  "cursor": "ZtkX9_EHj3x7PMkVuFIhwKYXEpwpLwyxp9vMKomUhllil9q7eWiAu",
+                  "has_more": true
+                }
+                """;
+
+        // When
+        var page = decode(body);
+
+        // Then
+        assertEquals(List.of(new FileEntry(
+                Path.of("/camera uploads/2015-01-13 03.13.53.jpg"),
+                7212,
+                Instant.parse("2015-01-13T03:13:53Z"),
+                "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855")), page.fileEntries());
+        assertTrue(page.more());
+        assertEquals("ZtkX9_EHj3x7PMkVuFIhwKYXEpwpLwyxp9vMKomUhllil9q7eWiAu", page.cursor());
+    }
+
+    @Test
+    public void decode_whenTimestampsAreNotInTheUsualForm_thenStillReadsThem() throws IOException {
+
+        // Given
+        var body = """
+                {"entries": [
+                  {".tag": "file", "path_lower": "/a.jpg", "client_modified": "2016-02-29T23:59:59Z"},
+                  {".tag": "file", "path_lower": "/b.jpg", "client_modified": "2016-02-29T23:59:59.250Z"},
+                  {".tag": "file", "path_lower": "/c.jpg", "client_modified": null}
+                ], "cursor": "c", "has_more": false}
+                """;
+
+        // When
+        var page = decode(body);
+
+        // Then
+        assertEquals(Instant.parse("2016-02-29T23:59:59Z"), page.fileEntries().get(0).lastModified());
+        assertEquals(Instant.parse("2016-02-29T23:59:59.250Z"), page.fileEntries().get(1).lastModified());
+        assertNull(page.fileEntries().get(2).lastModified());
+        assertFalse(page.more());
+    }
+
+    @Test
+    public void decode_whenEntriesIsNotAnArray_thenFails() {
+
+        // Given
+        var body = """
+                {"entries": {".tag": "file", "path_lower": "/a.jpg"}, "cursor": "c", "has_more": false}
+                """;
+
+        // When / Then
+        assertThrows(JsonParseException.class, () -> decode(body));
+    }
+
+    private static DropboxListFolderResponse decode(String body) throws IOException {
+        return DropboxListFolderDecoder.decode(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,106 @@
+package com.moelholm.tools.mediaorganizer.filesystem;
+
+import com.moelholm.tools.mediaorganizer.filesystem.DropboxFileSystem.DropboxListFolderResponse;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DropboxListFolderSpliteratorTest {
+
+    private final List<Runnable> prefetches = new ArrayList<>();
+
+    private final List<String> fetchedCursors = new ArrayList<>();
+
+    private final AtomicReference<String> handedOnCursor = new AtomicReference<>();
+
+    @Test
+    public void stream_whenAllPagesAreConsumed_thenHandsOnTheCursorOfTheLastPage() {
+
+        // Given
+        var pages = spliterator(page("cursor-1", true, "a.jpg"), cursor -> page("cursor-2", false, "b.jpg"));
+
+        // When
+        List<String> fileNames;
+        try (var files = StreamSupport.stream(pages, false).onClose(pages::cancel)) {
+            fileNames = files.peek(file -> runPrefetches())
+                    .map(file -> file.path().getFileName().toString())
+                    .toList();
+        }
+
+        // Then
+        assertEquals(List.of("a.jpg", "b.jpg"), fileNames);
+        assertEquals(List.of("cursor-1"), fetchedCursors);
+        assertEquals("cursor-2", handedOnCursor.get());
+    }
+
+    @Test
+    public void stream_whenClosedBeforeThePrefetchedPageIsFetched_thenDoesNotFetchIt() {
+
+        // Given
+        var pages = spliterator(page("cursor-1", true, "a.jpg"), cursor -> page("cursor-2", false, "b.jpg"));
+
+        // When
+        try (var files = StreamSupport.stream(pages, false).onClose(pages::cancel)) {
+            files.findFirst();
+        }
+        runPrefetches();
+
+        // Then
+        assertTrue(fetchedCursors.isEmpty());
+        assertNull(handedOnCursor.get());
+    }
+
+    @Test
+    public void tryAdvance_whenCancelledPartway_thenHandsOnNoCursor() {
+
+        // Given
+        var pages = spliterator(page("cursor-1", false, "a.jpg", "b.jpg"), cursor -> null);
+        pages.tryAdvance(file -> {
+        });
+
+        // When
+        pages.cancel();
+        pages.forEachRemaining(file -> {
+        });
+
+        // Then
+        assertNull(handedOnCursor.get());
+    }
+
+    private DropboxListFolderSpliterator spliterator(
+            DropboxListFolderResponse firstPage,
+            Function<String, DropboxListFolderResponse> nextPages) {
+        return new DropboxListFolderSpliterator(
+                firstPage,
+                cursor -> {
+                    fetchedCursors.add(cursor);
+                    return nextPages.apply(cursor);
+                },
+                prefetches::add,
+                handedOnCursor::set);
+    }
+
+    private void runPrefetches() {
+        var queued = List.copyOf(prefetches);
+        prefetches.clear();
+        queued.forEach(Runnable::run);
+    }
+
+    private static DropboxListFolderResponse page(String cursor, boolean more, String... fileNames) {
+        var fileEntries = new ArrayList<FileEntry>();
+        for (var fileName : fileNames) {
+            fileEntries.add(new FileEntry(Path.of("/camera uploads", fileName), 1, Instant.EPOCH));
+        }
+        return new DropboxListFolderResponse(fileEntries, more, cursor);
+    }
+}
@@ -0,0 +1,635 @@
+package com.moelholm.tools.mediaorganizer.filesystem;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * An in-process stand-in for the Dropbox API - serving the files of a local folder (so the same files can be organized
+ * with the {@link LocalFileSystem} and - through this server - with the {@link DropboxFileSystem}).
+ * <p>
+ * Supports what the {@link DropboxFileSystem} uses: list_folder (with paging and the cursors of incremental listings),
+ * list_folder/longpoll, get_metadata, create_folder_batch, move, move_batch_v2 and download (with ranges). Paths are resolved case insensitively - as Dropbox does.
+ * Every request can be delayed (to simulate the latency of the real thing), and every n-th request can be answered
+ * with HTTP 429 (to simulate Dropbox asking us to slow down).
+ */
+public class FakeDropboxServer implements AutoCloseable {
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+    static {
+        // -(without TCP_NODELAY every response waits ~40 ms for a delayed ACK: read when the first server is created)-
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Path root;
+
+    private final HttpServer httpServer;
+
+    private final ExecutorService executor;
+
+    private final Map<String, Listing> listings = new ConcurrentHashMap<>();
+
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    private final Map<String, LongAdder> requestCounts = new ConcurrentHashMap<>();
+
+    private final AtomicLong requestCount = new AtomicLong();
+
+    private final LongAdder rateLimitedCount = new LongAdder();
+
+    private volatile Duration latency = Duration.ZERO;
+
+    private volatile int rateLimitEvery;
+
+    private volatile Duration retryAfter = Duration.ZERO;
+
+    private volatile int pageSize = 2000;
+
+    private volatile String failMovesOf;
+
+    private final AtomicInteger refusedMoves = new AtomicInteger();
+
+    /**
+     * A listing that is being paged through.
+     */
+    private record Listing(Path folder, List<Path> children) {
+    }
+
+    /**
+     * A folder as it was when a listing of it ended - so that the changes since then can be listed.
+     */
+    private record Snapshot(Path folder, Map<String, String> versions) {
+    }
+
+    private FakeDropboxServer(Path root) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            var thread = new Thread(runnable, "fake-dropbox");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.httpServer.setExecutor(executor);
+        this.httpServer.createContext("/2/", this::handle);
+        this.httpServer.start();
+    }
+
+    /**
+     * @param root the local folder that is the root of the Dropbox (Dropbox path "/a/b" is [root]/a/b)
+     */
+    public static FakeDropboxServer start(Path root) {
+        try {
+            return new FakeDropboxServer(root);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        httpServer.stop(0);
+        executor.shutdownNow();
+    }
+
+    public String apiBaseUrl() {
+        return String.format("http://%s:%s/2",
+                httpServer.getAddress().getHostString(), httpServer.getAddress().getPort());
+    }
+
+    public String contentBaseUrl() {
+        return apiBaseUrl();
+    }
+
+    public String notifyBaseUrl() {
+        return apiBaseUrl();
+    }
+
+    /**
+     * @param latency how long to wait before answering a request
+     */
+    public FakeDropboxServer latency(Duration latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * @param rateLimitEvery answer every n-th request with HTTP 429 (0 to never do that)
+     * @param retryAfter     what to ask for in the Retry-After header of those answers (0 to leave the header out)
+     */
+    public FakeDropboxServer rateLimit(int rateLimitEvery, Duration retryAfter) {
+        this.rateLimitEvery = rateLimitEvery;
+        this.retryAfter = retryAfter;
+        return this;
+    }
+
+    /**
+     * @param pageSize how many entries a page of a folder listing holds at most
+     */
+    public FakeDropboxServer pageSize(int pageSize) {
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    /**
+     * @param fileName answer the moves of files with that name with a relocation error (null to move them again)
+     */
+    public FakeDropboxServer failMovesOf(String fileName) {
+        this.failMovesOf = fileName;
+        return this;
+    }
+
+    /**
+     * @param count answer that many of the next moves (in move batches) with "too_many_write_operations" - without
+     *              moving the files
+     */
+    public FakeDropboxServer refuseMoves(int count) {
+        refusedMoves.set(count);
+        return this;
+    }
+
+    /**
+     * @return how many requests have been received (including the ones answered with HTTP 429)
+     */
+    public long requestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return how many requests have been received by the endpoint (for example "/files/list_folder")
+     */
+    public long requestCount(String endpoint) {
+        var count = requestCounts.get(endpoint);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * @return how many requests have been answered with HTTP 429
+     */
+    public long rateLimitedCount() {
+        return rateLimitedCount.sum();
+    }
+
+    /**
+     * Resets the counters (and the fault injection and latency).
+     */
+    public void reset() {
+        requestCount.set(0);
+        requestCounts.clear();
+        rateLimitedCount.reset();
+        latency = Duration.ZERO;
+        rateLimitEvery = 0;
+        retryAfter = Duration.ZERO;
+        failMovesOf = null;
+        refusedMoves.set(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            var endpoint = exchange.getRequestURI().getPath().substring("/2".length());
+            requestCounts.computeIfAbsent(endpoint, key -> new LongAdder()).increment();
+            var requestNumber = requestCount.incrementAndGet();
+            sleep(latency);
+            // -(like Dropbox: longpoll must be called without the access token - everything else with it)-
+            if ((exchange.getRequestHeaders().getFirst("Authorization") == null)
+                    != endpoint.equals("/files/list_folder/longpoll")) {
+                sendError(exchange, endpoint.equals("/files/list_folder/longpoll") ? 400 : 401, "invalid_access_token/");
+                return;
+            }
+            if (rateLimitEvery > 0 && requestNumber % rateLimitEvery == 0) {
+                rateLimitedCount.increment();
+                if (!retryAfter.isZero()) {
+                    exchange.getResponseHeaders().set("Retry-After", Long.toString(retryAfter.toSeconds()));
+                }
+                sendError(exchange, 429, "too_many_requests/");
+                return;
+            }
+            switch (endpoint) {
+                case "/files/list_folder" -> listFolder(exchange, readBody(exchange));
+                case "/files/list_folder/continue" -> listFolderContinue(exchange, readBody(exchange));
+                case "/files/list_folder/longpoll" -> listFolderLongpoll(exchange, readBody(exchange));
+                case "/files/get_metadata" -> getMetadata(exchange, readBody(exchange));
+                case "/files/create_folder_batch" -> createFolderBatch(exchange, readBody(exchange));
+                case "/files/move" -> move(exchange, readBody(exchange));
+                case "/files/move_batch_v2" -> moveBatch(exchange, readBody(exchange));
+                case "/files/download" -> download(exchange);
+                default -> sendError(exchange, 400, String.format("unknown endpoint %s", endpoint));
+            }
+        } catch (RuntimeException e) {
+            sendError(exchange, 500, String.valueOf(e.getMessage()));
+        }
+    }
+
+    // -( endpoints )-
+
+    private void listFolder(HttpExchange exchange, JsonNode request) throws IOException {
+        var folder = resolve(request.path("path").asText());
+        if (folder == null || !Files.isDirectory(folder)) {
+            sendError(exchange, 409, "path/not_found/");
+            return;
+        }
+        List<Path> children;
+        try (var files = Files.list(folder)) {
+            children = files.sorted().toList();
+        }
+        var listingId = UUID.randomUUID().toString();
+        listings.put(listingId, new Listing(folder, children));
+        sendPage(exchange, listingId, 0);
+    }
+
+    private void listFolderContinue(HttpExchange exchange, JsonNode request) throws IOException {
+        var cursor = request.path("cursor").asText().split(":", 3);
+        switch (cursor[0]) {
+            case "listing" -> sendPage(exchange, cursor[1], Integer.parseInt(cursor[2]));
+            case "changes" -> sendChanges(exchange, cursor[1]);
+            default -> sendError(exchange, 409, "reset/");
+        }
+    }
+
+    /**
+     * Holds the request until the folder of the cursor has changed - or the timeout (in seconds) has passed.
+     */
+    private void listFolderLongpoll(HttpExchange exchange, JsonNode request) throws IOException {
+        var cursor = request.path("cursor").asText().split(":", 2);
+        var snapshot = "changes".equals(cursor[0]) ? snapshots.get(cursor[1]) : null;
+        if (snapshot == null) {
+            sendError(exchange, 409, "reset/");
+            return;
+        }
+        var deadline = System.nanoTime() + Duration.ofSeconds(request.path("timeout").asLong(30)).toNanos();
+        var changes = hasChangedSince(snapshot);
+        while (!changes && System.nanoTime() < deadline) {
+            sleep(Duration.ofMillis(50));
+            changes = hasChangedSince(snapshot);
+        }
+        send(exchange, 200, objectMapper.createObjectNode().put("changes", changes));
+    }
+
+    private void getMetadata(HttpExchange exchange, JsonNode request) throws IOException {
+        var path = resolve(request.path("path").asText());
+        if (path == null) {
+            sendError(exchange, 409, "path/not_found/");
+            return;
+        }
+        send(exchange, 200, metadataOf(path));
+    }
+
+    private void createFolderBatch(HttpExchange exchange, JsonNode request) throws IOException {
+        var response = objectMapper.createObjectNode().put(".tag", "complete");
+        var entries = response.putArray("entries");
+        for (var path : request.path("paths")) {
+            var existing = resolve(path.asText());
+            if (existing != null) {
+                var failure = objectMapper.createObjectNode().put(".tag", "path");
+                failure.putObject("path").put(".tag", "conflict")
+                        .putObject("conflict").put(".tag", Files.isDirectory(existing) ? "folder" : "file");
+                entries.addObject().put(".tag", "failure").set("failure", failure);
+                continue;
+            }
+            var folder = Files.createDirectories(resolveForCreation(path.asText()));
+            entries.addObject().put(".tag", "success").set("metadata", metadataOf(folder));
+        }
+        send(exchange, 200, response);
+    }
+
+    private void move(HttpExchange exchange, JsonNode request) throws IOException {
+        var failure = moveFile(request.path("from_path").asText(), request.path("to_path").asText());
+        if (failure != null) {
+            sendError(exchange, 409, failure.path(".tag").asText());
+            return;
+        }
+        send(exchange, 200, metadataOf(resolve(request.path("to_path").asText())));
+    }
+
+    private void moveBatch(HttpExchange exchange, JsonNode request) throws IOException {
+        var response = objectMapper.createObjectNode().put(".tag", "complete");
+        var entries = response.putArray("entries");
+        for (var entry : request.path("entries")) {
+            if (refusedMoves.getAndUpdate(count -> Math.max(0, count - 1)) > 0) {
+                entries.addObject().put(".tag", "failure")
+                        .putObject("failure").put(".tag", "too_many_write_operations");
+                continue;
+            }
+            var failure = moveFile(entry.path("from_path").asText(), entry.path("to_path").asText());
+            if (failure == null) {
+                entries.addObject().put(".tag", "success")
+                        .set("success", metadataOf(resolve(entry.path("to_path").asText())));
+            } else {
+                entries.addObject().put(".tag", "failure").set("failure", failure);
+            }
+        }
+        send(exchange, 200, response);
+    }
+
+    private void download(HttpExchange exchange) throws IOException {
+        var argument = objectMapper.readTree(exchange.getRequestHeaders().getFirst("Dropbox-API-Arg"));
+        readBody(exchange);
+        var file = resolve(argument.path("path").asText());
+        if (file == null || !Files.isRegularFile(file)) {
+            sendError(exchange, 409, "path/not_found/");
+            return;
+        }
+        var range = exchange.getRequestHeaders().getFirst("Range");
+        var matcher = range == null ? null : RANGE.matcher(range);
+        byte[] content;
+        if (matcher != null && matcher.matches()) {
+            var position = Long.parseLong(matcher.group(1));
+            var length = (int) (Long.parseLong(matcher.group(2)) - position + 1);
+            content = readRange(file, position, length);
+        } else {
+            content = Files.readAllBytes(file);
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        exchange.sendResponseHeaders(matcher != null && matcher.matches() ? 206 : 200, content.length == 0 ? -1 : content.length);
+        exchange.getResponseBody().write(content);
+    }
+
+    // -( listing pages and changes )-
+
+    private void sendPage(HttpExchange exchange, String listingId, int offset) throws IOException {
+        var listing = listings.get(listingId);
+        if (listing == null) {
+            sendError(exchange, 409, "reset/");
+            return;
+        }
+        var children = listing.children();
+        var end = Math.min(children.size(), offset + pageSize);
+        var page = objectMapper.createObjectNode();
+        var entries = page.putArray("entries");
+        for (var child : children.subList(offset, end)) {
+            if (Files.exists(child)) {
+                entries.add(metadataOf(child));
+            }
+        }
+        var more = end < children.size();
+        if (more) {
+            page.put("cursor", String.format("listing:%s:%s", listingId, end));
+        } else {
+            listings.remove(listingId);
+            page.put("cursor", snapshotCursorOf(listing.folder(), children));
+        }
+        page.put("has_more", more);
+        send(exchange, 200, page);
+    }
+
+    private String snapshotCursorOf(Path folder, List<Path> children) throws IOException {
+        var versions = new HashMap<String, String>();
+        for (var child : children) {
+            if (Files.isRegularFile(child)) {
+                versions.put(child.getFileName().toString(), versionOf(child));
+            }
+        }
+        var snapshotId = UUID.randomUUID().toString();
+        snapshots.put(snapshotId, new Snapshot(folder, versions));
+        return String.format("changes:%s", snapshotId);
+    }
+
+    private void sendChanges(HttpExchange exchange, String snapshotId) throws IOException {
+        var snapshot = snapshots.get(snapshotId);
+        if (snapshot == null) {
+            sendError(exchange, 409, "reset/");
+            return;
+        }
+        List<Path> children;
+        try (var files = Files.list(snapshot.folder())) {
+            children = files.sorted().toList();
+        }
+        var page = objectMapper.createObjectNode();
+        var entries = page.putArray("entries");
+        var currentNames = new HashMap<String, Path>();
+        for (var child : children) {
+            currentNames.put(child.getFileName().toString(), child);
+            if (Files.isRegularFile(child)
+                    && !versionOf(child).equals(snapshot.versions().get(child.getFileName().toString()))) {
+                entries.add(metadataOf(child));
+            }
+        }
+        for (var name : snapshot.versions().keySet()) {
+            if (!currentNames.containsKey(name)) {
+                entries.addObject()
+                        .put(".tag", "deleted")
+                        .put("name", name)
+                        .put("path_lower", dropboxPathOf(snapshot.folder().resolve(name)).toLowerCase(Locale.ROOT));
+            }
+        }
+        page.put("cursor", snapshotCursorOf(snapshot.folder(), children));
+        page.put("has_more", false);
+        send(exchange, 200, page);
+    }
+
+    private static boolean hasChangedSince(Snapshot snapshot) throws IOException {
+        var names = new HashSet<String>();
+        try (var files = Files.list(snapshot.folder())) {
+            for (var file : files.filter(Files::isRegularFile).toList()) {
+                names.add(file.getFileName().toString());
+                if (!versionOf(file).equals(snapshot.versions().get(file.getFileName().toString()))) {
+                    return true;
+                }
+            }
+        }
+        return !names.containsAll(snapshot.versions().keySet());
+    }
+
+    private static String versionOf(Path file) throws IOException {
+        var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        return String.format("%s:%s:%s", attributes.size(), attributes.lastModifiedTime().toMillis(), attributes.fileKey());
+    }
+
+    // -( files )-
+
+    /**
+     * @return null if the file was moved - otherwise the failure (as Dropbox describes it)
+     */
+    private ObjectNode moveFile(String fromPath, String toPath) throws IOException {
+        var from = resolve(fromPath);
+        if (from == null) {
+            return relocationError("from_lookup", "not_found");
+        }
+        if (from.getFileName().toString().equals(failMovesOf)) {
+            return relocationError("to", "no_write_permission");
+        }
+        var to = resolveForCreation(toPath);
+        if (Files.exists(to)) {
+            return relocationError("to", "conflict");
+        }
+        Files.createDirectories(to.getParent());
+        try {
+            Files.move(from, to);
+        } catch (NoSuchFileException e) {
+            return relocationError("from_lookup", "not_found");
+        }
+        return null;
+    }
+
+    private ObjectNode relocationError(String tag, String reason) {
+        var failure = objectMapper.createObjectNode().put(".tag", "relocation_error");
+        failure.putObject("relocation_error").put(".tag", tag).putObject(tag).put(".tag", reason);
+        return failure;
+    }
+
+    private ObjectNode metadataOf(Path path) throws IOException {
+        var metadata = objectMapper.createObjectNode();
+        var dropboxPath = dropboxPathOf(path);
+        if (Files.isDirectory(path)) {
+            metadata.put(".tag", "folder");
+        } else {
+            var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            var modified = attributes.lastModifiedTime().toInstant().truncatedTo(ChronoUnit.SECONDS);
+            metadata.put(".tag", "file");
+            metadata.put("client_modified", modified.toString());
+            metadata.put("server_modified", Instant.now().truncatedTo(ChronoUnit.SECONDS).toString());
+            metadata.put("rev", Long.toHexString(attributes.lastModifiedTime().toMillis()));
+            metadata.put("size", attributes.size());
+            metadata.put("content_hash", contentHashOf(path));
+        }
+        metadata.put("name", path.getFileName().toString());
+        metadata.put("path_lower", dropboxPath.toLowerCase(Locale.ROOT));
+        metadata.put("path_display", dropboxPath);
+        metadata.put("id", String.format("id:%s", Integer.toHexString(dropboxPath.hashCode())));
+        return metadata;
+    }
+
+    private static String contentHashOf(Path file) throws IOException {
+        var hashesOfBlocks = new ArrayList<byte[]>();
+        try (var content = Files.newInputStream(file)) {
+            byte[] block;
+            while ((block = content.readNBytes(ContentHash.BLOCK_SIZE)).length > 0) {
+                hashesOfBlocks.add(ContentHash.hashOfBlock(block));
+            }
+        }
+        return ContentHash.of(hashesOfBlocks);
+    }
+
+    private static byte[] readRange(Path file, long position, int length) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var buffer = ByteBuffer.allocate((int) Math.max(0, Math.min(length, channel.size() - position)));
+            while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+                // -(read until the range is filled)-
+            }
+            return buffer.array();
+        }
+    }
+
+    private String dropboxPathOf(Path path) {
+        var relativePath = root.relativize(path.toAbsolutePath().normalize()).toString().replace('\\', '/');
+        return String.format("/%s", relativePath);
+    }
+
+    /**
+     * @return the local file of the Dropbox path (matching each part of the path case insensitively) - or null if there
+     * is no such file
+     */
+    private Path resolve(String dropboxPath) throws IOException {
+        var path = root;
+        for (var part : partsOf(dropboxPath)) {
+            var next = path.resolve(part);
+            if (!Files.exists(next)) {
+                next = childIgnoringCase(path, part);
+                if (next == null) {
+                    return null;
+                }
+            }
+            path = next;
+        }
+        return path;
+    }
+
+    /**
+     * @return the local file of the Dropbox path - the existing folders of the path matched case insensitively, the
+     * rest of the path as given
+     */
+    private Path resolveForCreation(String dropboxPath) throws IOException {
+        var path = root;
+        for (var part : partsOf(dropboxPath)) {
+            var next = Files.isDirectory(path) ? childIgnoringCase(path, part) : null;
+            path = next != null ? next : path.resolve(part);
+        }
+        return path;
+    }
+
+    private static Path childIgnoringCase(Path folder, String name) throws IOException {
+        if (!Files.isDirectory(folder)) {
+            return null;
+        }
+        var exact = folder.resolve(name);
+        if (Files.exists(exact)) {
+            return exact;
+        }
+        try (Stream<Path> children = Files.list(folder)) {
+            return children.filter(child -> child.getFileName().toString().equalsIgnoreCase(name)).findFirst().orElse(null);
+        }
+    }
+
+    private static List<String> partsOf(String dropboxPath) {
+        return Stream.of(dropboxPath.split("/")).filter(part -> !part.isEmpty()).toList();
+    }
+
+    // -( HTTP )-
+
+    private JsonNode readBody(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            var bytes = body.readAllBytes();
+            return bytes.length == 0 ? objectMapper.createObjectNode() : objectMapper.readTree(bytes);
+        }
+    }
+
+    private void sendError(HttpExchange exchange, int status, String errorSummary) throws IOException {
+        var error = objectMapper.createObjectNode().put("error_summary", errorSummary);
+        error.putObject("error").put(".tag", errorSummary.split("/")[0]);
+        send(exchange, status, error);
+    }
+
+    private void send(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        var bytes = objectMapper.writeValueAsString(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void sleep(Duration duration) {
+        if (duration.isZero()) {
+            return;
+        }
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
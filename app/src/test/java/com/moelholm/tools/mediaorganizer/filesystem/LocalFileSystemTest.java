@@ -0,0 +1,300 @@
+package com.moelholm.tools.mediaorganizer.filesystem;
+
+import com.moelholm.tools.mediaorganizer.filesystem.LocalFileSystem.LocalFileSystemProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class LocalFileSystemTest {
+
+    private static final FileTime TAKEN = FileTime.from(Instant.parse("2015-01-13T03:13:53Z"));
+
+    @TempDir
+    Path folder;
+
+    private LocalFileSystem fileSystem;
+
+    private byte[] content;
+
+    @BeforeEach
+    public void before() {
+        fileSystem = new LocalFileSystem(new LocalFileSystemProperties(false, 1), new SimpleMeterRegistry());
+        content = new byte[100_000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i % 251);
+        }
+    }
+
+    @Test
+    public void moveAcrossFileStores_whenNothingWasCopiedBefore_thenCopiesTheFileAndDeletesTheSource() throws IOException {
+
+        // Given
+        var from = mediaFile(folder.resolve("from"), content);
+        var to = Files.createDirectories(folder.resolve("to")).resolve("2015-01-13 03.13.53.jpg");
+
+        // When
+        fileSystem.moveAcrossFileStores(from, to);
+
+        // Then
+        assertArrayEquals(content, Files.readAllBytes(to));
+        assertEquals(TAKEN, Files.getLastModifiedTime(to));
+        assertFalse(Files.exists(from));
+        try (var files = Files.list(to.getParent())) {
+            assertEquals(1, files.count()); // -(no .partial or .source file is left behind)-
+        }
+    }
+
+    @Test
+    public void moveAcrossFileStores_whenCopyOfTheSameSourceWasInterrupted_thenResumesFromTheSyncedPart() throws IOException {
+
+        // Given
+        var from = mediaFile(folder.resolve("from"), content);
+        var to = Files.createDirectories(folder.resolve("to")).resolve("2015-01-13 03.13.53.jpg");
+        var partialTo = LocalFileSystem.partialFileOf(from, to);
+        var copied = Arrays.copyOf(content, 60_000);
+        Files.write(partialTo, copied);
+        Files.writeString(LocalFileSystem.sourceFileOf(partialTo), sourceOf(from, 40_000));
+
+        // When
+        fileSystem.moveAcrossFileStores(from, to);
+
+        // Then
+        assertArrayEquals(content, Files.readAllBytes(to));
+        assertFalse(Files.exists(partialTo));
+        assertFalse(Files.exists(from));
+    }
+
+    @Test
+    public void moveAcrossFileStores_whenPartialFileTellsAnotherSource_thenStartsTheCopyOver() throws IOException {
+
+        // Given
+        var from = mediaFile(folder.resolve("from"), content);
+        var other = mediaFile(folder.resolve("other"), new byte[50_000]);
+        var to = Files.createDirectories(folder.resolve("to")).resolve("2015-01-13 03.13.53.jpg");
+        var partialTo = LocalFileSystem.partialFileOf(from, to);
+        Files.write(partialTo, new byte[50_000]);
+        Files.writeString(LocalFileSystem.sourceFileOf(partialTo), sourceOf(other, 50_000));
+
+        // When
+        fileSystem.moveAcrossFileStores(from, to);
+
+        // Then
+        assertArrayEquals(content, Files.readAllBytes(to));
+    }
+
+    @Test
+    public void moveAcrossFileStores_whenPartialFileHasNoSource_thenStartsTheCopyOver() throws IOException {
+
+        // Given
+        var from = mediaFile(folder.resolve("from"), content);
+        var to = Files.createDirectories(folder.resolve("to")).resolve("2015-01-13 03.13.53.jpg");
+        Files.write(LocalFileSystem.partialFileOf(from, to), new byte[50_000]);
+
+        // When
+        fileSystem.moveAcrossFileStores(from, to);
+
+        // Then
+        assertArrayEquals(content, Files.readAllBytes(to));
+    }
+
+    @Test
+    public void partialFileOf_whenSourcesHaveTheSameName_thenTheyDoNotShareAPartialFile() throws IOException {
+
+        // Given
+        var from = mediaFile(folder.resolve("from"), content);
+        var fromSubfolder = mediaFile(folder.resolve("from").resolve("subfolder"), content);
+        var to = folder.resolve("to").resolve("2015-01-13 03.13.53.jpg");
+
+        // When
+        var partialTo = LocalFileSystem.partialFileOf(from, to);
+        var partialToOfSubfolder = LocalFileSystem.partialFileOf(fromSubfolder, to);
+
+        // Then
+        assertNotEquals(partialTo, partialToOfSubfolder);
+    }
+
+    @Test
+    public void partialFileOf_whenSourceWasReplaced_thenItGetsAnotherPartialFile() throws IOException {
+
+        // Given
+        var from = mediaFile(folder.resolve("from"), content);
+        var to = folder.resolve("to").resolve("2015-01-13 03.13.53.jpg");
+        var partialTo = LocalFileSystem.partialFileOf(from, to);
+
+        // When
+        Files.write(from, Arrays.copyOf(content, 99_999));
+        Files.setLastModifiedTime(from, TAKEN);
+
+        // Then
+        assertNotEquals(partialTo, LocalFileSystem.partialFileOf(from, to));
+    }
+
+    @Test
+    public void moveAcrossFileStores_whenDestinationExists_thenKeepsTheSource() throws IOException {
+
+        // Given
+        var from = mediaFile(folder.resolve("from"), content);
+        var to = Files.createDirectories(folder.resolve("to")).resolve("2015-01-13 03.13.53.jpg");
+        Files.writeString(to, "already there");
+
+        // When
+        assertThrows(IOException.class, () -> fileSystem.moveAcrossFileStores(from, to));
+
+        // Then
+        assertArrayEquals(content, Files.readAllBytes(from));
+        assertEquals("already there", Files.readString(to));
+    }
+
+    @Test
+    public void move_whenDestinationIsOnAnotherFileStore_thenCopiesTheFileAndDeletesTheSource() throws IOException {
+
+        // Given
+        var otherFileStore = Path.of("/dev/shm");
+        assumeTrue(Files.isDirectory(otherFileStore)
+                && !Files.getFileStore(otherFileStore).equals(Files.getFileStore(folder)));
+        var from = mediaFile(folder.resolve("from"), content);
+        var toFolder = Files.createTempDirectory(otherFileStore, "local-file-system-test");
+        var to = toFolder.resolve("2015 - January - Misc").resolve("2015-01-13 03.13.53.jpg");
+
+        try {
+            // When
+            fileSystem.move(from, to);
+
+            // Then
+            assertArrayEquals(content, Files.readAllBytes(to));
+            assertEquals(TAKEN, Files.getLastModifiedTime(to));
+            assertFalse(Files.exists(from));
+        } finally {
+            Files.deleteIfExists(to);
+            Files.deleteIfExists(to.getParent());
+            Files.deleteIfExists(toFolder);
+        }
+    }
+
+    @Test
+    public void move_whenFilesWithTheSameNameAreMovedAtTheSameTime_thenNoneReplacesAnother() throws Exception {
+        var executor = Executors.newFixedThreadPool(8);
+        try {
+            for (int round = 0; round < 20; round++) {
+
+                // Given
+                var to = folder.resolve("to-" + round).resolve("2015-01-13 03.13.53.jpg");
+                var froms = new ArrayList<Path>();
+                for (int i = 0; i < 8; i++) {
+                    var from = folder.resolve("from-" + round).resolve("camera-" + i).resolve(to.getFileName());
+                    Files.createDirectories(from.getParent());
+                    froms.add(Files.writeString(from, "camera " + i));
+                }
+                var start = new CountDownLatch(1);
+
+                // When
+                var moves = new ArrayList<Future<Boolean>>();
+                for (var from : froms) {
+                    moves.add(executor.submit(() -> {
+                        start.await();
+                        try {
+                            fileSystem.move(from, to);
+                            return true;
+                        } catch (FileAlreadyExistsException e) {
+                            return false;
+                        }
+                    }));
+                }
+                start.countDown();
+                var moved = new ArrayList<Path>();
+                for (int i = 0; i < froms.size(); i++) {
+                    if (moves.get(i).get()) {
+                        moved.add(froms.get(i));
+                    }
+                }
+
+                // Then
+                assertEquals(1, moved.size());
+                assertEquals("camera " + froms.indexOf(moved.get(0)), Files.readString(to));
+                assertEquals(froms.size() - 1, froms.stream().filter(Files::exists).count());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void streamOfAllFileEntriesFromPath_whenRecursive_thenListsTheFilesOfAllSubfolders() throws IOException {
+
+        // Given
+        var from = folder.resolve("from");
+        Files.createDirectories(from.resolve("camera/100APPLE"));
+        Files.createDirectories(from.resolve("camera/101APPLE/empty"));
+        Files.writeString(from.resolve("2015-01-13 03.13.53.jpg"), "top");
+        Files.writeString(from.resolve("camera/100APPLE/2015-01-13 03.13.54.jpg"), "nested");
+        Files.writeString(from.resolve("camera/101APPLE/2015-01-13 03.13.55.jpg"), "nested too");
+        var recursiveFileSystem = new LocalFileSystem(new LocalFileSystemProperties(true, 4), new SimpleMeterRegistry());
+
+        // When
+        Set<Path> files;
+        try (var fileEntries = recursiveFileSystem.streamOfAllFileEntriesFromPath(from)) {
+            files = fileEntries.map(FileEntry::path).collect(Collectors.toSet());
+        }
+
+        // Then
+        assertEquals(Set.of(
+                from.resolve("2015-01-13 03.13.53.jpg"),
+                from.resolve("camera/100APPLE/2015-01-13 03.13.54.jpg"),
+                from.resolve("camera/101APPLE/2015-01-13 03.13.55.jpg")), files);
+    }
+
+    @Test
+    public void streamOfAllFileEntriesFromPath_whenNotRecursive_thenListsOnlyTheFilesOfTheFolder() throws IOException {
+
+        // Given
+        var from = folder.resolve("from");
+        Files.createDirectories(from.resolve("camera/100APPLE"));
+        Files.writeString(from.resolve("2015-01-13 03.13.53.jpg"), "top");
+        Files.writeString(from.resolve("camera/100APPLE/2015-01-13 03.13.54.jpg"), "nested");
+
+        // When
+        Set<Path> files;
+        try (var fileEntries = fileSystem.streamOfAllFileEntriesFromPath(from)) {
+            files = fileEntries.map(FileEntry::path).collect(Collectors.toSet());
+        }
+
+        // Then
+        assertEquals(Set.of(from.resolve("2015-01-13 03.13.53.jpg")), files);
+    }
+
+    private static Path mediaFile(Path directory, byte[] content) throws IOException {
+        var file = Files.createDirectories(directory).resolve("2015-01-13 03.13.53.jpg");
+        Files.write(file, content);
+        Files.setLastModifiedTime(file, TAKEN);
+        assertTrue(Files.exists(file));
+        return file;
+    }
+
+    private static String sourceOf(Path from, long syncedLength) throws IOException {
+        return String.format("%s\n%s\n%s\n%s",
+                from.toAbsolutePath(), Files.size(from), Files.getLastModifiedTime(from).toMillis(), syncedLength);
+    }
+}
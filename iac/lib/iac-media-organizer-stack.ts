@@ -18,9 +18,23 @@ export class IacMediaOrganizerStack extends cdk.Stack {
             "com.moelholm.tools.aws.AwsLambdaHandler::handleRequest",
             "../app/target/media-organizer-0.0.1-SNAPSHOT.jar"
         );
+        //
+        // SnapStart only applies to published versions - so the schedule invokes an alias of the latest version
+        //
+        const lambdaAlias = new lambda.Alias(this, "mediaorganizerfunctionalias", {
+            aliasName: "live",
+            version: lambdaFunction.currentVersion,
+        });
+        //
+        // The schedule invokes the function once per shard - each invocation moves the media files of its share of
+        // the destination folders (raise the shard count to split the work between more invocations: at most 5)
+        //
+        const shardCount = 1;
         const newAccountsRule = new events.Rule(this, "mediaorganizerfunctionrule", {
             schedule: events.Schedule.cron({minute: "30", hour: "3"}),
-            targets: [new targets.LambdaFunction(lambdaFunction)],
+            targets: Array.from({length: shardCount}, (_, shardIndex) => new targets.LambdaFunction(lambdaAlias, {
+                event: events.RuleTargetInput.fromObject({shardIndex: shardIndex, shardCount: shardCount}),
+            })),
         });
     }
 
@@ -33,9 +47,17 @@ export class IacMediaOrganizerStack extends cdk.Stack {
             runtime: lambda.Runtime.JAVA_17,
             handler: handler,
             timeout: cdk.Duration.minutes(15),
+            // -(Lambda allocates CPU in proportion to memory - starting the JVM and Spring is CPU bound)-
+            memorySize: 1024,
+            snapStart: lambda.SnapStartConf.ON_PUBLISHED_VERSIONS,
             code: lambda.Code.fromAsset(lambdaZipFile),
             environment: {
                 "SPRING_PROFILES_ACTIVE": "production",
+                // -(the configuration is loaded when a version is published (SnapStart) - so a change in the parameter
+                //   store needs a new version: bump it with "cdk deploy -c configVersion=...")-
+                "MEDIAORGANIZER_CONFIG_VERSION": String(this.node.tryGetContext("configVersion") ?? "1"),
+                // -(the function mostly waits for Dropbox - so the quicker start of the C1 compiler beats the C2 peak)-
+                "JAVA_TOOL_OPTIONS": "-XX:+TieredCompilation -XX:TieredStopAtLevel=1",
             },
         });
         lambdaFunction.addToRolePolicy(